@@ -1,5 +1,6 @@
 package com.example.publickeyinfrastructure.config;
 
+import com.example.publickeyinfrastructure.controller.CertificateController;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
@@ -17,6 +18,7 @@ public class CorsConfig {
                         .allowedOrigins("http://localhost:4200")
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders(CertificateController.TOTAL_COUNT_HEADER)
                         .allowCredentials(true);
             }
         };
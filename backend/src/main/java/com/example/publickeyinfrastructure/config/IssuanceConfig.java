@@ -0,0 +1,34 @@
+package com.example.publickeyinfrastructure.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class IssuanceConfig {
+
+    /**
+     * Workers that generate keys and sign certificates for every issuance call, shared so concurrent bulk and
+     * CSR requests together never run more than {@code certificate.bulk.parallelism} of them at once. When the
+     * queue is full the calling request thread signs the item itself, which slows down the busiest caller.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService issuanceExecutor(@Value("${certificate.bulk.parallelism:0}") int parallelism,
+                                            @Value("${certificate.bulk.queue-capacity:4096}") int queueCapacity) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger workerCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bulk-issuance-" + workerCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
@@ -46,6 +46,7 @@ public class SecurityConfig {
             )
             .authorizeHttpRequests(authorize -> authorize
                 .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/masterkeyrotation").hasRole("ADMIN")
                 .requestMatchers("/public/**").permitAll() // TODO: Adjust public endpoints
                 .anyRequest().authenticated()
             )
@@ -12,6 +12,7 @@ public class SecurityProperties {
 
     private final Keystore keystore = new Keystore();
     private final Encryption encryption = new Encryption();
+    private final Pkcs11 pkcs11 = new Pkcs11();
 
     @Setter
     @Getter
@@ -24,4 +25,10 @@ public class SecurityProperties {
     public static class Encryption {
         private String passphrase;
     }
+
+    @Setter
+    @Getter
+    public static class Pkcs11 {
+        private String pin;
+    }
 }
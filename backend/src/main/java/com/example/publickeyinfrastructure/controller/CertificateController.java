@@ -1,5 +1,7 @@
 package com.example.publickeyinfrastructure.controller;
 
+import com.example.publickeyinfrastructure.dto.BulkCertificateResult;
+import com.example.publickeyinfrastructure.dto.BulkCreateCertificateRequest;
 import com.example.publickeyinfrastructure.dto.CertificateResponse;
 import com.example.publickeyinfrastructure.dto.CreateCertificateRequest;
 import com.example.publickeyinfrastructure.mapper.CertificateMapper;
@@ -9,11 +11,15 @@ import com.example.publickeyinfrastructure.model.Role;
 import com.example.publickeyinfrastructure.model.User;
 import com.example.publickeyinfrastructure.service.CertificateService;
 import com.example.publickeyinfrastructure.service.UserService;
+import com.example.publickeyinfrastructure.util.CsrReader;
 import jakarta.persistence.EntityNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
@@ -21,15 +27,20 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.security.access.prepost.PreAuthorize;
 
 
-import java.security.KeyStoreException;
-import java.security.cert.X509Certificate;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/v1/certificates")
 public class CertificateController {
     private static final Logger logger = LoggerFactory.getLogger(CertificateController.class);
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final MediaType PEM_FILE = MediaType.parseMediaType("application/x-pem-file");
     private final CertificateService certificateService;
     private final CertificateMapper certificateMapper;
     private final UserService userService;
@@ -49,7 +60,7 @@ public class CertificateController {
                 .orElseThrow(() -> new EntityNotFoundException(
                         "User not found with email: " + email));
 
-        Map<CertificateType, List<X509Certificate>> caCertificates = certificateService.findAllIssuers();
+        Map<CertificateType, List<ByteBuffer>> caCertificates = certificateService.findAllIssuers();
 
         return ResponseEntity.ok(
                 caCertificates.entrySet().stream()
@@ -62,29 +73,48 @@ public class CertificateController {
 
     @GetMapping
     @PreAuthorize("hasAnyRole('ROLE_USER', 'ROLE_ADMIN', 'ROLE_CA_USER')")
-    public ResponseEntity<List<CertificateResponse>> getCertificates(@AuthenticationPrincipal Jwt jwt) {
+    public ResponseEntity<List<CertificateResponse>> getCertificates(@AuthenticationPrincipal Jwt jwt,
+                                                                     @RequestParam(defaultValue = "0") int page,
+                                                                     @RequestParam(defaultValue = "100") int size) {
         String email = jwt.getClaimAsString("email");
         User user = userService.findByEmail(email)
                 .orElseThrow(() -> new EntityNotFoundException(
                         "User not found with email: " + email));
+        if (page < 0 || size < 1) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        List<X509Certificate> certificates = certificateService.findAllByUser(user);
-        return ResponseEntity.ok(certificates.stream().map(certificateMapper::toDto).toList());
+        Page<ByteBuffer> certificates = certificateService.findAllByUser(user, page, size);
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(certificates.getTotalElements()))
+                .body(certificates.stream().map(certificateMapper::toDto).toList());
+    }
+
+    @GetMapping("/profiles")
+    @PreAuthorize("hasAnyRole('ROLE_USER', 'ROLE_ADMIN', 'ROLE_CA_USER')")
+    public ResponseEntity<Set<String>> getProfiles() {
+        return ResponseEntity.ok(certificateService.findAllProfiles());
     }
 
     @GetMapping("/unassigned")
     @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
     public ResponseEntity<List<CertificateResponse>> getUnassignedCACertificates() {
-        List<X509Certificate> certificates = null;
-        try {
-            List<String> serialNumbers = this.userService.findAllAssigned();
-            certificates = certificateService.findAllUnassignedCACertificates(serialNumbers);
-        } catch (KeyStoreException e) {
-            throw new RuntimeException(e);
-        }
+        Set<String> assigned = this.userService.findAllAssigned();
+        List<ByteBuffer> certificates = certificateService.findAllUnassignedCACertificates(assigned);
         return ResponseEntity.ok(certificates.stream().map(certificateMapper::toDto).toList());
     }
 
+    /**
+     * Withdraws the certificate, or reinstates it with {@code withdrawn=false}; issuing under a withdrawn
+     * certificate fails from then on.
+     */
+    @PutMapping("/{serialNumber}/withdrawn")
+    @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
+    public ResponseEntity<CertificateResponse> setWithdrawn(@PathVariable String serialNumber,
+                                                            @RequestParam(defaultValue = "true") boolean withdrawn) {
+        return ResponseEntity.ok(certificateMapper.toDto(certificateService.setWithdrawn(serialNumber, withdrawn)));
+    }
+
     @PostMapping
     @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'CA_USER')")
     public ResponseEntity<CertificateResponse> createCertificate(@RequestBody CreateCertificateRequest request,@AuthenticationPrincipal Jwt jwt) throws Exception {
@@ -95,9 +125,116 @@ public class CertificateController {
 
         Certificate certificate = this.certificateService.createCertificate(certificateMapper.toEntity(request), user.getRole(), request.getIssuerSerialNumber(), request.getIssuerCertificateType());
         if(!user.getRole().equals(Role.ADMIN)) {
-            user.getCertificateSerialNumbers().add(certificate.getSerialNumber());
-            userService.save(user);
+            userService.assignCertificate(user, certificate.getSerialNumber());
         }
         return ResponseEntity.status(HttpStatus.CREATED).body(certificateMapper.toDto(certificate));
     }
-}
\ No newline at end of file
+
+    /**
+     * Issues many certificates under one issuer; each item gets its own result, so one bad item does not fail
+     * the others.
+     */
+    @PostMapping("/bulk")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'CA_USER')")
+    public ResponseEntity<List<BulkCertificateResult>> createCertificates(@RequestBody BulkCreateCertificateRequest request, @AuthenticationPrincipal Jwt jwt) throws Exception {
+        String email = jwt.getClaimAsString("email");
+        User user = userService.findByEmail(email)
+                .orElseThrow(() -> new EntityNotFoundException(
+                        "User not found with email: " + email));
+
+        List<Certificate> certificates = request.getCertificates().stream().map(certificateMapper::toEntity).toList();
+        List<CertificateService.IssuanceResult> results = this.certificateService.createCertificates(certificates, user.getRole(), request.getIssuerSerialNumber(), request.getIssuerCertificateType());
+        List<BulkCertificateResult> response = new ArrayList<>(results.size());
+        List<String> issued = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            CertificateService.IssuanceResult result = results.get(i);
+            if (result.certificate() != null) {
+                issued.add(result.certificate().getSerialNumber());
+                response.add(new BulkCertificateResult(i, certificateMapper.toDto(result.certificate()), null, null));
+            } else {
+                response.add(new BulkCertificateResult(i, null, null, result.error()));
+            }
+        }
+        if (!user.getRole().equals(Role.ADMIN) && !issued.isEmpty()) {
+            userService.assignCertificates(user, issued);
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Issues an end-entity certificate for the PKCS#10 request in the body, PEM or DER, and returns it as PEM.
+     * The subscriber keeps the private key.
+     */
+    @PostMapping("/csr")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'CA_USER')")
+    public ResponseEntity<String> createCertificateFromCsr(InputStream body,
+                                                           @RequestParam String issuerSerialNumber,
+                                                           @RequestParam CertificateType issuerCertificateType,
+                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date expires,
+                                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date issued,
+                                                           @AuthenticationPrincipal Jwt jwt) throws Exception {
+        String email = jwt.getClaimAsString("email");
+        User user = userService.findByEmail(email)
+                .orElseThrow(() -> new EntityNotFoundException(
+                        "User not found with email: " + email));
+
+        byte[] csr;
+        try (CsrReader csrs = new CsrReader(body)) {
+            csr = csrs.next();
+            if (csr == null || csrs.next() != null) {
+                return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body("Expected exactly one certificate request, use /csr/batch for more");
+            }
+        }
+        CertificateService.IssuanceResult result = this.certificateService.createCertificateFromCsr(csr, issued != null ? issued : new Date(), expires,
+                user.getRole(), issuerSerialNumber, issuerCertificateType);
+        if (result.certificate() == null) {
+            return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(result.error());
+        }
+        if (!user.getRole().equals(Role.ADMIN)) {
+            userService.assignCertificate(user, result.certificate().getSerialNumber());
+        }
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .contentType(PEM_FILE)
+                .body(certificateMapper.toPem(result.x509Certificate()));
+    }
+
+    /**
+     * Issues end-entity certificates for a stream of concatenated PKCS#10 requests, PEM or DER. The stream is
+     * read and saved in chunks, so it can be larger than a bulk request; each request gets its own result.
+     */
+    @PostMapping("/csr/batch")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'CA_USER')")
+    public ResponseEntity<List<BulkCertificateResult>> createCertificatesFromCsrs(InputStream body,
+                                                                                  @RequestParam String issuerSerialNumber,
+                                                                                  @RequestParam CertificateType issuerCertificateType,
+                                                                                  @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date expires,
+                                                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date issued,
+                                                                                  @AuthenticationPrincipal Jwt jwt) throws Exception {
+        String email = jwt.getClaimAsString("email");
+        User user = userService.findByEmail(email)
+                .orElseThrow(() -> new EntityNotFoundException(
+                        "User not found with email: " + email));
+
+        List<BulkCertificateResult> response = new ArrayList<>();
+        try (CsrReader csrs = new CsrReader(body)) {
+            this.certificateService.createCertificatesFromCsrs(csrs, issued != null ? issued : new Date(), expires, user.getRole(),
+                    issuerSerialNumber, issuerCertificateType, results -> {
+                        List<String> issuedSerialNumbers = new ArrayList<>();
+                        for (CertificateService.IssuanceResult result : results) {
+                            if (result.certificate() != null) {
+                                issuedSerialNumbers.add(result.certificate().getSerialNumber());
+                                response.add(new BulkCertificateResult(response.size(), certificateMapper.toDto(result.certificate()),
+                                        certificateMapper.toPem(result.x509Certificate()), null));
+                            } else {
+                                response.add(new BulkCertificateResult(response.size(), null, null, result.error()));
+                            }
+                        }
+                        // assigned per chunk: a chunk that fails to store is undone, the ones before it stay issued and owned
+                        if (!user.getRole().equals(Role.ADMIN) && !issuedSerialNumbers.isEmpty()) {
+                            userService.assignCertificates(user, issuedSerialNumbers);
+                        }
+                    });
+        }
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.publickeyinfrastructure.controller;
+
+import com.example.publickeyinfrastructure.dto.CreateCertificateRequest;
+import com.example.publickeyinfrastructure.dto.IssuanceJobResponse;
+import com.example.publickeyinfrastructure.mapper.CertificateMapper;
+import com.example.publickeyinfrastructure.model.IssuanceJob;
+import com.example.publickeyinfrastructure.model.IssuanceJobStatus;
+import com.example.publickeyinfrastructure.model.Role;
+import com.example.publickeyinfrastructure.model.User;
+import com.example.publickeyinfrastructure.service.CertificateService;
+import com.example.publickeyinfrastructure.service.IssuanceJobService;
+import com.example.publickeyinfrastructure.service.UserService;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous issuance: submit a request, then poll the job, or long-poll with {@code wait} seconds, until it
+ * has succeeded or failed. Waiting does not hold a request thread.
+ */
+@RestController
+@RequestMapping("/api/v1/issuance-jobs")
+public class IssuanceJobController {
+    private final IssuanceJobService issuanceJobService;
+    private final CertificateService certificateService;
+    private final CertificateMapper certificateMapper;
+    private final UserService userService;
+
+    // below the servlet container's async timeout
+    @Value("${certificate.jobs.max-wait-seconds:20}")
+    private long maxWaitSeconds;
+    @Value("${certificate.jobs.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    @Autowired
+    public IssuanceJobController(IssuanceJobService issuanceJobService, CertificateService certificateService,
+                                 CertificateMapper certificateMapper, UserService userService) {
+        this.issuanceJobService = issuanceJobService;
+        this.certificateService = certificateService;
+        this.certificateMapper = certificateMapper;
+        this.userService = userService;
+    }
+
+    @PostMapping
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'CA_USER')")
+    public ResponseEntity<IssuanceJobResponse> submit(@RequestBody CreateCertificateRequest request, @AuthenticationPrincipal Jwt jwt) {
+        User user = currentUser(jwt);
+        IssuanceJob job;
+        try {
+            job = issuanceJobService.submit(request, user);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .build();
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/issuance-jobs/" + job.getId()))
+                .body(toDto(job));
+    }
+
+    @GetMapping("/{id}")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN', 'CA_USER')")
+    public CompletableFuture<ResponseEntity<IssuanceJobResponse>> getJob(@PathVariable String id,
+                                                                        @RequestParam(defaultValue = "0") long wait,
+                                                                        @AuthenticationPrincipal Jwt jwt) {
+        User user = currentUser(jwt);
+        IssuanceJob job = issuanceJobService.findById(id)
+                // other users' jobs are indistinguishable from missing ones
+                .filter(found -> user.getRole().equals(Role.ADMIN) || found.getRequesterEmail().equals(user.getEmail()))
+                .orElse(null);
+        if (job == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+        }
+        long waitMillis = Math.min(Math.max(wait, 0), maxWaitSeconds) * 1000;
+        return issuanceJobService.awaitCompletion(job, waitMillis).thenApply(current -> ResponseEntity.ok(toDto(current)));
+    }
+
+    private User currentUser(Jwt jwt) {
+        String email = jwt.getClaimAsString("email");
+        return userService.findByEmail(email)
+                .orElseThrow(() -> new EntityNotFoundException(
+                        "User not found with email: " + email));
+    }
+
+    private IssuanceJobResponse toDto(IssuanceJob job) {
+        IssuanceJobResponse response = new IssuanceJobResponse(job.getId(), job.getStatus(), job.getSubmitted(),
+                job.getStarted(), job.getFinished(), null, job.getError());
+        if (job.getStatus() == IssuanceJobStatus.SUCCEEDED) {
+            certificateService.findBySerialNumber(job.getSerialNumber())
+                    .ifPresent(certificate -> response.setCertificate(certificateMapper.toDto(certificate)));
+        }
+        return response;
+    }
+}
@@ -40,8 +40,7 @@ public class UserController {
     @PreAuthorize("hasAnyRole('ROLE_ADMIN')")
     public ResponseEntity<String> assign(@RequestBody AssignCertificateRequest request) {
         User user = this.userService.findById(request.getUserId());
-        user.getCertificateSerialNumbers().add(request.getSerialNumber());
-        this.userService.save(user);
+        this.userService.assignCertificate(user, request.getSerialNumber());
         return ResponseEntity.ok("successfully assigned");
     }
 }
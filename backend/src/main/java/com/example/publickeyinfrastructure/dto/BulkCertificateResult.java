@@ -0,0 +1,20 @@
+package com.example.publickeyinfrastructure.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class BulkCertificateResult {
+    // position of the item in the request
+    private int index;
+    // null when the item failed
+    private CertificateResponse certificate;
+    // the issued certificate for CSR issuance, where the subscriber needs the certificate itself
+    private String pem;
+    private String error;
+}
@@ -0,0 +1,20 @@
+package com.example.publickeyinfrastructure.dto;
+
+import com.example.publickeyinfrastructure.model.CertificateType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Setter
+@Getter
+public class BulkCreateCertificateRequest {
+    private String issuerSerialNumber;
+    private CertificateType issuerCertificateType;
+    // the issuer fields of the items are ignored, every certificate is issued by the issuer above
+    private List<CreateCertificateRequest> certificates;
+}
@@ -1,6 +1,7 @@
 package com.example.publickeyinfrastructure.dto;
 
 import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.model.KeyAlgorithm;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -21,6 +22,10 @@ public class CreateCertificateRequest {
     private Date issued;
     private Date expires;
     private CertificateType type;
+    // null for the configured default
+    private KeyAlgorithm keyAlgorithm;
+    // name of a certificate profile, which replaces the extensions except subject alternative names
+    private String profile;
 
     @Override
     public String toString() {
@@ -32,6 +37,8 @@ public class CreateCertificateRequest {
                 ", expires=" + expires +
                 ", type='" + type  +
                 ", issuerType='" + issuerCertificateType + '\'' +
+                ", keyAlgorithm=" + keyAlgorithm +
+                ", profile=" + profile +
                 '}';
     }
 }
@@ -0,0 +1,25 @@
+package com.example.publickeyinfrastructure.dto;
+
+import com.example.publickeyinfrastructure.model.IssuanceJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class IssuanceJobResponse {
+    private String id;
+    private IssuanceJobStatus status;
+    private Date submitted;
+    private Date started;
+    private Date finished;
+    // set once the job succeeded
+    private CertificateResponse certificate;
+    // set once the job failed
+    private String error;
+}
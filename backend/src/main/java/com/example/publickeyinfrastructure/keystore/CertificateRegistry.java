@@ -0,0 +1,500 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
+
+import org.bouncycastle.asn1.x509.TBSCertificate;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Immutable, versioned snapshot of the certificates held in the project keystore.
+ * <p>
+ * Readers take the current snapshot from {@link ProjectKeyStore} and never lock; writers derive a new snapshot
+ * through a {@link Builder} and publish it in one step. To keep writes cheap a snapshot is layered: sealed levels
+ * shared between versions and a small delta (plus removed aliases) that is copied on every write. Once the delta
+ * grows past {@link #MAX_DELTA_SIZE} it is sealed as the newest level, and a level is merged into the one below
+ * it while it is more than a {@link #LEVEL_FANOUT}th of that level's size. Every entry is thus copied a logarithmic
+ * number of times over its life, instead of the whole registry on every fold.
+ */
+final class CertificateRegistry {
+
+    record RegistryEntry(String alias, CertificateType type, BigInteger serialNumber, StoredCertificate stored,
+                         DistinguishedNameKey subject, DistinguishedNameKey issuer, String shard, boolean withdrawn) {
+
+        static RegistryEntry of(String alias, X509Certificate certificate) {
+            return of(alias, StoredCertificate.of(certificate), certificate);
+        }
+
+        /**
+         * Entry for certificate bytes stored elsewhere, indexed from the decoded certificate the caller already has.
+         */
+        static RegistryEntry of(String alias, StoredCertificate stored, X509Certificate certificate) {
+            return of(alias, stored, certificate.getSerialNumber(),
+                    certificate.getSubjectX500Principal(), certificate.getIssuerX500Principal());
+        }
+
+        /**
+         * Reads the indexed fields straight from the DER encoding, so segment entries are never fully decoded here.
+         */
+        static RegistryEntry of(String alias, StoredCertificate stored) {
+            ByteBuffer encoded = stored.encoded();
+            byte[] der = new byte[encoded.remaining()];
+            encoded.get(der);
+            try {
+                TBSCertificate tbs = org.bouncycastle.asn1.x509.Certificate.getInstance(der).getTBSCertificate();
+                return of(alias, stored, tbs.getSerialNumber().getValue(),
+                        new X500Principal(tbs.getSubject().getEncoded()), new X500Principal(tbs.getIssuer().getEncoded()));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IllegalStateException("Malformed certificate for alias '" + alias + "'", e);
+            }
+        }
+
+        private static RegistryEntry of(String alias, StoredCertificate stored, BigInteger serialNumber,
+                                        X500Principal subject, X500Principal issuer) {
+            CertificateType type = typeOf(alias);
+            DistinguishedNameKey issuerKey = DistinguishedNameKey.of(issuer);
+            return new RegistryEntry(alias, type, serialNumber, stored, DistinguishedNameKey.of(subject), issuerKey,
+                    shardOf(type, issuerKey), false);
+        }
+
+        X509Certificate certificate() {
+            return stored.certificate();
+        }
+
+        RegistryEntry withWithdrawn(boolean withdrawn) {
+            return new RegistryEntry(alias, type, serialNumber, stored, subject, issuer, shard, withdrawn);
+        }
+
+        RegistryEntry withShard(String shard) {
+            return new RegistryEntry(alias, type, serialNumber, stored, subject, issuer, shard, withdrawn);
+        }
+    }
+
+    static final String OTHER_SHARD = "other";
+    static final int MAX_DELTA_SIZE = 1024;
+    static final int LEVEL_FANOUT = 4;
+
+    static final CertificateRegistry EMPTY = new CertificateRegistry(List.of(), RegistryIndex.EMPTY, Set.of(), Set.of(), 0, 0);
+
+    /**
+     * A sealed level: its entries, and the aliases of older levels removed while it was the delta.
+     */
+    private record Level(RegistryIndex index, Set<String> removed) {
+
+        int weight() {
+            return index.size() + removed.size();
+        }
+    }
+
+    // oldest first
+    private final List<Level> levels;
+    private final RegistryIndex delta;
+    // aliases present in a level that have been removed since
+    private final Set<String> removed;
+    // end-entity shards on disk that are not part of this snapshot yet
+    private final Set<String> pendingShards;
+    private final long version;
+    private final int size;
+
+    private CertificateRegistry(List<Level> levels, RegistryIndex delta, Set<String> removed, Set<String> pendingShards,
+                                long version, int size) {
+        this.levels = levels;
+        this.delta = delta;
+        this.removed = removed;
+        this.pendingShards = pendingShards;
+        this.version = version;
+        this.size = size;
+    }
+
+    static String aliasFor(CertificateType type, BigInteger serialNumber) {
+        return type.name().toLowerCase() + "-" + SerialNumberUtil.toAliasSuffix(serialNumber);
+    }
+
+    /**
+     * CA certificates get one shard per type, end-entity certificates one shard per issuing CA. The issuer's
+     * shard is its first generation, see {@link #generationShard}.
+     */
+    static String shardOf(CertificateType type, DistinguishedNameKey issuer) {
+        if (type == null) {
+            return OTHER_SHARD;
+        }
+        String shard = type.name().toLowerCase();
+        return type == CertificateType.END_ENTITY ? shard + "-" + issuer.fingerprint() : shard;
+    }
+
+    /**
+     * End-entity shards are split into generations of bounded size, so compaction rewrites the open generation
+     * rather than everything the issuer ever signed. Generation 0 keeps the issuer shard's own name.
+     */
+    static String generationShard(String issuerShard, int generation) {
+        return generation == 0 ? issuerShard : issuerShard + "-" + generation;
+    }
+
+    /**
+     * The issuer shard a generation belongs to; shards without generations are their own issuer shard.
+     */
+    static String issuerShardOf(String shard) {
+        int generationSeparator = generationSeparator(shard);
+        return generationSeparator < 0 ? shard : shard.substring(0, generationSeparator);
+    }
+
+    static int generationOf(String shard) {
+        int generationSeparator = generationSeparator(shard);
+        return generationSeparator < 0 ? 0 : Integer.parseInt(shard.substring(generationSeparator + 1));
+    }
+
+    // "end_entity-<fingerprint>-<generation>", type names use underscores so only these dashes separate parts
+    private static int generationSeparator(String shard) {
+        int issuerSeparator = shard.indexOf('-');
+        return issuerSeparator < 0 ? -1 : shard.indexOf('-', issuerSeparator + 1);
+    }
+
+    static CertificateType typeOf(String alias) {
+        int separator = alias.indexOf('-');
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            return CertificateType.valueOf(alias.substring(0, separator).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts a new version on top of this snapshot.
+     */
+    Builder edit() {
+        return new Builder(this, false);
+    }
+
+    /**
+     * Starts a new, empty version; used when the keystore is reloaded from disk.
+     */
+    Builder rebuild() {
+        return new Builder(this, true);
+    }
+
+    long version() {
+        return version;
+    }
+
+    X509Certificate get(String alias) {
+        RegistryEntry entry = entry(alias);
+        return entry != null ? entry.certificate() : null;
+    }
+
+    RegistryEntry entry(String alias) {
+        return lookup(levels, delta, removed, alias);
+    }
+
+    boolean contains(String alias) {
+        return entry(alias) != null;
+    }
+
+    Optional<RegistryEntry> findBySerialNumber(BigInteger serialNumber) {
+        return Optional.ofNullable(lookupSerial(levels, delta, removed, serialNumber));
+    }
+
+    /**
+     * Accepts the canonical hex form as well as legacy decimal serial numbers.
+     */
+    Optional<RegistryEntry> findBySerialNumber(String serialNumber) {
+        for (BigInteger candidate : SerialNumberUtil.parseCandidates(serialNumber)) {
+            RegistryEntry entry = lookupSerial(levels, delta, removed, candidate);
+            if (entry != null) {
+                return Optional.of(entry);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Certificates whose subject is the given name, withdrawn ones are filtered by their index flag.
+     */
+    List<RegistryEntry> findBySubject(X500Principal subject) {
+        DistinguishedNameKey key = DistinguishedNameKey.of(subject);
+        return collect(index -> index.aliasesBySubject(key), true);
+    }
+
+    List<RegistryEntry> findByIssuer(X500Principal issuer) {
+        DistinguishedNameKey key = DistinguishedNameKey.of(issuer);
+        return collect(index -> index.aliasesByIssuer(key), true);
+    }
+
+    List<RegistryEntry> entriesOfShard(String shard) {
+        return collect(index -> index.aliasesOfShard(shard), false);
+    }
+
+    List<RegistryEntry> entriesOfType(CertificateType type) {
+        return collect(index -> index.aliasesOfType(type), false);
+    }
+
+    List<RegistryEntry> entries() {
+        List<RegistryEntry> result = new ArrayList<>(size);
+        for (int level = 0; level < levels.size(); level++) {
+            for (RegistryEntry entry : levels.get(level).index().entries()) {
+                if (visibleInLevel(level, entry.alias())) {
+                    result.add(entry);
+                }
+            }
+        }
+        result.addAll(delta.entries());
+        return result;
+    }
+
+    /**
+     * Walks the snapshot in {@link #entries()} order and keeps only the requested window.
+     */
+    List<RegistryEntry> page(long offset, int limit) {
+        List<RegistryEntry> result = new ArrayList<>(Math.min(limit, size));
+        long position = 0;
+        for (int level = 0; level < levels.size(); level++) {
+            for (RegistryEntry entry : levels.get(level).index().entries()) {
+                if (result.size() == limit) {
+                    return result;
+                }
+                if (visibleInLevel(level, entry.alias()) && position++ >= offset) {
+                    result.add(entry);
+                }
+            }
+        }
+        for (RegistryEntry entry : delta.entries()) {
+            if (result.size() == limit) {
+                break;
+            }
+            if (position++ >= offset) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean hasPendingShards() {
+        return !pendingShards.isEmpty();
+    }
+
+    boolean isPending(String shard) {
+        return pendingShards.contains(shard);
+    }
+
+    Set<String> pendingShards() {
+        return pendingShards;
+    }
+
+    private boolean visibleInLevel(int level, String alias) {
+        return !shadowed(levels, level, delta, removed, alias);
+    }
+
+    /**
+     * Whether a newer level or the delta replaced or removed the alias held by {@code level}.
+     */
+    private static boolean shadowed(List<Level> levels, int level, RegistryIndex delta, Set<String> removed, String alias) {
+        if (delta.contains(alias) || removed.contains(alias)) {
+            return true;
+        }
+        for (int newer = level + 1; newer < levels.size(); newer++) {
+            Level shadowing = levels.get(newer);
+            if (shadowing.index().contains(alias) || shadowing.removed().contains(alias)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<RegistryEntry> collect(Function<RegistryIndex, Set<String>> aliases, boolean skipWithdrawn) {
+        List<RegistryEntry> result = new ArrayList<>();
+        for (int level = 0; level < levels.size(); level++) {
+            RegistryIndex index = levels.get(level).index();
+            for (String alias : aliases.apply(index)) {
+                if (visibleInLevel(level, alias)) {
+                    addUnlessWithdrawn(result, index.entry(alias), skipWithdrawn);
+                }
+            }
+        }
+        for (String alias : aliases.apply(delta)) {
+            addUnlessWithdrawn(result, delta.entry(alias), skipWithdrawn);
+        }
+        return result.isEmpty() ? List.of() : result;
+    }
+
+    private static void addUnlessWithdrawn(List<RegistryEntry> result, RegistryEntry entry, boolean skipWithdrawn) {
+        if (!skipWithdrawn || !entry.withdrawn()) {
+            result.add(entry);
+        }
+    }
+
+    private static RegistryEntry lookup(List<Level> levels, RegistryIndex delta, Set<String> removed, String alias) {
+        RegistryEntry entry = delta.entry(alias);
+        if (entry != null || removed.contains(alias)) {
+            return entry;
+        }
+        for (int level = levels.size() - 1; level >= 0; level--) {
+            Level candidate = levels.get(level);
+            entry = candidate.index().entry(alias);
+            if (entry != null || candidate.removed().contains(alias)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static RegistryEntry lookupSerial(List<Level> levels, RegistryIndex delta, Set<String> removed, BigInteger serialNumber) {
+        RegistryEntry entry = delta.bySerialNumber(serialNumber);
+        if (entry != null) {
+            return entry;
+        }
+        for (int level = levels.size() - 1; level >= 0; level--) {
+            entry = levels.get(level).index().bySerialNumber(serialNumber);
+            // an entry that was replaced or removed is shadowed by a newer level or the delta
+            if (entry != null && !shadowed(levels, level, delta, removed, entry.alias())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Collects the changes for the next snapshot. Not thread-safe: callers hold the keystore's write lock
+     * from {@link CertificateRegistry#edit()} until the result of {@link #build()} has been published.
+     */
+    static final class Builder {
+
+        private final CertificateRegistry from;
+        private final List<Level> levels;
+        private RegistryIndex delta;
+        private final Set<String> removed;
+        private final Set<String> pendingShards;
+        private boolean deltaCopied;
+        private boolean changed;
+        private int size;
+
+        private Builder(CertificateRegistry from, boolean empty) {
+            this.from = from;
+            this.levels = empty ? List.of() : from.levels;
+            this.delta = empty ? new RegistryIndex() : from.delta;
+            this.deltaCopied = empty;
+            this.changed = empty;
+            this.removed = empty ? new HashSet<>() : new HashSet<>(from.removed);
+            this.pendingShards = empty ? new HashSet<>() : new HashSet<>(from.pendingShards);
+            this.size = empty ? 0 : from.size;
+        }
+
+        RegistryEntry entry(String alias) {
+            return lookup(levels, delta, removed, alias);
+        }
+
+        void put(String alias, X509Certificate certificate) {
+            put(RegistryEntry.of(alias, certificate));
+        }
+
+        /**
+         * Adds or replaces the entry under its alias; the withdrawn flag of a replaced entry is kept.
+         */
+        void put(RegistryEntry entry) {
+            RegistryEntry previous = entry(entry.alias());
+            if (previous == null) {
+                size++;
+            }
+            writableDelta().put(previous != null && previous.withdrawn() ? entry.withWithdrawn(true) : entry);
+        }
+
+        /**
+         * Used when a lazily loaded shard is merged in: entries already known (e.g. replayed from the journal) are newer.
+         */
+        void putIfAbsent(String alias, X509Certificate certificate) {
+            putIfAbsent(RegistryEntry.of(alias, certificate));
+        }
+
+        void putIfAbsent(RegistryEntry entry) {
+            if (entry(entry.alias()) == null) {
+                put(entry);
+            }
+        }
+
+        void remove(String alias) {
+            if (entry(alias) == null) {
+                return;
+            }
+            size--;
+            writableDelta().remove(alias);
+            if (lookup(levels, RegistryIndex.EMPTY, Set.of(), alias) != null) {
+                removed.add(alias);
+            }
+        }
+
+        void setWithdrawn(BigInteger serialNumber, boolean withdrawn) {
+            RegistryEntry entry = lookupSerial(levels, delta, removed, serialNumber);
+            if (entry == null || entry.withdrawn() == withdrawn) {
+                return;
+            }
+            writableDelta().put(entry.withWithdrawn(withdrawn));
+        }
+
+        void markPending(String shard) {
+            changed |= pendingShards.add(shard);
+        }
+
+        void markLoaded(String shard) {
+            changed |= pendingShards.remove(shard);
+        }
+
+        CertificateRegistry build() {
+            if (!changed) {
+                return from;
+            }
+            // the builder must not touch the delta again once it is part of a published snapshot
+            deltaCopied = false;
+            if (delta.size() + removed.size() <= MAX_DELTA_SIZE) {
+                return new CertificateRegistry(levels, delta, Set.copyOf(removed), Set.copyOf(pendingShards), from.version + 1, size);
+            }
+            List<Level> sealed = new ArrayList<>(levels);
+            sealed.add(new Level(delta, sealed.isEmpty() ? Set.of() : Set.copyOf(removed)));
+            while (sealed.size() > 1 && sealed.get(sealed.size() - 1).weight() * LEVEL_FANOUT > sealed.get(sealed.size() - 2).weight()) {
+                Level newer = sealed.remove(sealed.size() - 1);
+                Level older = sealed.remove(sealed.size() - 1);
+                sealed.add(merge(older, newer, sealed.isEmpty()));
+            }
+            return new CertificateRegistry(List.copyOf(sealed), RegistryIndex.EMPTY, Set.of(), Set.copyOf(pendingShards), from.version + 1, size);
+        }
+
+        /**
+         * Copies only the two levels involved; the bottom level keeps no removed aliases since nothing is below it.
+         */
+        private static Level merge(Level older, Level newer, boolean bottom) {
+            RegistryIndex merged = new RegistryIndex(older.index());
+            newer.removed().forEach(merged::remove);
+            newer.index().entries().forEach(merged::put);
+            if (bottom) {
+                return new Level(merged, Set.of());
+            }
+            Set<String> removed = new HashSet<>(older.removed());
+            removed.addAll(newer.removed());
+            return new Level(merged, Set.copyOf(removed));
+        }
+
+        private RegistryIndex writableDelta() {
+            if (!deltaCopied) {
+                delta = new RegistryIndex(delta);
+                deltaCopied = true;
+            }
+            changed = true;
+            return delta;
+        }
+    }
+}
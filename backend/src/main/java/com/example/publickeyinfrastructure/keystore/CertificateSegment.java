@@ -0,0 +1,270 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped file of certificate DER encodings used by the {@code segment} storage engine.
+ * <p>
+ * Records use the journal framing {@code [int length][int crc32c][payload]}, the payload being the alias
+ * (modified UTF-8) followed by the DER bytes. The file is mapped in fixed windows that are allocated as the
+ * segment grows and a record never spans two windows: a length of {@code -1} marks the rest of a window as
+ * unused and a length of zero marks the end of the data. The header is written after the payload, so a torn
+ * append is either invisible or fails its checksum. Entries only keep a {@link Slice} into the mapping,
+ * which leaves the certificate bytes to the OS page cache instead of the heap.
+ */
+class CertificateSegment implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateSegment.class);
+    static final int WINDOW_SIZE = 64 << 20;
+    private static final int HEADER_LENGTH = 8;
+    private static final int SKIP_TO_NEXT_WINDOW = -1;
+
+    record SegmentRecord(String alias, Slice slice) {
+    }
+
+    /**
+     * Zero-copy reference to the DER bytes of one certificate.
+     */
+    record Slice(CertificateSegment segment, long offset, int length) implements StoredCertificate {
+
+        @Override
+        public ByteBuffer encoded() {
+            return segment.slice(offset, length);
+        }
+
+        @Override
+        public X509Certificate certificate() {
+            try {
+                return (X509Certificate) CryptoPrimitives.x509CertificateFactory().generateCertificate(new BufferInputStream(encoded()));
+            } catch (CertificateException e) {
+                throw new IllegalStateException("Corrupt certificate at offset " + offset + " of " + segment.path, e);
+            }
+        }
+
+        long end() {
+            return offset + length;
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    // guarded by this; readers go through the published array
+    private final List<MappedByteBuffer> windows = new ArrayList<>();
+    private volatile MappedByteBuffer[] published = new MappedByteBuffer[0];
+    private volatile long writePosition;
+    private final Object syncLock = new Object();
+    // guarded by syncLock
+    private long syncedPosition;
+
+    CertificateSegment(Path path) throws IOException {
+        this.path = path;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long windowCount = Math.max(1, (channel.size() + WINDOW_SIZE - 1) / WINDOW_SIZE);
+        synchronized (this) {
+            for (int i = 0; i < windowCount; i++) {
+                mapWindow();
+            }
+        }
+    }
+
+    /**
+     * Reads every intact record and positions the writer after the last one. A torn or corrupt tail is zeroed.
+     */
+    synchronized List<SegmentRecord> scan() {
+        List<SegmentRecord> records = new ArrayList<>();
+        long position = 0;
+        while (true) {
+            int window = (int) (position / WINDOW_SIZE);
+            int local = (int) (position % WINDOW_SIZE);
+            if (window >= windows.size()) {
+                break;
+            }
+            if (local + HEADER_LENGTH > WINDOW_SIZE) {
+                position = (long) (window + 1) * WINDOW_SIZE;
+                continue;
+            }
+            MappedByteBuffer buffer = windows.get(window);
+            int length = buffer.getInt(local);
+            if (length == 0) {
+                break;
+            }
+            if (length == SKIP_TO_NEXT_WINDOW) {
+                position = (long) (window + 1) * WINDOW_SIZE;
+                continue;
+            }
+            if (length < 2 || local + HEADER_LENGTH + length > WINDOW_SIZE) {
+                truncateAt(position);
+                break;
+            }
+            ByteBuffer payload = buffer.slice(local + HEADER_LENGTH, length);
+            CRC32C crc = new CRC32C();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(local + 4)) {
+                truncateAt(position);
+                break;
+            }
+            int aliasLength = Short.toUnsignedInt(payload.getShort(0));
+            byte[] aliasBytes = new byte[aliasLength];
+            payload.get(2, aliasBytes);
+            long derOffset = position + HEADER_LENGTH + 2 + aliasLength;
+            records.add(new SegmentRecord(new String(aliasBytes, StandardCharsets.UTF_8),
+                    new Slice(this, derOffset, length - 2 - aliasLength)));
+            position += HEADER_LENGTH + length;
+        }
+        writePosition = position;
+        syncedPosition = position;
+        return records;
+    }
+
+    /**
+     * Copies the record into the mapping and returns where its DER bytes live. The record is visible to
+     * readers immediately but only durable once {@link #sync(long)} has covered it.
+     */
+    synchronized Slice append(String alias, byte[] der) throws IOException {
+        byte[] payload = encodePayload(alias, der);
+        int recordLength = HEADER_LENGTH + payload.length;
+        if (recordLength > WINDOW_SIZE) {
+            throw new IOException("Certificate of " + der.length + " bytes does not fit a segment window");
+        }
+        long position = writePosition;
+        int local = (int) (position % WINDOW_SIZE);
+        if (local + recordLength > WINDOW_SIZE) {
+            if (local + 4 <= WINDOW_SIZE) {
+                windows.get((int) (position / WINDOW_SIZE)).putInt(local, SKIP_TO_NEXT_WINDOW);
+            }
+            position = (position / WINDOW_SIZE + 1) * WINDOW_SIZE;
+            local = 0;
+        }
+        int window = (int) (position / WINDOW_SIZE);
+        while (window >= windows.size()) {
+            mapWindow();
+        }
+        MappedByteBuffer buffer = windows.get(window);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        buffer.put(local + HEADER_LENGTH, payload);
+        buffer.putInt(local + 4, (int) crc.getValue());
+        buffer.putInt(local, payload.length);
+        writePosition = position + recordLength;
+        return new Slice(this, position + recordLength - der.length, der.length);
+    }
+
+    /**
+     * Flushes everything written so far if {@code upTo} is not durable yet. Concurrent callers queue on the
+     * same lock and find their record already covered by the first flush (group commit).
+     */
+    void sync(long upTo) {
+        synchronized (syncLock) {
+            if (syncedPosition >= upTo) {
+                return;
+            }
+            long target = writePosition;
+            MappedByteBuffer[] mapped = published;
+            long position = syncedPosition;
+            while (position < target) {
+                int window = (int) (position / WINDOW_SIZE);
+                int local = (int) (position % WINDOW_SIZE);
+                int length = (int) Math.min(WINDOW_SIZE - local, target - position);
+                mapped[window].force(local, length);
+                position += length;
+            }
+            syncedPosition = target;
+        }
+    }
+
+    long size() {
+        return writePosition;
+    }
+
+    ByteBuffer slice(long offset, int length) {
+        return published[(int) (offset / WINDOW_SIZE)].slice((int) (offset % WINDOW_SIZE), length).asReadOnlyBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync(Long.MAX_VALUE);
+        channel.close();
+    }
+
+    // called with the monitor held
+    private void mapWindow() {
+        try {
+            windows.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) windows.size() * WINDOW_SIZE, WINDOW_SIZE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map window " + windows.size() + " of " + path, e);
+        }
+        published = windows.toArray(new MappedByteBuffer[0]);
+    }
+
+    // called with the monitor held
+    private void truncateAt(long position) {
+        logger.warn("Discarding corrupt segment tail of {} at offset {}", path, position);
+        int window = (int) (position / WINDOW_SIZE);
+        int local = (int) (position % WINDOW_SIZE);
+        byte[] zeros = new byte[WINDOW_SIZE - local];
+        windows.get(window).put(local, zeros);
+        windows.get(window).force(local, zeros.length);
+    }
+
+    private static byte[] encodePayload(String alias, byte[] der) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(der.length + alias.length() + 2);
+        try (DataOutputStream payload = new DataOutputStream(bytes)) {
+            payload.writeUTF(alias);
+            payload.write(der);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+
+import javax.security.auth.x500.X500Principal;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * Hash key for a distinguished name, based on the DER encoding of its canonical form so that
+ * differences in string types or letter case between subject and issuer fields do not matter.
+ */
+final class DistinguishedNameKey {
+
+    private final byte[] encoded;
+    private final int hash;
+
+    private DistinguishedNameKey(byte[] encoded) {
+        this.encoded = encoded;
+        this.hash = Arrays.hashCode(encoded);
+    }
+
+    static DistinguishedNameKey of(X500Principal principal) {
+        X500Principal canonical = new X500Principal(principal.getName(X500Principal.CANONICAL));
+        return new DistinguishedNameKey(canonical.getEncoded());
+    }
+
+    /**
+     * Short, file-name safe digest of the name, used to name per-issuer keystore shards.
+     */
+    String fingerprint() {
+        byte[] digest = CryptoPrimitives.messageDigest("SHA-256").digest(encoded);
+        return HexFormat.of().formatHex(digest, 0, 8);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DistinguishedNameKey other)) return false;
+        return hash == other.hash && Arrays.equals(encoded, other.encoded);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
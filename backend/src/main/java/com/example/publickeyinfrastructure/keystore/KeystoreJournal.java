@@ -0,0 +1,299 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of certificate entries written since the last keystore snapshot.
+ * <p>
+ * Every record is {@code [int length][int crc32c][payload]}. Appends are queued and written by a single
+ * committer thread which fsyncs once per batch (group commit), so concurrent issuances share one fsync.
+ * On rollover the active segment is renamed to {@code .old} and stays there until the snapshot that
+ * covers it has been atomically written; replay reads the old segment first and then the active one.
+ */
+class KeystoreJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeystoreJournal.class);
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    record JournalRecord(String alias, X509Certificate certificate) {
+    }
+
+    private record PendingAppend(byte[] record, CompletableFuture<Void> done) {
+    }
+
+    private final Path activePath;
+    private final Path rolledPath;
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    // one permit per queued record; the committer waits on it so records only leave the queue under ioLock
+    private final Semaphore available = new Semaphore(0);
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private final AtomicLong recordCount = new AtomicLong();
+    private final Thread committer;
+    private FileChannel channel;
+    private volatile boolean closed;
+
+    KeystoreJournal(Path activePath) throws IOException {
+        this.activePath = activePath;
+        this.rolledPath = activePath.resolveSibling(activePath.getFileName() + ".old");
+        this.channel = openActive();
+        this.committer = new Thread(this::commitLoop, "keystore-journal-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Reads all intact records, old segment first. A torn or corrupt tail (crash during append) is cut off.
+     */
+    List<JournalRecord> replay() throws IOException {
+        ioLock.lock();
+        try {
+            List<JournalRecord> records = new ArrayList<>();
+            if (Files.exists(rolledPath)) {
+                readSegment(rolledPath, records);
+            }
+            long validLength = readSegment(activePath, records);
+            if (validLength < channel.size()) {
+                logger.warn("Truncating corrupt journal tail of {} at offset {}", activePath, validLength);
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+            channel.position(channel.size());
+            recordCount.set(records.size());
+            return records;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    CompletableFuture<Void> append(String alias, X509Certificate certificate) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Journal is closed"));
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            queue.add(new PendingAppend(encode(alias, certificate), done));
+            available.release();
+        } catch (IOException | CertificateException e) {
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    long recordCount() {
+        return recordCount.get();
+    }
+
+    boolean hasRolledSegment() {
+        return Files.exists(rolledPath);
+    }
+
+    /**
+     * Moves everything appended so far into the rolled segment and starts a fresh active segment.
+     * The caller must snapshot a state that includes every record of the rolled segment before
+     * calling {@link #discardRolledSegment()}.
+     */
+    void rollover() throws IOException {
+        ioLock.lock();
+        try {
+            List<PendingAppend> batch = new ArrayList<>();
+            queue.drainTo(batch);
+            writeBatch(batch);
+            channel.close();
+            if (Files.exists(rolledPath)) {
+                // a previous compaction did not finish, keep both segments by appending to the old one
+                try (FileChannel old = FileChannel.open(rolledPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    old.write(ByteBuffer.wrap(Files.readAllBytes(activePath)));
+                    old.force(true);
+                }
+                Files.delete(activePath);
+            } else {
+                Files.move(activePath, rolledPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+            channel = openActive();
+            recordCount.set(0);
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    void discardRolledSegment() throws IOException {
+        Files.deleteIfExists(rolledPath);
+    }
+
+    /**
+     * Blocks until everything queued before this call is durable.
+     */
+    void flush() throws IOException {
+        ioLock.lock();
+        try {
+            List<PendingAppend> batch = new ArrayList<>();
+            queue.drainTo(batch);
+            writeBatch(batch);
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        committer.interrupt();
+        flush();
+        ioLock.lock();
+        try {
+            channel.close();
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private void commitLoop() {
+        while (!closed) {
+            try {
+                available.acquire();
+            } catch (InterruptedException e) {
+                break;
+            }
+            List<PendingAppend> batch = new ArrayList<>();
+            ioLock.lock();
+            try {
+                available.drainPermits();
+                queue.drainTo(batch);
+                writeBatch(batch);
+            } catch (IOException e) {
+                logger.error("Failed to commit journal batch of {} records", batch.size(), e);
+            } finally {
+                ioLock.unlock();
+            }
+        }
+    }
+
+    // called with ioLock held
+    private void writeBatch(List<PendingAppend> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            for (PendingAppend pending : batch) {
+                ByteBuffer buffer = ByteBuffer.wrap(pending.record());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(false);
+            recordCount.addAndGet(batch.size());
+            batch.forEach(pending -> pending.done().complete(null));
+        } catch (IOException e) {
+            batch.forEach(pending -> pending.done().completeExceptionally(e));
+            throw e;
+        }
+    }
+
+    private FileChannel openActive() throws IOException {
+        Path parent = activePath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel opened = FileChannel.open(activePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        opened.position(opened.size());
+        return opened;
+    }
+
+    private static byte[] encode(String alias, X509Certificate certificate) throws IOException, CertificateException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        try (DataOutputStream payload = new DataOutputStream(payloadBytes)) {
+            byte[] der = certificate.getEncoded();
+            payload.writeUTF(alias);
+            payload.writeInt(der.length);
+            payload.write(der);
+        }
+        byte[] payload = payloadBytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        return record.array();
+    }
+
+    private static long readSegment(Path segment, List<JournalRecord> records) throws IOException {
+        if (!Files.exists(segment)) {
+            return 0;
+        }
+        CertificateFactory factory = CryptoPrimitives.x509CertificateFactory();
+        long validLength = 0;
+        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ);
+             DataInputStream data = new DataInputStream(Channels.newInputStream(in))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = data.readInt();
+                    checksum = data.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        break;
+                    }
+                    payload = data.readNBytes(length);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (payload.length != length) {
+                    break;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    logger.warn("Checksum mismatch in journal {} at offset {}", segment, validLength);
+                    break;
+                }
+                records.add(decode(payload, factory));
+                validLength += 8 + length;
+            }
+        }
+        return validLength;
+    }
+
+    private static JournalRecord decode(byte[] payload, CertificateFactory factory) throws IOException {
+        try (DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String alias = data.readUTF();
+            byte[] der = data.readNBytes(data.readInt());
+            try (InputStream derStream = new ByteArrayInputStream(der)) {
+                return new JournalRecord(alias, (X509Certificate) factory.generateCertificate(derStream));
+            }
+        } catch (CertificateException e) {
+            throw new IOException("Corrupt certificate in journal record", e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * File layout of the sharded project keystore: one PKCS12 file per shard inside a single directory.
+ * Shard ids come from {@link CertificateRegistry#shardOf} and {@link CertificateRegistry#generationShard}; every
+ * shard is written via temp file and atomic rename so a crash can never leave a half written shard behind.
+ */
+class KeystoreShards {
+
+    private static final String EXTENSION = ".p12";
+
+    record ShardEntry(String alias, X509Certificate certificate) {
+    }
+
+    private final Path directory;
+    private final char[] password;
+
+    KeystoreShards(Path directory, char[] password) throws IOException {
+        this.directory = directory;
+        this.password = password;
+        Files.createDirectories(directory);
+    }
+
+    Path directory() {
+        return directory;
+    }
+
+    Set<String> listShards() throws IOException {
+        Set<String> shards = new TreeSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(EXTENSION))
+                    .forEach(name -> shards.add(name.substring(0, name.length() - EXTENSION.length())));
+        }
+        return shards;
+    }
+
+    List<ShardEntry> read(String shard) throws IOException, GeneralSecurityException {
+        return readFile(pathOf(shard), password);
+    }
+
+    static List<ShardEntry> readFile(Path file, char[] password) throws IOException, GeneralSecurityException {
+        List<ShardEntry> entries = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream fis = new FileInputStream(file.toFile())) {
+            keyStore.load(fis, password);
+        }
+        Enumeration<String> aliases = keyStore.aliases();
+        while (aliases.hasMoreElements()) {
+            String alias = aliases.nextElement();
+            if (keyStore.getCertificate(alias) instanceof X509Certificate x509Cert) {
+                entries.add(new ShardEntry(alias, x509Cert));
+            }
+        }
+        return entries;
+    }
+
+    void write(String shard, Collection<CertificateRegistry.RegistryEntry> entries) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, password);
+        for (CertificateRegistry.RegistryEntry entry : entries) {
+            keyStore.setCertificateEntry(entry.alias(), entry.certificate());
+        }
+        Path target = pathOf(shard);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+            keyStore.store(fos, password);
+            fos.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Every shard rewrite is a rename into the directory, so its mtime changes whenever any shard does.
+     */
+    long directoryStamp() throws IOException {
+        return Files.getLastModifiedTime(directory).toMillis();
+    }
+
+    private Path pathOf(String shard) {
+        return directory.resolve(shard + EXTENSION);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Online master key rotation, exposed as the {@code masterkeyrotation} actuator endpoint.
+ * <p>
+ * A write introduces a new master key version, which new keys are wrapped with from then on, and starts a
+ * background job that re-wraps the existing organization keys in batches on a pool sized to the available
+ * cores. Issuance keeps running: each batch only replaces keys that did not change in the meantime. A
+ * rotation interrupted by a restart is resumed once the application is ready.
+ */
+@Component
+@ConditionalOnProperty(name = "organization.keys.backend", havingValue = "file", matchIfMissing = true)
+@Endpoint(id = "masterkeyrotation")
+public class MasterKeyRotation {
+
+    private static final Logger logger = LoggerFactory.getLogger(MasterKeyRotation.class);
+    // keys wrapped concurrently with the start of a rotation can still use the old version, a further pass catches them
+    private static final int MAX_PASSES = 3;
+
+    public enum State {IDLE, RUNNING, COMPLETED, FAILED}
+
+    public record Progress(State state, int targetVersion, long total, long rewrapped, long failed,
+                           Instant startedAt, Instant finishedAt, double keysPerSecond) {
+    }
+
+    @Value("${master-key.rotation.batch-size:128}")
+    private int batchSize;
+    @Value("${master-key.rotation.parallelism:0}")
+    private int parallelism;
+
+    private final MasterKeyStore masterKeyStore;
+    private final OrganizationKeyStore organizationKeyStore;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "master-key-rotation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile State state = State.IDLE;
+    private volatile int targetVersion;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong rewrapped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public MasterKeyRotation(MasterKeyStore masterKeyStore, OrganizationKeyStore organizationKeyStore) {
+        this.masterKeyStore = masterKeyStore;
+        this.organizationKeyStore = organizationKeyStore;
+    }
+
+    @ReadOperation
+    public Progress progress() {
+        Instant started = startedAt;
+        double keysPerSecond = 0;
+        if (started != null) {
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            long millis = Math.max(1, Duration.between(started, end).toMillis());
+            keysPerSecond = rewrapped.get() * 1000.0 / millis;
+        }
+        return new Progress(state, targetVersion, total.get(), rewrapped.get(), failed.get(), started, finishedAt, keysPerSecond);
+    }
+
+    /**
+     * Introduces a new master key version and re-wraps all keys with it. Does nothing while a rotation runs.
+     */
+    @WriteOperation
+    public synchronized Progress rotate() {
+        if (state == State.RUNNING) {
+            return progress();
+        }
+        start(masterKeyStore.rotate());
+        return progress();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void resumeInterrupted() {
+        int current = masterKeyStore.getCurrentVersion();
+        if (current > 1 && state != State.RUNNING && !organizationKeyStore.aliasesWrappedBefore(current).isEmpty()) {
+            logger.info("Resuming interrupted re-wrap to master key version {}", current);
+            start(current);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+    }
+
+    // called with the monitor held
+    private void start(int version) {
+        targetVersion = version;
+        total.set(0);
+        rewrapped.set(0);
+        failed.set(0);
+        startedAt = Instant.now();
+        finishedAt = null;
+        state = State.RUNNING;
+        coordinator.execute(() -> run(version));
+    }
+
+    private void run(int version) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "master-key-rewrap-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int upgraded = organizationKeyStore.upgradeLegacyKeys();
+            if (upgraded > 0) {
+                logger.info("Moved {} legacy organization keys into the wrapped key store", upgraded);
+            }
+            for (int pass = 0; pass < MAX_PASSES; pass++) {
+                List<String> stale = organizationKeyStore.aliasesWrappedBefore(version);
+                if (stale.isEmpty()) {
+                    break;
+                }
+                total.addAndGet(stale.size());
+                List<Callable<Void>> batches = new ArrayList<>();
+                for (int from = 0; from < stale.size(); from += batchSize) {
+                    List<String> batch = stale.subList(from, Math.min(stale.size(), from + batchSize));
+                    batches.add(() -> {
+                        OrganizationKeyStore.RewrapResult result = organizationKeyStore.rewrap(batch);
+                        rewrapped.addAndGet(result.rewrapped());
+                        failed.addAndGet(result.failed());
+                        return null;
+                    });
+                }
+                for (Future<Void> done : workers.invokeAll(batches)) {
+                    done.get();
+                }
+            }
+            state = failed.get() == 0 ? State.COMPLETED : State.FAILED;
+            logger.info("Re-wrapped {} organization keys to master key version {} ({} failed)", rewrapped.get(), version, failed.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state = State.FAILED;
+        } catch (Exception e) {
+            logger.error("Master key rotation to version {} failed", version, e);
+            state = State.FAILED;
+        } finally {
+            finishedAt = Instant.now();
+            workers.shutdownNow();
+        }
+    }
+}
@@ -2,8 +2,8 @@ package com.example.publickeyinfrastructure.keystore;
 
 import com.example.publickeyinfrastructure.config.Constants;
 import com.example.publickeyinfrastructure.config.SecurityProperties;
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
 import jakarta.annotation.PostConstruct;
-import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,16 +14,35 @@ import javax.crypto.SecretKey;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.KeyStore;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-@Getter
+/**
+ * Versioned AES-256 master keys. Version 1 is stored under {@link Constants#MASTER_KEY_ALIAS} as before,
+ * later versions under {@code master-key-<version>}. New keys are always wrapped with the current (highest)
+ * version; older versions are kept so that keys wrapped before a rotation stay readable.
+ */
 @Component
 public class MasterKeyStore {
     private static final Logger logger = LoggerFactory.getLogger(MasterKeyStore.class);
+    private static final int FIRST_VERSION = 1;
+
+    public record MasterKey(int version, SecretKey key) {
+    }
+
     @Value("${master.keystore.path}")
     private String masterKeystorePath;
+    // set by the signing daemon: never generates keys, reloads the file when it meets an unknown version
+    @Value("${master.keystore.read-only:false}")
+    private boolean readOnly;
     private final SecurityProperties securityProperties;
-    private SecretKey masterKey;
+    private final Map<Integer, SecretKey> masterKeys = new ConcurrentHashMap<>();
+    private volatile MasterKey current;
 
     public MasterKeyStore(SecurityProperties securityProperties) {
         this.securityProperties = securityProperties;
@@ -34,40 +53,135 @@ public class MasterKeyStore {
         try {
             File ksFile = new File(masterKeystorePath);
             if (ksFile.exists()) {
-                loadMasterKey(ksFile);
+                loadMasterKeys(ksFile);
+            } else if (readOnly) {
+                throw new IllegalStateException("No master keystore at " + masterKeystorePath);
             } else {
-                generateMasterKey(ksFile);
+                generateMasterKey(FIRST_VERSION);
             }
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize master keystore", e);
         }
     }
 
-    private void generateMasterKey(File ksFile) throws Exception {
+    public SecretKey getMasterKey() {
+        return current.key();
+    }
+
+    public MasterKey getCurrent() {
+        return current;
+    }
+
+    public int getCurrentVersion() {
+        return current.version();
+    }
+
+    public SecretKey getMasterKey(int version) {
+        SecretKey key = masterKeys.get(version);
+        if (key == null && readOnly) {
+            key = reload(version);
+        }
+        if (key == null) {
+            throw new IllegalStateException("Unknown master key version " + version);
+        }
+        return key;
+    }
+
+    /**
+     * Generates the next master key version, persists it next to the existing ones and makes it current.
+     */
+    public synchronized int rotate() {
+        if (readOnly) {
+            throw new IllegalStateException("Master keystore is open read-only");
+        }
+        try {
+            int version = Collections.max(masterKeys.keySet()) + 1;
+            generateMasterKey(version);
+            logger.info("Rotated master key to version {}", version);
+            return version;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to rotate master key", e);
+        }
+    }
+
+    // a version rotated in by the application after this process started
+    private synchronized SecretKey reload(int version) {
+        if (!masterKeys.containsKey(version)) {
+            try {
+                loadMasterKeys(new File(masterKeystorePath));
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to reload master keystore", e);
+            }
+        }
+        return masterKeys.get(version);
+    }
+
+    // called from init or with the monitor held
+    private void generateMasterKey(int version) throws Exception {
         KeyGenerator keyGen = KeyGenerator.getInstance("AES");
-        keyGen.init(256);
-        masterKey = keyGen.generateKey();
+        keyGen.init(256, CryptoPrimitives.random());
+        SecretKey masterKey = keyGen.generateKey();
 
+        char[] passphrase = securityProperties.getEncryption().getPassphrase().toCharArray();
         KeyStore keyStore = KeyStore.getInstance("PKCS12");
-        keyStore.load(null, securityProperties.getEncryption().getPassphrase().toCharArray());
-        KeyStore.SecretKeyEntry entry = new KeyStore.SecretKeyEntry(masterKey);
-        keyStore.setEntry(Constants.MASTER_KEY_ALIAS, entry, new KeyStore.PasswordProtection(securityProperties.getEncryption().getPassphrase().toCharArray()));
+        keyStore.load(null, passphrase);
+        for (Map.Entry<Integer, SecretKey> existing : masterKeys.entrySet()) {
+            keyStore.setEntry(aliasOf(existing.getKey()), new KeyStore.SecretKeyEntry(existing.getValue()), new KeyStore.PasswordProtection(passphrase));
+        }
+        keyStore.setEntry(aliasOf(version), new KeyStore.SecretKeyEntry(masterKey), new KeyStore.PasswordProtection(passphrase));
 
-        try (FileOutputStream fos = new FileOutputStream(ksFile)) {
-            keyStore.store(fos, securityProperties.getEncryption().getPassphrase().toCharArray());
+        // written next to the keystore and swapped in, so a crash never loses the versions already in use
+        Path target = Path.of(masterKeystorePath);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+            keyStore.store(fos, passphrase);
+            fos.getFD().sync();
         }
-        logger.debug("Master key generated and stored. {}", masterKey);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        masterKeys.put(version, masterKey);
+        current = new MasterKey(version, masterKey);
+        logger.debug("Master key version {} generated and stored.", version);
     }
 
-    private void loadMasterKey(File ksFile) throws Exception {
+    private void loadMasterKeys(File ksFile) throws Exception {
+        char[] passphrase = securityProperties.getEncryption().getPassphrase().toCharArray();
         KeyStore keyStore = KeyStore.getInstance("PKCS12");
         try (FileInputStream fis = new FileInputStream(ksFile)) {
-            keyStore.load(fis, securityProperties.getEncryption().getPassphrase().toCharArray());
+            keyStore.load(fis, passphrase);
         }
-        KeyStore.SecretKeyEntry entry = (KeyStore.SecretKeyEntry) keyStore.getEntry(Constants.MASTER_KEY_ALIAS,
-                new KeyStore.PasswordProtection(securityProperties.getEncryption().getPassphrase().toCharArray()));
-        masterKey = entry.getSecretKey();
-        logger.debug("Master key loaded from keystore.{}", masterKey);
+        for (String alias : Collections.list(keyStore.aliases())) {
+            int version = versionOf(alias);
+            if (version < FIRST_VERSION) {
+                continue;
+            }
+            KeyStore.SecretKeyEntry entry = (KeyStore.SecretKeyEntry) keyStore.getEntry(alias, new KeyStore.PasswordProtection(passphrase));
+            masterKeys.put(version, entry.getSecretKey());
+        }
+        if (masterKeys.isEmpty()) {
+            throw new IllegalStateException("No master key found in " + ksFile);
+        }
+        int latest = Collections.max(masterKeys.keySet());
+        current = new MasterKey(latest, masterKeys.get(latest));
+        logger.debug("Loaded {} master key versions, current is {}", masterKeys.size(), latest);
+    }
+
+    private static String aliasOf(int version) {
+        return version == FIRST_VERSION ? Constants.MASTER_KEY_ALIAS : Constants.MASTER_KEY_ALIAS + "-" + version;
     }
 
+    private static int versionOf(String alias) {
+        if (alias.equalsIgnoreCase(Constants.MASTER_KEY_ALIAS)) {
+            return FIRST_VERSION;
+        }
+        String prefix = Constants.MASTER_KEY_ALIAS + "-";
+        if (alias.toLowerCase().startsWith(prefix)) {
+            try {
+                return Integer.parseInt(alias.substring(prefix.length()));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
 }
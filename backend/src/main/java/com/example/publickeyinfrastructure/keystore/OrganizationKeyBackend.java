@@ -0,0 +1,63 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import org.bouncycastle.operator.ContentSigner;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+/**
+ * Where organization private keys live, selected with {@code organization.keys.backend}: {@code file} for
+ * {@link OrganizationKeyStore}, {@code pkcs11} for {@link Pkcs11KeyBackend}. Keys are addressed as
+ * {@code orgId-keyId}.
+ */
+public interface OrganizationKeyBackend {
+
+    record StoredKey(String orgId, String keyId, PrivateKey privateKey, X509Certificate certificate) {
+    }
+
+    /**
+     * Makes signers over one key that was looked up once. A factory may be shared between threads; each signer
+     * it makes is used by one thread for one signature.
+     */
+    @FunctionalInterface
+    interface SignerFactory {
+        ContentSigner newSigner() throws Exception;
+    }
+
+    /**
+     * Stores the private key of {@code certificate}, replacing any key under the same alias.
+     */
+    void storeOrganizationKey(String orgId, String keyId, PrivateKey privateKey, X509Certificate certificate) throws Exception;
+
+    /**
+     * Stores several keys at once; a backend that can write them together overrides this.
+     */
+    default void storeOrganizationKeys(List<StoredKey> keys) throws Exception {
+        for (StoredKey key : keys) {
+            storeOrganizationKey(key.orgId(), key.keyId(), key.privateKey(), key.certificate());
+        }
+    }
+
+    /**
+     * The stored key, or null if there is none. A token-backed key is only a handle to the key on the token.
+     */
+    PrivateKey loadOrganizationKey(String orgId, String keyId) throws Exception;
+
+    void renameOrganizationKey(String orgId, String oldKeyId, String newKeyId) throws Exception;
+
+    /**
+     * A signer for certificate builders over the stored key, or null if there is none.
+     */
+    ContentSigner contentSigner(String orgId, String keyId, String signatureAlgorithm) throws Exception;
+
+    /**
+     * Signers over the stored key for issuing many certificates under it, or null if there is none.
+     */
+    default SignerFactory signerFactory(String orgId, String keyId, String signatureAlgorithm) throws Exception {
+        if (loadOrganizationKey(orgId, keyId) == null) {
+            return null;
+        }
+        return () -> contentSigner(orgId, keyId, signatureAlgorithm);
+    }
+}
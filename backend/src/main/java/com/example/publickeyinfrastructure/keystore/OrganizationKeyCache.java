@@ -0,0 +1,218 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.security.auth.DestroyFailedException;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size- and TTL-bounded cache of decrypted organization private keys, keyed by keystore alias
+ * ({@code orgId-keyId}). Entries expire a fixed time after they were decrypted; the least recently used
+ * entry is dropped when the cache is full. Evicted keys are destroyed where the provider supports it, so
+ * callers should use a returned key right away instead of holding on to it.
+ */
+@Component
+public class OrganizationKeyCache implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrganizationKeyCache.class);
+
+    enum EvictionCause {SIZE, EXPIRED, INVALIDATED}
+
+    private record CachedKey(PrivateKey key, long expiresAt) {
+    }
+
+    @Value("${organization.key-cache.max-size:64}")
+    private int maxSize;
+    @Value("${organization.key-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    // guarded by this, in access order
+    private final Map<String, CachedKey> keys = new LinkedHashMap<>(16, 0.75f, true);
+    // guarded by this; bumped by every invalidation so that loads racing with it are not cached
+    private long generation;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Map<EvictionCause, LongAdder> evictions = new EnumMap<>(EvictionCause.class);
+    private ScheduledExecutorService purger;
+
+    public OrganizationKeyCache() {
+        for (EvictionCause cause : EvictionCause.values()) {
+            evictions.put(cause, new LongAdder());
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        long interval = Math.max(1, ttlSeconds / 4);
+        purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "organization-key-cache-purger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(this::purgeExpired, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (purger != null) {
+            purger.shutdownNow();
+        }
+        invalidateAll();
+    }
+
+    /**
+     * Returns the cached key or {@code null} on a miss.
+     */
+    public PrivateKey get(String alias) {
+        PrivateKey evicted = null;
+        PrivateKey key = null;
+        synchronized (this) {
+            CachedKey cached = keys.get(alias);
+            if (cached != null && cached.expiresAt() - System.nanoTime() > 0) {
+                key = cached.key();
+            } else if (cached != null) {
+                keys.remove(alias);
+                evicted = cached.key();
+            }
+        }
+        if (evicted != null) {
+            evict(evicted, EvictionCause.EXPIRED);
+        }
+        (key != null ? hits : misses).increment();
+        return key;
+    }
+
+    /**
+     * Generation to pass to {@link #put} for a key that is about to be decrypted.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches a freshly decrypted key unless the alias was invalidated since {@code loadedAt} was taken.
+     * Returns the key the caller should use, which is the already cached one if another thread got there first.
+     */
+    public PrivateKey put(String alias, PrivateKey key, long loadedAt) {
+        if (maxSize <= 0) {
+            return key;
+        }
+        PrivateKey expired = null;
+        List<PrivateKey> overflow = new ArrayList<>();
+        synchronized (this) {
+            if (generation != loadedAt) {
+                return key;
+            }
+            CachedKey existing = keys.get(alias);
+            if (existing != null && existing.expiresAt() - System.nanoTime() > 0) {
+                return existing.key();
+            }
+            keys.put(alias, new CachedKey(key, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds)));
+            if (existing != null) {
+                expired = existing.key();
+            }
+            Iterator<CachedKey> eldest = keys.values().iterator();
+            while (keys.size() > maxSize) {
+                overflow.add(eldest.next().key());
+                eldest.remove();
+            }
+        }
+        if (expired != null) {
+            evict(expired, EvictionCause.EXPIRED);
+        }
+        overflow.forEach(evicted -> evict(evicted, EvictionCause.SIZE));
+        return key;
+    }
+
+    public void invalidate(String alias) {
+        CachedKey removed;
+        synchronized (this) {
+            generation++;
+            removed = keys.remove(alias);
+        }
+        if (removed != null) {
+            evict(removed.key(), EvictionCause.INVALIDATED);
+        }
+    }
+
+    public void invalidateAll() {
+        List<CachedKey> removed;
+        synchronized (this) {
+            generation++;
+            removed = new ArrayList<>(keys.values());
+            keys.clear();
+        }
+        removed.forEach(cached -> evict(cached.key(), EvictionCause.INVALIDATED));
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    void purgeExpired() {
+        List<CachedKey> expired = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            Iterator<CachedKey> iterator = keys.values().iterator();
+            while (iterator.hasNext()) {
+                CachedKey cached = iterator.next();
+                if (cached.expiresAt() - now <= 0) {
+                    expired.add(cached);
+                    iterator.remove();
+                }
+            }
+        }
+        expired.forEach(cached -> evict(cached.key(), EvictionCause.EXPIRED));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("organization.key.cache.gets", hits, LongAdder::doubleValue)
+                .tag("result", "hit")
+                .description("Organization key lookups served from the cache")
+                .register(registry);
+        FunctionCounter.builder("organization.key.cache.gets", misses, LongAdder::doubleValue)
+                .tag("result", "miss")
+                .description("Organization key lookups that had to decrypt the key")
+                .register(registry);
+        evictions.forEach((cause, count) -> FunctionCounter.builder("organization.key.cache.evictions", count, LongAdder::doubleValue)
+                .tag("cause", cause.name().toLowerCase())
+                .description("Decrypted organization keys dropped from the cache")
+                .register(registry));
+        Gauge.builder("organization.key.cache.size", this, OrganizationKeyCache::size)
+                .description("Decrypted organization keys currently cached")
+                .register(registry);
+    }
+
+    // best effort: the JDK RSA keys do not implement destroy, PKCS#11 and some provider keys do
+    private void evict(PrivateKey key, EvictionCause cause) {
+        evictions.get(cause).increment();
+        if (key.isDestroyed()) {
+            return;
+        }
+        try {
+            key.destroy();
+        } catch (DestroyFailedException e) {
+            logger.trace("Key of type {} cannot be destroyed", key.getClass().getName());
+        }
+    }
+}
@@ -1,139 +1,303 @@
 package com.example.publickeyinfrastructure.keystore;
 
+import com.example.publickeyinfrastructure.config.Constants;
 import com.example.publickeyinfrastructure.config.SecurityProperties;
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputFilter;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.security.KeyFactory;
+import java.nio.file.Path;
 import java.security.KeyStore;
 import java.security.PrivateKey;
-import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.*;
 
+/**
+ * Organization private keys, wrapped under the master key and stored as {@link WrappedKey} records in a
+ * {@link WrappedKeyStore}.
+ * <p>
+ * Keys written by earlier versions live in {@code organization-keystore.p12} as serialized
+ * {@link EncryptedKeyData} behind a PBE-protected secret entry. That file is only read: a legacy key is
+ * copied into the new store the first time it is loaded or renamed.
+ */
 @Component
-public class OrganizationKeyStore {
+@ConditionalOnProperty(name = "organization.keys.backend", havingValue = "file", matchIfMissing = true)
+public class OrganizationKeyStore implements OrganizationKeyBackend {
 
     private static final Logger logger = LoggerFactory.getLogger(OrganizationKeyStore.class);
     private static final int GCM_TAG_LENGTH = 128;
+    private static final ObjectInputFilter LEGACY_FILTER = ObjectInputFilter.Config.createFilter(
+            EncryptedKeyData.class.getName() + ";java.lang.String;!*");
     @Value("${organization.keystore.path}")
     private String organizationKeystorePath;
+    @Value("${organization.keys.path:./data/organization-keys.dat}")
+    private String organizationKeysPath;
+    // set by the signing daemon, which follows the key file written by the application
+    @Value("${organization.keys.read-only:false}")
+    private boolean readOnly;
     private final MasterKeyStore masterKeyStore;
     private final SecurityProperties securityProperties;
+    private final OrganizationKeyCache keyCache;
 
-    private KeyStore keyStore;
+    private WrappedKeyStore wrappedKeys;
+    // read-only, null when there is no legacy keystore
+    private KeyStore legacyKeyStore;
 
-    public OrganizationKeyStore(MasterKeyStore masterKeyStore, SecurityProperties securityProperties) {
+    public OrganizationKeyStore(MasterKeyStore masterKeyStore, SecurityProperties securityProperties, OrganizationKeyCache keyCache) {
         this.masterKeyStore = masterKeyStore;
         this.securityProperties = securityProperties;
+        this.keyCache = keyCache;
     }
 
     @PostConstruct
     public void init() {
         try {
-            File ksFile = new File(organizationKeystorePath);
-            keyStore = KeyStore.getInstance("PKCS12");
+            if (readOnly) {
+                wrappedKeys = WrappedKeyStore.openReadOnly(Path.of(organizationKeysPath));
+                logger.debug("Following {} wrapped organization keys read-only", wrappedKeys.size());
+                return;
+            }
+            wrappedKeys = new WrappedKeyStore(Path.of(organizationKeysPath));
+            logger.debug("Loaded {} wrapped organization keys", wrappedKeys.size());
 
+            File ksFile = new File(organizationKeystorePath);
             if (ksFile.exists()) {
+                legacyKeyStore = KeyStore.getInstance("PKCS12");
                 try (FileInputStream fis = new FileInputStream(ksFile)) {
-                    keyStore.load(fis, securityProperties.getKeystore().getPassword().toCharArray());
-                    logger.debug("Loaded organization keystore");
+                    legacyKeyStore.load(fis, securityProperties.getKeystore().getPassword().toCharArray());
+                    logger.debug("Loaded legacy organization keystore");
                 }
-            } else {
-                keyStore.load(null, securityProperties.getKeystore().getPassword().toCharArray());
-                saveKeystore();
-                logger.debug("Created new organization keystore");
             }
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize OrganizationKeyStore", e);
         }
     }
 
-    public void storeOrganizationKey(String orgId, String keyId, PrivateKey privateKey) throws Exception {
-        SecretKey masterKey = masterKeyStore.getMasterKey();
+    @PreDestroy
+    public void shutdown() {
+        try {
+            wrappedKeys.close();
+        } catch (IOException e) {
+            logger.error("Failed to close organization key store", e);
+        }
+    }
 
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        byte[] iv = new byte[12];
-        SecureRandom random = new SecureRandom();
-        random.nextBytes(iv);
+    @Override
+    public void storeOrganizationKey(String orgId, String keyId, PrivateKey privateKey, X509Certificate certificate) throws Exception {
+        String alias = orgId + "-" + keyId;
+        byte[] encoded = privateKey.getEncoded();
+        try {
+            wrappedKeys.put(alias, wrap(WrappedKey.algorithmId(privateKey.getAlgorithm()), encoded).encode());
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+        keyCache.invalidate(alias);
+    }
 
-        GCMParameterSpec spec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, masterKey, spec);
+    /**
+     * Wraps every key and appends them with a single fsync.
+     */
+    @Override
+    public void storeOrganizationKeys(List<StoredKey> keys) throws Exception {
+        Map<String, byte[]> wrapped = new LinkedHashMap<>();
+        for (StoredKey key : keys) {
+            byte[] encoded = key.privateKey().getEncoded();
+            try {
+                wrapped.put(key.orgId() + "-" + key.keyId(), wrap(WrappedKey.algorithmId(key.privateKey().getAlgorithm()), encoded).encode());
+            } finally {
+                Arrays.fill(encoded, (byte) 0);
+            }
+        }
+        wrappedKeys.putAll(wrapped);
+        wrapped.keySet().forEach(keyCache::invalidate);
+    }
 
-        byte[] encrypted = cipher.doFinal(privateKey.getEncoded());
+    /**
+     * Served from {@link OrganizationKeyCache} when possible; the returned key may be destroyed once evicted.
+     */
+    @Override
+    public PrivateKey loadOrganizationKey(String orgId, String keyId) throws Exception {
+        String alias = orgId + "-" + keyId;
+        PrivateKey cached = keyCache.get(alias);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = keyCache.generation();
 
-        String encryptedBase64 = Base64.getEncoder().encodeToString(encrypted);
-        String ivBase64 = Base64.getEncoder().encodeToString(iv);
+        byte[] stored = wrappedKeys.get(alias);
+        if (stored == null && (readOnly ? wrappedKeys.refresh() : upgradeLegacyKey(alias))) {
+            stored = wrappedKeys.get(alias);
+        }
+        if (stored == null) {
+            logger.error("Alias '{}' not found", alias);
+            return null;
+        }
 
-        EncryptedKeyData keyData = new EncryptedKeyData(encryptedBase64, ivBase64);
+        WrappedKey wrapped = WrappedKey.decode(stored);
+        byte[] decrypted = unwrap(wrapped);
+        try {
+            PrivateKey key = CryptoPrimitives.keyFactory(WrappedKey.algorithmName(wrapped.algorithm()))
+                    .generatePrivate(new PKCS8EncodedKeySpec(decrypted));
+            return keyCache.put(alias, key, generation);
+        } finally {
+            Arrays.fill(decrypted, (byte) 0);
+        }
+    }
 
-        KeyStore.SecretKeyEntry entry = new KeyStore.SecretKeyEntry(
-                new javax.crypto.spec.SecretKeySpec(serializeKeyData(keyData), "AES")
-        );
+    @Override
+    public ContentSigner contentSigner(String orgId, String keyId, String signatureAlgorithm) throws Exception {
+        PrivateKey key = loadOrganizationKey(orgId, keyId);
+        return key != null ? new JcaContentSignerBuilder(signatureAlgorithm).setProvider(Constants.PROVIDER).build(key) : null;
+    }
 
-        keyStore.setEntry(orgId + "-" + keyId, entry,
-                new KeyStore.PasswordProtection(securityProperties.getKeystore().getPassword().toCharArray()));
+    @Override
+    public SignerFactory signerFactory(String orgId, String keyId, String signatureAlgorithm) throws Exception {
+        // unwrapped once here instead of going through the key cache per certificate
+        PrivateKey key = loadOrganizationKey(orgId, keyId);
+        if (key == null) {
+            return null;
+        }
+        return () -> new JcaContentSignerBuilder(signatureAlgorithm).setProvider(Constants.PROVIDER).build(key);
+    }
 
-        saveKeystore();
+    public void invalidateCachedKey(String orgId, String keyId) {
+        keyCache.invalidate(orgId + "-" + keyId);
+    }
 
+    @Override
+    public void renameOrganizationKey(String orgId, String oldKeyId, String newKeyId) throws Exception {
+        String oldAlias = orgId + "-" + oldKeyId;
+        if (!wrappedKeys.contains(oldAlias) && !upgradeLegacyKey(oldAlias)) {
+            logger.warn("Alias '{}' not found, nothing to rename", oldAlias);
+            return;
+        }
+        wrappedKeys.rename(oldAlias, orgId + "-" + newKeyId);
+        keyCache.invalidate(oldAlias);
     }
 
-    private byte[] serializeKeyData(EncryptedKeyData keyData) throws IOException {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-            oos.writeObject(keyData);
-            return baos.toByteArray();
+    /**
+     * Aliases whose key is wrapped with a master key version older than {@code masterKeyVersion}.
+     */
+    List<String> aliasesWrappedBefore(int masterKeyVersion) {
+        List<String> aliases = new ArrayList<>();
+        wrappedKeys.entries().forEach((alias, stored) -> {
+            if (WrappedKey.masterKeyVersionOf(stored) < masterKeyVersion) {
+                aliases.add(alias);
+            }
+        });
+        return aliases;
+    }
+
+    /**
+     * Moves every remaining legacy entry into the binary store and returns how many were moved.
+     */
+    int upgradeLegacyKeys() throws Exception {
+        if (legacyKeyStore == null) {
+            return 0;
         }
+        int upgraded = 0;
+        for (String alias : Collections.list(legacyKeyStore.aliases())) {
+            if (!wrappedKeys.contains(alias) && upgradeLegacyKey(alias)) {
+                upgraded++;
+            }
+        }
+        return upgraded;
     }
 
-    public PrivateKey loadOrganizationKey(String orgId, String keyId) throws Exception {
-        String alias = orgId + "-" + keyId;
+    record RewrapResult(int rewrapped, int failed) {
+    }
 
-        if (!keyStore.containsAlias(alias)) {
-            logger.error("Alias '{}' not found", alias);
-            return null;
+    /**
+     * Re-wraps the given keys with the current master key and writes them as one batch. Keys that were
+     * rewritten concurrently, e.g. by an issuance, are skipped since they already use the current version.
+     */
+    RewrapResult rewrap(List<String> aliases) throws IOException {
+        MasterKeyStore.MasterKey target = masterKeyStore.getCurrent();
+        List<WrappedKeyStore.Replacement> replacements = new ArrayList<>(aliases.size());
+        int failed = 0;
+        for (String alias : aliases) {
+            byte[] stored = wrappedKeys.get(alias);
+            if (stored == null || WrappedKey.masterKeyVersionOf(stored) >= target.version()) {
+                continue;
+            }
+            try {
+                WrappedKey wrapped = WrappedKey.decode(stored);
+                byte[] decrypted = unwrap(wrapped);
+                try {
+                    replacements.add(new WrappedKeyStore.Replacement(alias, stored, wrap(target, wrapped.algorithm(), decrypted).encode()));
+                } finally {
+                    Arrays.fill(decrypted, (byte) 0);
+                }
+            } catch (Exception e) {
+                failed++;
+                logger.error("Failed to re-wrap organization key '{}'", alias, e);
+            }
         }
+        return new RewrapResult(wrappedKeys.replaceAll(replacements), failed);
+    }
 
-        SecretKey encryptedKeyEntry = (SecretKey) keyStore.getKey(alias, securityProperties.getKeystore().getPassword().toCharArray());
+    private WrappedKey wrap(int algorithm, byte[] plaintext) throws Exception {
+        return wrap(masterKeyStore.getCurrent(), algorithm, plaintext);
+    }
+
+    private WrappedKey wrap(MasterKeyStore.MasterKey masterKey, int algorithm, byte[] plaintext) throws Exception {
+        byte[] iv = new byte[WrappedKey.IV_LENGTH];
+        CryptoPrimitives.random().nextBytes(iv);
+        Cipher cipher = CryptoPrimitives.aesGcm();
+        cipher.init(Cipher.ENCRYPT_MODE, masterKey.key(), new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        return WrappedKey.of(algorithm, masterKey.version(), iv, cipher.doFinal(plaintext));
+    }
+
+    private byte[] unwrap(WrappedKey wrapped) throws Exception {
+        Cipher cipher = CryptoPrimitives.aesGcm();
+        cipher.init(Cipher.DECRYPT_MODE, masterKeyStore.getMasterKey(wrapped.masterKeyVersion()), new GCMParameterSpec(GCM_TAG_LENGTH, wrapped.iv()));
+        return cipher.doFinal(wrapped.ciphertext());
+    }
+
+    /**
+     * Moves a key from the legacy PKCS12 keystore into the binary store. Returns false if there is none.
+     */
+    private synchronized boolean upgradeLegacyKey(String alias) throws Exception {
+        if (wrappedKeys.contains(alias)) {
+            return true;
+        }
+        if (legacyKeyStore == null || wrappedKeys.isDeleted(alias) || !legacyKeyStore.containsAlias(alias)) {
+            return false;
+        }
+        SecretKey encryptedKeyEntry = (SecretKey) legacyKeyStore.getKey(alias, securityProperties.getKeystore().getPassword().toCharArray());
         EncryptedKeyData keyData = deserializeKeyData(encryptedKeyEntry.getEncoded());
 
         byte[] encrypted = Base64.getDecoder().decode(keyData.getEncryptedKeyBase64());
         byte[] iv = Base64.getDecoder().decode(keyData.getIvBase64());
-        SecretKey masterKey = masterKeyStore.getMasterKey();
-
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
-        byte[] decrypted = cipher.doFinal(encrypted);
-
-        return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(decrypted));
+        // legacy entries are RSA keys sealed with the same AES-GCM parameters under master key version 1,
+        // so only the framing changes
+        wrappedKeys.put(alias, WrappedKey.of(WrappedKey.ALGORITHM_RSA, 1, iv, encrypted).encode());
+        logger.debug("Upgraded legacy organization key '{}'", alias);
+        return true;
     }
 
     private EncryptedKeyData deserializeKeyData(byte[] data) throws IOException, ClassNotFoundException {
         try (ByteArrayInputStream bais = new ByteArrayInputStream(data);
              ObjectInputStream ois = new ObjectInputStream(bais)) {
+            ois.setObjectInputFilter(LEGACY_FILTER);
             return (EncryptedKeyData) ois.readObject();
         }
     }
-
-    private void saveKeystore() {
-        try (FileOutputStream fos = new FileOutputStream(organizationKeystorePath)) {
-            keyStore.store(fos, securityProperties.getKeystore().getPassword().toCharArray());
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to save OrganizationKeyStore", e);
-        }
-    }
 }
@@ -0,0 +1,311 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.config.SecurityProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.security.auth.login.LoginException;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.security.AuthProvider;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Organization keys on a PKCS#11 token (an HSM, or SoftHSM for development), enabled with
+ * {@code organization.keys.backend=pkcs11}.
+ * <p>
+ * The token is logged in once at startup through the SunPKCS11 provider, configured by the file at
+ * {@code organization.keys.pkcs11.config}. Key handles are looked up on the token once per alias and reused.
+ * Signing borrows one of {@code organization.keys.pkcs11.sessions} signer slots, each of which keeps a
+ * {@link Signature} per key that is already initialized with the handle, so no slot initializes a key twice.
+ * The token sessions themselves are opened and pooled by SunPKCS11; the slot count only bounds how many
+ * signatures this backend asks the token for at once. Per-slot latency is recorded as
+ * {@code organization.key.pkcs11.sign} to size it for the peak issuance rate.
+ * <p>
+ * Renaming relabels the key on the token, so aliases migrated by {@link ProjectKeyStore} at startup keep working.
+ * <p>
+ * SunPKCS11 in Java 17 handles RSA and EC keys, not Ed25519. The signing daemon only serves file-backed keys.
+ */
+@Component
+@ConditionalOnProperty(name = "organization.keys.backend", havingValue = "pkcs11")
+public class Pkcs11KeyBackend implements OrganizationKeyBackend, MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(Pkcs11KeyBackend.class);
+
+    @Value("${organization.keys.pkcs11.config:./pkcs11.cfg}")
+    private String config;
+    @Value("${organization.keys.pkcs11.sessions:8}")
+    private int sessionCount;
+    @Value("${organization.keys.pkcs11.borrow-timeout-ms:5000}")
+    private long borrowTimeoutMillis;
+    private String pin;
+
+    private Provider provider;
+    private KeyStore token;
+    private final Map<String, PrivateKey> handles = new ConcurrentHashMap<>();
+    private BlockingQueue<Session> idle;
+    // replaced by the application registry in bindTo, so signing works before metrics are bound
+    private volatile MeterRegistry meterRegistry = new CompositeMeterRegistry();
+
+    private record Initialized(PrivateKey key, Signature signature) {
+    }
+
+    /**
+     * Used by one thread at a time, between {@link #borrow} and giving it back.
+     */
+    private final class Session {
+        final String name;
+        final Map<String, Initialized> signatures = new HashMap<>();
+
+        Session(int index) {
+            this.name = String.valueOf(index);
+        }
+
+        Signature signature(String alias, String signatureAlgorithm, PrivateKey key) throws Exception {
+            String id = alias + "/" + signatureAlgorithm;
+            Initialized initialized = signatures.get(id);
+            // a replaced key has a new handle
+            if (initialized == null || initialized.key() != key) {
+                Signature signature = Signature.getInstance(signatureAlgorithm, provider);
+                signature.initSign(key);
+                initialized = new Initialized(key, signature);
+                signatures.put(id, initialized);
+            }
+            return initialized.signature();
+        }
+
+        Timer timer() {
+            return Timer.builder("organization.key.pkcs11.sign")
+                    .tag("session", name)
+                    .description("Time a PKCS#11 signing session spent on one signature")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Autowired
+    public Pkcs11KeyBackend(SecurityProperties securityProperties) {
+        this.pin = securityProperties.getPkcs11().getPin();
+    }
+
+    public Pkcs11KeyBackend(String config, String pin, int sessions, long borrowTimeoutMillis) {
+        this.config = config;
+        this.pin = pin;
+        this.sessionCount = sessions;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            provider = Security.getProvider("SunPKCS11").configure(config);
+            token = KeyStore.getInstance("PKCS11", provider);
+            token.load(null, pin != null ? pin.toCharArray() : null);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to log in to PKCS#11 token configured in " + config, e);
+        }
+        sessionCount = Math.max(1, sessionCount);
+        idle = new ArrayBlockingQueue<>(sessionCount);
+        for (int i = 0; i < sessionCount; i++) {
+            idle.add(new Session(i));
+        }
+        logger.info("Logged in to PKCS#11 token {} with {} signing sessions", provider.getName(), sessionCount);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            ((AuthProvider) provider).logout();
+        } catch (LoginException e) {
+            logger.error("Failed to log out of PKCS#11 token", e);
+        }
+    }
+
+    @Override
+    public void storeOrganizationKey(String orgId, String keyId, PrivateKey privateKey, X509Certificate certificate) throws Exception {
+        String alias = orgId + "-" + keyId;
+        // the token pairs a private key with its certificate; PKCS#11 entries take no per-entry password
+        synchronized (this) {
+            token.setEntry(alias, new KeyStore.PrivateKeyEntry(privateKey, new X509Certificate[]{certificate}), null);
+            handles.remove(alias);
+        }
+    }
+
+    @Override
+    public PrivateKey loadOrganizationKey(String orgId, String keyId) throws Exception {
+        return handle(orgId + "-" + keyId);
+    }
+
+    private PrivateKey handle(String alias) throws Exception {
+        PrivateKey handle = handles.get(alias);
+        if (handle != null) {
+            return handle;
+        }
+        synchronized (this) {
+            handle = handles.get(alias);
+            if (handle == null) {
+                handle = (PrivateKey) token.getKey(alias, null);
+                if (handle == null) {
+                    logger.error("Alias '{}' not found on PKCS#11 token", alias);
+                    return null;
+                }
+                handles.put(alias, handle);
+            }
+            return handle;
+        }
+    }
+
+    @Override
+    public void renameOrganizationKey(String orgId, String oldKeyId, String newKeyId) throws Exception {
+        String oldAlias = orgId + "-" + oldKeyId;
+        String newAlias = orgId + "-" + newKeyId;
+        synchronized (this) {
+            if (!token.containsAlias(oldAlias)) {
+                logger.warn("Alias '{}' not found, nothing to rename", oldAlias);
+                return;
+            }
+            // the key cannot leave the token; storing its handle under the new alias relabels the key on the
+            // token, and whatever is still left under the old alias, such as its certificate, is then deleted
+            KeyStore.Entry entry = token.getEntry(oldAlias, null);
+            if (!(entry instanceof KeyStore.PrivateKeyEntry)) {
+                throw new IllegalStateException("Alias '" + oldAlias + "' on PKCS#11 token holds no private key");
+            }
+            token.setEntry(newAlias, entry, null);
+            if (!token.isKeyEntry(newAlias)) {
+                throw new IllegalStateException("Failed to store key '" + oldAlias + "' as '" + newAlias + "' on PKCS#11 token");
+            }
+            if (token.containsAlias(oldAlias)) {
+                token.deleteEntry(oldAlias);
+            }
+            handles.remove(oldAlias);
+            handles.remove(newAlias);
+        }
+    }
+
+    @Override
+    public ContentSigner contentSigner(String orgId, String keyId, String signatureAlgorithm) throws Exception {
+        PrivateKey key = loadOrganizationKey(orgId, keyId);
+        return key != null ? new TokenContentSigner(orgId + "-" + keyId, signatureAlgorithm, algorithmIdentifier(signatureAlgorithm)) : null;
+    }
+
+    @Override
+    public SignerFactory signerFactory(String orgId, String keyId, String signatureAlgorithm) throws Exception {
+        if (loadOrganizationKey(orgId, keyId) == null) {
+            return null;
+        }
+        String alias = orgId + "-" + keyId;
+        AlgorithmIdentifier algorithmIdentifier = algorithmIdentifier(signatureAlgorithm);
+        return () -> new TokenContentSigner(alias, signatureAlgorithm, algorithmIdentifier);
+    }
+
+    private static AlgorithmIdentifier algorithmIdentifier(String signatureAlgorithm) {
+        return new DefaultSignatureAlgorithmIdentifierFinder().find(signatureAlgorithm);
+    }
+
+    /**
+     * Signs {@code data} with the key stored under {@code alias} in the first signing session that is free.
+     */
+    byte[] sign(String alias, String signatureAlgorithm, byte[] data) throws Exception {
+        PrivateKey key = handle(alias);
+        if (key == null) {
+            throw new IllegalStateException("Key '" + alias + "' not found on PKCS#11 token");
+        }
+        Session session = borrow();
+        long started = System.nanoTime();
+        try {
+            Signature signature = session.signature(alias, signatureAlgorithm, key);
+            signature.update(data);
+            return signature.sign();
+        } catch (Exception e) {
+            // do not reuse a signature left in an unknown state
+            session.signatures.remove(alias + "/" + signatureAlgorithm);
+            throw e;
+        } finally {
+            session.timer().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            idle.add(session);
+        }
+    }
+
+    private Session borrow() throws InterruptedException {
+        long started = System.nanoTime();
+        Session session = idle.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        Timer.builder("organization.key.pkcs11.wait")
+                .description("Time spent waiting for a free PKCS#11 signing session")
+                .register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (session == null) {
+            throw new IllegalStateException("No PKCS#11 signing session free within " + borrowTimeoutMillis + " ms");
+        }
+        return session;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        Gauge.builder("organization.key.pkcs11.sessions.busy", this, backend -> backend.sessionCount - backend.idle.size())
+                .description("PKCS#11 signing sessions in use")
+                .register(registry);
+        Gauge.builder("organization.key.pkcs11.sessions", this, backend -> backend.sessionCount)
+                .description("PKCS#11 signing sessions in the pool")
+                .register(registry);
+    }
+
+    private final class TokenContentSigner implements ContentSigner {
+        private final String alias;
+        private final String signatureAlgorithm;
+        private final AlgorithmIdentifier algorithmIdentifier;
+        private final ByteArrayOutputStream toBeSigned = new ByteArrayOutputStream(1024);
+
+        TokenContentSigner(String alias, String signatureAlgorithm, AlgorithmIdentifier algorithmIdentifier) {
+            this.alias = alias;
+            this.signatureAlgorithm = signatureAlgorithm;
+            this.algorithmIdentifier = algorithmIdentifier;
+        }
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+            return algorithmIdentifier;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return toBeSigned;
+        }
+
+        @Override
+        public byte[] getSignature() {
+            try {
+                return sign(alias, signatureAlgorithm, toBeSigned.toByteArray());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for a PKCS#11 signing session", e);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to sign with PKCS#11 key '" + alias + "'", e);
+            }
+        }
+    }
+}
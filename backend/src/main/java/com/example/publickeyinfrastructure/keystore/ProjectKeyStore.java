@@ -2,11 +2,10 @@ package com.example.publickeyinfrastructure.keystore;
 
 import com.example.publickeyinfrastructure.config.SecurityProperties;
 import com.example.publickeyinfrastructure.model.CertificateEntity;
-import com.example.publickeyinfrastructure.model.Certificate;
+import com.example.publickeyinfrastructure.model.CertificateView;
 import com.example.publickeyinfrastructure.model.CertificateType;
-import com.example.publickeyinfrastructure.model.Role;
-import com.example.publickeyinfrastructure.model.User;
 import com.example.publickeyinfrastructure.util.ExtensionUtil;
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.X500Name;
@@ -15,214 +14,707 @@ import org.bouncycastle.asn1.x500.style.IETFUtils;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 
+import javax.security.auth.x500.X500Principal;
 import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.*;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Component
 public class ProjectKeyStore {
 
     private static final Logger logger = LoggerFactory.getLogger(ProjectKeyStore.class);
 
-    private final KeyStore keyStore;
+    // legacy single-file keystore, split into shards on first start
+    @Value("${keystore.path}")
+    private String keystorePath;
+    @Value("${keystore.directory}")
+    private String keystoreDirectory;
+    @Value("${keystore.journal.compaction-threshold:1000}")
+    private int compactionThreshold;
+    @Value("${keystore.journal.compaction-interval-seconds:60}")
+    private long compactionIntervalSeconds;
+    @Value("${keystore.shard.max-entries:5000}")
+    private int maxShardEntries;
+    // "pkcs12" keeps the sharded PKCS12 files plus journal, "segment" the memory-mapped DER segment
+    @Value("${keystore.storage:pkcs12}")
+    private String storage;
+    @Value("${keystore.segment.path:./data/certificates.seg}")
+    private String segmentPath;
     private final SecurityProperties securityProperties;
-    private final OrganizationKeyStore organizationKeyStore;
-
-
-    // Index for fast lookup
-    private final Map<String, List<String>> typeIndex = new HashMap<>();
-
-    public ProjectKeyStore(SecurityProperties securityProperties, OrganizationKeyStore organizationKeyStore) {
+    private final OrganizationKeyBackend organizationKeyStore;
+
+    // Current immutable snapshot. Readers use it without locking, writers build the next version while
+    // holding this object's monitor and publish it with a single volatile write.
+    private volatile CertificateRegistry registry = CertificateRegistry.EMPTY;
+    // Withdrawn serial numbers, kept apart from the snapshot so they survive reloads and cover end-entity shards
+    // not loaded yet; the entry flags are applied from here whenever entries become resident.
+    private final Set<BigInteger> withdrawnSerialNumbers = ConcurrentHashMap.newKeySet();
+    // bumped whenever a withdrawal flag changes or the registry is reloaded, so cached chain verifications know
+    // to redo the check
+    private final AtomicLong withdrawalVersion = new AtomicLong();
+
+    // One PKCS12 file per shard; end-entity shards are only read when something asks for them
+    private KeystoreShards shards;
+    // guarded by the monitor
+    private final Set<String> dirtyShards = new HashSet<>();
+    // guarded by the monitor: newest generation of every end-entity issuer shard, and the size of the ones
+    // written to since they were loaded
+    private final Map<String, Integer> lastGenerations = new HashMap<>();
+    private final Map<String, Integer> openShardSizes = new HashMap<>();
+
+    // Writes are made durable by the journal, shard files are only rewritten by compaction
+    private KeystoreJournal journal;
+    private ScheduledExecutorService compactor;
+    private final ReentrantLock compactionLock = new ReentrantLock();
+
+    private volatile long directoryStamp = -1;
+
+    // Only set with keystore.storage=segment; shards, journal and compaction are not used then
+    private CertificateSegment segment;
+
+    public ProjectKeyStore(SecurityProperties securityProperties, OrganizationKeyBackend organizationKeyStore) {
         this.securityProperties = securityProperties;
         this.organizationKeyStore = organizationKeyStore;
+    }
+
+    @PostConstruct
+    public void init() {
+        if ("segment".equalsIgnoreCase(storage)) {
+            openSegment();
+            return;
+        }
         try {
-            this.keyStore = KeyStore.getInstance("PKCS12");
-        } catch (KeyStoreException e) {
-            throw new IllegalStateException("Failed to initialize KeyStore", e);
+            shards = new KeystoreShards(Path.of(keystoreDirectory), getKeystorePassword());
+            // kept next to (not inside) the shard directory so appends and rollovers never look like shard changes
+            journal = new KeystoreJournal(Path.of(keystoreDirectory + ".journal"));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open keystore directory " + keystoreDirectory, e);
         }
+        load();
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "keystore-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded, compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
     }
 
-    public void loadOrCreate(String keystorePath) {
-        File keystoreFile = new File(keystorePath);
+    @PreDestroy
+    public void shutdown() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.error("Failed to close certificate segment {}", segmentPath, e);
+            }
+            return;
+        }
+        compactor.shutdown();
         try {
-            if (keystoreFile.exists()) {
-                try (FileInputStream fis = new FileInputStream(keystoreFile)) {
-                    keyStore.load(fis, getKeystorePassword());
-                    logger.info("Loaded existing keystore from {}", keystorePath);
-                }
-            } else {
-                keyStore.load(null, getKeystorePassword());
-                File parentDir = keystoreFile.getParentFile();
-                if (parentDir != null && !parentDir.exists()) {
-                    parentDir.mkdirs();
+            // a background compaction still running would make the final one below a no-op
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Background keystore compaction did not finish in time");
+            }
+            compact();
+            journal.close();
+        } catch (IOException e) {
+            logger.error("Failed to close keystore journal", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void load() {
+        try {
+            CertificateRegistry.Builder loaded = registry.rebuild();
+            dirtyShards.clear();
+            lastGenerations.clear();
+            openShardSizes.clear();
+            int deferred = 0;
+            for (String shard : shards.listShards()) {
+                if (isLazyShard(shard)) {
+                    lastGenerations.merge(CertificateRegistry.issuerShardOf(shard), CertificateRegistry.generationOf(shard), Math::max);
+                    loaded.markPending(shard);
+                    deferred++;
+                    continue;
                 }
-                logger.info("Initialized new empty keystore");
+                shards.read(shard).forEach(entry -> loaded.put(entry.alias(), entry.certificate()));
+            }
+
+            journal.flush();
+            List<KeystoreJournal.JournalRecord> records = journal.replay();
+            for (KeystoreJournal.JournalRecord record : records) {
+                loaded.put(inLastGeneration(CertificateRegistry.RegistryEntry.of(record.alias(), record.certificate())));
+                dirtyShards.add(loaded.entry(record.alias()).shard());
+            }
+            applyWithdrawals(loaded);
+            registry = loaded.build();
+            withdrawalVersion.incrementAndGet();
+            logger.info("Loaded keystore from {} ({} entries, {} end-entity shards deferred, {} journal records replayed)",
+                    keystoreDirectory, registry.size(), deferred, records.size());
+            directoryStamp = shards.directoryStamp();
+
+            boolean legacyFile = migrateSingleFileKeystore();
+            if (migrateLegacyAliases() > 0 || legacyFile) {
+                compact();
+            }
+            if (legacyFile) {
+                retireSingleFileKeystore();
             }
-            buildTypeIndex();
         } catch (Exception e) {
-            logger.error("Failed to load or create keystore from {}", keystorePath, e);
+            logger.error("Failed to load or create keystore from {}", keystoreDirectory, e);
             throw new RuntimeException("Failed to load or create keystore", e);
         }
     }
 
-    private void buildTypeIndex() throws KeyStoreException {
-        typeIndex.clear();
-        Enumeration<String> aliases = keyStore.aliases();
-        while (aliases.hasMoreElements()) {
-            String alias = aliases.nextElement();
-            String type = extractTypeFromAlias(alias);
-            if (type != null) {
-                typeIndex.computeIfAbsent(type.toLowerCase(), k -> new ArrayList<>()).add(alias);
+    private synchronized void openSegment() {
+        try {
+            segment = new CertificateSegment(Path.of(segmentPath));
+            CertificateRegistry.Builder builder = registry.rebuild();
+            List<CertificateSegment.SegmentRecord> records = segment.scan();
+            for (CertificateSegment.SegmentRecord record : records) {
+                builder.put(CertificateRegistry.RegistryEntry.of(record.alias(), record.slice()));
+            }
+            applyWithdrawals(builder);
+            registry = builder.build();
+            withdrawalVersion.incrementAndGet();
+            logger.info("Opened certificate segment {} ({} entries, {} bytes)", segmentPath, registry.size(), segment.size());
+            if (records.isEmpty()) {
+                migrateIntoSegment();
+            }
+        } catch (Exception e) {
+            logger.error("Failed to open certificate segment {}", segmentPath, e);
+            throw new RuntimeException("Failed to open certificate segment", e);
+        }
+    }
+
+    /**
+     * One-shot import into an empty segment: from the single-file keystore if it is still there, otherwise
+     * from the sharded keystore and its journal. Aliases are canonicalized on the way in.
+     */
+    private void migrateIntoSegment() throws Exception {
+        Map<String, X509Certificate> source = new LinkedHashMap<>();
+        Path legacy = Path.of(keystorePath);
+        Path directory = Path.of(keystoreDirectory);
+        if (Files.exists(legacy)) {
+            KeystoreShards.readFile(legacy, getKeystorePassword()).forEach(entry -> source.put(entry.alias(), entry.certificate()));
+            readJournalInto(Path.of(keystorePath + ".journal"), source);
+        } else if (Files.isDirectory(directory)) {
+            KeystoreShards existing = new KeystoreShards(directory, getKeystorePassword());
+            for (String shard : existing.listShards()) {
+                existing.read(shard).forEach(entry -> source.put(entry.alias(), entry.certificate()));
             }
+            readJournalInto(Path.of(keystoreDirectory + ".journal"), source);
+        }
+        if (source.isEmpty()) {
+            return;
+        }
+        CertificateRegistry.Builder builder = registry.edit();
+        long end = 0;
+        for (Map.Entry<String, X509Certificate> entry : source.entrySet()) {
+            String alias = canonicalizeAlias(entry.getKey(), entry.getValue());
+            CertificateSegment.Slice slice = segment.append(alias, entry.getValue().getEncoded());
+            builder.put(CertificateRegistry.RegistryEntry.of(alias, slice, entry.getValue()));
+            end = slice.end();
         }
+        segment.sync(end);
+        applyWithdrawals(builder);
+        registry = builder.build();
+        if (Files.exists(legacy)) {
+            retireSingleFileKeystore();
+        }
+        logger.info("Migrated {} certificates into segment {}", source.size(), segmentPath);
     }
 
-    private String extractTypeFromAlias(String alias) {
-        if (alias.contains("-")) {
-            return alias.split("-", 2)[0];
+    private static void readJournalInto(Path journalPath, Map<String, X509Certificate> target) throws IOException {
+        if (!Files.exists(journalPath) && !Files.exists(journalPath.resolveSibling(journalPath.getFileName() + ".old"))) {
+            return;
+        }
+        try (KeystoreJournal old = new KeystoreJournal(journalPath)) {
+            old.replay().forEach(record -> target.put(record.alias(), record.certificate()));
         }
-        return null;
     }
 
-    public Map<CertificateType, List<X509Certificate>> getCACertificates() {
-        Map<CertificateType, List<X509Certificate>> result = new HashMap<>();
-        try {
-            List<String> rootAliases = typeIndex.getOrDefault("root", List.of());
-            List<String> intermediateAliases = typeIndex.getOrDefault("intermediate", List.of());
-            for (String alias : rootAliases) {
-                java.security.cert.Certificate cert = keyStore.getCertificate(alias);
-                //todo add withdrawal logic
-                if (cert instanceof X509Certificate x509Cert) {
-                    result.computeIfAbsent(CertificateType.ROOT, k -> new ArrayList<>()).add(x509Cert);
+    private static boolean isLazyShard(String shard) {
+        return shard.startsWith(CertificateType.END_ENTITY.name().toLowerCase() + "-");
+    }
+
+    // called with the monitor held
+    private void ensureShardLoaded(String shard) throws IOException, GeneralSecurityException {
+        if (registry.isPending(shard)) {
+            List<KeystoreShards.ShardEntry> entries = shards.read(shard);
+            CertificateRegistry.Builder builder = registry.edit();
+            entries.forEach(entry -> builder.putIfAbsent(CertificateRegistry.RegistryEntry.of(entry.alias(), entry.certificate()).withShard(shard)));
+            builder.markLoaded(shard);
+            applyWithdrawals(builder);
+            registry = builder.build();
+            logger.debug("Loaded keystore shard '{}' with {} entries", shard, entries.size());
+        }
+    }
+
+    private void ensureAllShardsLoaded() {
+        if (!registry.hasPendingShards()) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                for (String shard : registry.pendingShards()) {
+                    ensureShardLoaded(shard);
+                }
+            } catch (IOException | GeneralSecurityException e) {
+                throw new RuntimeException("Failed to load keystore shards", e);
+            }
+        }
+    }
 
+    private void ensureIssuerShardsLoaded(X500Principal issuerDN) {
+        CertificateRegistry snapshot = registry;
+        if (!snapshot.hasPendingShards()) {
+            return;
+        }
+        String issuerShard = CertificateRegistry.shardOf(CertificateType.END_ENTITY, DistinguishedNameKey.of(issuerDN));
+        List<String> pending = snapshot.pendingShards().stream()
+                .filter(shard -> CertificateRegistry.issuerShardOf(shard).equals(issuerShard))
+                .toList();
+        if (pending.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                for (String shard : pending) {
+                    ensureShardLoaded(shard);
                 }
+            } catch (IOException | GeneralSecurityException e) {
+                throw new RuntimeException("Failed to load keystore shard for issuer " + issuerDN, e);
+            }
+        }
+    }
+
+    /**
+     * Pulls the entries of the old single-file keystore (and its journal, if any) into the registry
+     * and marks their shards dirty so the next compaction writes them out.
+     */
+    private boolean migrateSingleFileKeystore() throws Exception {
+        Path legacy = Path.of(keystorePath);
+        if (!Files.exists(legacy)) {
+            return false;
+        }
+        ensureAllShardsLoaded();
+        CertificateRegistry.Builder builder = registry.edit();
+        for (KeystoreShards.ShardEntry entry : KeystoreShards.readFile(legacy, getKeystorePassword())) {
+            builder.putIfAbsent(entry.alias(), entry.certificate());
+            dirtyShards.add(builder.entry(entry.alias()).shard());
+        }
+        Path legacyJournal = Path.of(keystorePath + ".journal");
+        if (Files.exists(legacyJournal)) {
+            try (KeystoreJournal old = new KeystoreJournal(legacyJournal)) {
+                for (KeystoreJournal.JournalRecord record : old.replay()) {
+                    builder.put(record.alias(), record.certificate());
+                    dirtyShards.add(builder.entry(record.alias()).shard());
+                }
+            }
+        }
+        applyWithdrawals(builder);
+        registry = builder.build();
+        logger.info("Migrating single-file keystore {} into shards under {}", keystorePath, keystoreDirectory);
+        return true;
+    }
+
+    private void retireSingleFileKeystore() throws IOException {
+        Path legacy = Path.of(keystorePath);
+        Files.move(legacy, legacy.resolveSibling(legacy.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(Path.of(keystorePath + ".journal"));
+        Files.deleteIfExists(Path.of(keystorePath + ".journal.old"));
+    }
+
+    /**
+     * Reloads the registry only if a shard was rewritten by someone else since it was last loaded or
+     * compacted by this process. The journal is replayed on top, so no acknowledged write is lost.
+     */
+    public void refreshIfChanged() {
+        // a running compaction renames shards before it records the new stamp, that is not an outside change
+        if (segment != null || compactionLock.isLocked() || !changedOnDisk()) {
+            return;
+        }
+        synchronized (this) {
+            if (changedOnDisk()) {
+                logger.info("Keystore {} changed on disk, reloading", keystoreDirectory);
+                load();
             }
+        }
+    }
+
+    private boolean changedOnDisk() {
+        try {
+            return shards.directoryStamp() != directoryStamp;
+        } catch (IOException e) {
+            logger.warn("Could not stat keystore directory {}", keystoreDirectory, e);
+            return false;
+        }
+    }
+
+    /**
+     * Older builds wrote aliases with the decimal serial number while the certificate itself is addressed in hex.
+     * Rewrites such aliases (and the matching organization key entries) to the canonical hex form.
+     */
+    private int migrateLegacyAliases() throws Exception {
+        int migrated = 0;
+        CertificateRegistry.Builder builder = registry.edit();
+        for (CertificateRegistry.RegistryEntry entry : registry.entries()) {
+            String canonicalAlias = canonicalizeAlias(entry.alias(), entry.certificate());
+            if (canonicalAlias.equals(entry.alias())) {
+                continue;
+            }
+            builder.remove(entry.alias());
+            builder.put(CertificateRegistry.RegistryEntry.of(canonicalAlias, entry.certificate()).withShard(entry.shard()));
+            dirtyShards.add(entry.shard());
+            migrated++;
+        }
+        applyWithdrawals(builder);
+        registry = builder.build();
+        return migrated;
+    }
 
-            for (String alias : intermediateAliases) {
-                java.security.cert.Certificate cert = keyStore.getCertificate(alias);
-                if (cert instanceof X509Certificate x509Cert) {
-                    result.computeIfAbsent(CertificateType.INTERMEDIATE, k -> new ArrayList<>()).add(x509Cert);
+    /**
+     * Returns the canonical alias for the entry and moves the organization key over if the alias changes.
+     */
+    private String canonicalizeAlias(String alias, X509Certificate certificate) throws Exception {
+        CertificateType type = CertificateRegistry.typeOf(alias);
+        if (type == null) {
+            return alias;
+        }
+        String canonicalAlias = CertificateRegistry.aliasFor(type, certificate.getSerialNumber());
+        if (!canonicalAlias.equals(alias)) {
+            String orgId = getRDN(new JcaX509CertificateHolder(certificate).getSubject(), BCStyle.O);
+            organizationKeyStore.renameOrganizationKey(orgId, alias, canonicalAlias);
+            logger.info("Migrated legacy keystore alias '{}' to '{}'", alias, canonicalAlias);
+        }
+        return canonicalAlias;
+    }
+
+    /**
+     * Version of the current snapshot, bumped on every in-memory change.
+     */
+    public long getGeneration() {
+        return registry.version();
+    }
+
+    /**
+     * DER encodings of the CA certificates by type, for list views; nothing is decoded.
+     */
+    public Map<CertificateType, List<ByteBuffer>> getCACertificates() {
+        refreshIfChanged();
+        CertificateRegistry snapshot = registry;
+        Map<CertificateType, List<ByteBuffer>> result = new HashMap<>();
+        for (CertificateType type : List.of(CertificateType.ROOT, CertificateType.INTERMEDIATE)) {
+            for (CertificateRegistry.RegistryEntry entry : snapshot.entriesOfType(type)) {
+                // a withdrawn CA cannot issue, so it is not offered as an issuer
+                if (!isWithdrawn(entry.serialNumber())) {
+                    result.computeIfAbsent(type, k -> new ArrayList<>()).add(entry.stored().encoded());
                 }
             }
-        } catch (KeyStoreException e) {
-            logger.error("Failed to retrieve certificates", e);
         }
         return result;
     }
 
-    public void save(String filePath) {
-        try (FileOutputStream fos = new FileOutputStream(filePath)) {
-            keyStore.store(fos, getKeystorePassword());
-            logger.info("Keystore saved successfully to {}", filePath);
-        } catch (IOException | CertificateException | NoSuchAlgorithmException | KeyStoreException e) {
-            logger.error("Failed to save keystore to {}", filePath, e);
-            throw new RuntimeException("Failed to save keystore", e);
+    private void compactIfNeeded() {
+        try {
+            if (journal.recordCount() > 0 || journal.hasRolledSegment()) {
+                compact();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Background keystore compaction failed", e);
         }
     }
 
-    public void writeKeyEntry(String type, String serialNumber, PrivateKey key, X509Certificate certificate, String orgId) {
+    /**
+     * Rewrites the dirty shards (temp file + atomic rename each) and drops the journal segment they cover.
+     * Writers are only blocked while the journal is rolled over and the dirty entries are captured.
+     */
+    public void compact() {
+        if (segment != null || !compactionLock.tryLock()) {
+            return;
+        }
         try {
-            if (type == null || serialNumber == null || type.isEmpty() || serialNumber.isEmpty()) {
-                throw new IllegalArgumentException("Type and serial number cannot be null or empty");
+            Map<String, List<CertificateRegistry.RegistryEntry>> toWrite = new HashMap<>();
+            synchronized (this) {
+                journal.rollover();
+                for (String shard : dirtyShards) {
+                    // never overwrite a shard on disk with only the part of it that is in memory
+                    ensureShardLoaded(shard);
+                }
+                CertificateRegistry snapshot = registry;
+                for (String shard : dirtyShards) {
+                    toWrite.put(shard, snapshot.entriesOfShard(shard));
+                }
+                dirtyShards.clear();
+            }
+            try {
+                for (Map.Entry<String, List<CertificateRegistry.RegistryEntry>> shard : toWrite.entrySet()) {
+                    shards.write(shard.getKey(), shard.getValue());
+                }
+            } catch (IOException | GeneralSecurityException e) {
+                synchronized (this) {
+                    dirtyShards.addAll(toWrite.keySet());
+                }
+                throw e;
             }
-            if (orgId == null || orgId.isEmpty()) {
-                throw new IllegalArgumentException("Organization ID cannot be null or empty");
+            synchronized (this) {
+                directoryStamp = shards.directoryStamp();
             }
+            journal.discardRolledSegment();
+            logger.info("Keystore compacted, rewrote {} shard(s) under {}", toWrite.size(), keystoreDirectory);
+        } catch (IOException | GeneralSecurityException e) {
+            logger.error("Failed to compact keystore to {}", keystoreDirectory, e);
+            throw new RuntimeException("Failed to compact keystore", e);
+        } finally {
+            compactionLock.unlock();
+        }
+    }
 
-            String alias = type.toLowerCase() + "-" + serialNumber;
-            organizationKeyStore.storeOrganizationKey(orgId, alias, key);
+    /**
+     * A newly issued certificate and its private key, stored for the organization {@code orgId}; the key is null
+     * when the subscriber holds it.
+     */
+    public record KeyEntry(CertificateType type, PrivateKey privateKey, X509Certificate certificate, String orgId) {
+    }
 
-            keyStore.setCertificateEntry(alias, certificate);
+    public void writeKeyEntry(String type, String serialNumber, PrivateKey key, X509Certificate certificate, String orgId) {
+        if (type == null || serialNumber == null || type.isEmpty() || serialNumber.isEmpty()) {
+            throw new IllegalArgumentException("Type and serial number cannot be null or empty");
+        }
+        writeKeyEntries(List.of(new KeyEntry(CertificateType.valueOf(type.toUpperCase()), key, certificate, orgId)));
+    }
 
-            logger.debug("Certificate entry '{}' written successfully for organization '{}'", alias, orgId);
+    /**
+     * Writes all entries under one lock acquisition: their organization keys in one batch and their
+     * certificates with a single wait for durability.
+     */
+    public void writeKeyEntries(List<KeyEntry> entries) {
+        List<CompletableFuture<Void>> durable = new ArrayList<>();
+        long syncedUpTo = -1;
+        try {
+            List<String> aliases = new ArrayList<>(entries.size());
+            List<OrganizationKeyBackend.StoredKey> keys = new ArrayList<>(entries.size());
+            for (KeyEntry entry : entries) {
+                // the alias is always derived from the certificate itself so every entry uses the canonical hex serial
+                String alias = CertificateRegistry.aliasFor(entry.type(), entry.certificate().getSerialNumber());
+                aliases.add(alias);
+                // certificates issued from a CSR have no private key here, the subscriber holds it
+                if (entry.privateKey() == null) {
+                    continue;
+                }
+                if (entry.orgId() == null || entry.orgId().isEmpty()) {
+                    throw new IllegalArgumentException("Organization ID cannot be null or empty");
+                }
+                keys.add(new OrganizationKeyBackend.StoredKey(entry.orgId(), alias, entry.privateKey(), entry.certificate()));
+            }
+            synchronized (this) {
+                if (!keys.isEmpty()) {
+                    organizationKeyStore.storeOrganizationKeys(keys);
+                }
+                if (segment == null) {
+                    prepareOpenShards(entries);
+                }
+                CertificateRegistry.Builder builder = registry.edit();
+                for (int i = 0; i < entries.size(); i++) {
+                    String alias = aliases.get(i);
+                    X509Certificate certificate = entries.get(i).certificate();
+                    if (segment != null) {
+                        CertificateSegment.Slice appended = segment.append(alias, certificate.getEncoded());
+                        builder.put(CertificateRegistry.RegistryEntry.of(alias, appended, certificate));
+                        syncedUpTo = Math.max(syncedUpTo, appended.end());
+                    } else {
+                        CertificateRegistry.RegistryEntry entry = CertificateRegistry.RegistryEntry.of(alias, certificate);
+                        builder.put(entry.type() == CertificateType.END_ENTITY ? entry.withShard(assignShard(builder, entry)) : entry);
+                        dirtyShards.add(builder.entry(alias).shard());
+                        durable.add(journal.append(alias, certificate));
+                    }
+                }
+                registry = builder.build();
+            }
 
-            typeIndex.computeIfAbsent(type.toLowerCase(), k -> new ArrayList<>()).add(alias);
+            // wait for the group commit outside the lock so concurrent writers share one fsync
+            if (syncedUpTo >= 0) {
+                segment.sync(syncedUpTo);
+            }
+            durable.forEach(CompletableFuture::join);
+            logger.debug("{} certificate entries written successfully", aliases.size());
 
         } catch (Exception e) {
             logger.error("Failed to write certificate entry", e);
             throw new RuntimeException("Failed to write certificate entry", e);
         }
+        if (journal != null && journal.recordCount() >= compactionThreshold) {
+            compactor.execute(this::compactIfNeeded);
+        }
     }
 
-    public Optional<X509Certificate> readCertificateBySerialNumber(String serialNumber) {
-        try {
-            Enumeration<String> aliases = keyStore.aliases();
-            while (aliases.hasMoreElements()) {
-                String alias = aliases.nextElement();
-                if (alias.endsWith("-" + serialNumber)) {
-                    java.security.cert.Certificate cert = keyStore.getCertificate(alias);
-                    if (cert instanceof X509Certificate x509Cert) {
-                        return Optional.of(x509Cert);
-                    }
-                }
+    /**
+     * Loads and counts the newest generation of every issuer the entries go to, before the caller starts the
+     * builder they are put with. Called with the monitor held.
+     */
+    private void prepareOpenShards(List<KeyEntry> entries) throws IOException, GeneralSecurityException {
+        for (KeyEntry entry : entries) {
+            if (entry.type() != CertificateType.END_ENTITY) {
+                continue;
+            }
+            String issuerShard = CertificateRegistry.shardOf(CertificateType.END_ENTITY,
+                    DistinguishedNameKey.of(entry.certificate().getIssuerX500Principal()));
+            String open = CertificateRegistry.generationShard(issuerShard, lastGenerations.getOrDefault(issuerShard, 0));
+            if (!openShardSizes.containsKey(open)) {
+                ensureShardLoaded(open);
+                openShardSizes.put(open, registry.entriesOfShard(open).size());
             }
-        } catch (KeyStoreException e) {
-            logger.error("Failed to read certificate by serialNumber '{}'", serialNumber, e);
         }
-        return Optional.empty();
     }
 
-    public List<X509Certificate> findAllByUser(User user) {
-        try {
-            List<X509Certificate> certificates = new ArrayList<>();
-            List<String> serialNumbers = user.getCertificateSerialNumbers();
-            Enumeration<String> aliases = keyStore.aliases();
-            logger.debug(serialNumbers.toString());
-            while (aliases.hasMoreElements()) {
-                String alias = aliases.nextElement();
-                if (serialNumbers.contains(alias.split("-")[1]) ||  user.getRole().equals(Role.ADMIN)){
-                    java.security.cert.Certificate cert = keyStore.getCertificate(alias);
-                    if (cert instanceof X509Certificate x509Cert) {
-                        certificates.add(x509Cert);
-                    }
-                } //todo add for ca and user
-            }
-            return certificates;
-        } catch (KeyStoreException e) {
-            logger.error("Failed to read certificate by serialNumber", e);
+    /**
+     * The generation a new end-entity entry goes to; once the newest one holds {@code keystore.shard.max-entries}
+     * the next is opened, so a compaction never rewrites more than that many entries of one issuer. A replaced
+     * entry stays where it is.
+     */
+    private String assignShard(CertificateRegistry.Builder builder, CertificateRegistry.RegistryEntry entry) {
+        CertificateRegistry.RegistryEntry previous = builder.entry(entry.alias());
+        if (previous != null) {
+            return previous.shard();
         }
-        return null;
+        String issuerShard = entry.shard();
+        int generation = lastGenerations.getOrDefault(issuerShard, 0);
+        String open = CertificateRegistry.generationShard(issuerShard, generation);
+        int size = openShardSizes.getOrDefault(open, 0);
+        if (size >= maxShardEntries) {
+            openShardSizes.remove(open);
+            generation++;
+            lastGenerations.put(issuerShard, generation);
+            open = CertificateRegistry.generationShard(issuerShard, generation);
+            size = 0;
+        }
+        openShardSizes.put(open, size + 1);
+        return open;
     }
 
+    /**
+     * Journal records replayed on load go to their issuer's newest generation on disk.
+     */
+    private CertificateRegistry.RegistryEntry inLastGeneration(CertificateRegistry.RegistryEntry entry) {
+        if (entry.type() != CertificateType.END_ENTITY) {
+            return entry;
+        }
+        return entry.withShard(CertificateRegistry.generationShard(entry.shard(), lastGenerations.getOrDefault(entry.shard(), 0)));
+    }
 
-    public List<X509Certificate> findUnassignedCACertificates(List<String> serialNumbers) throws KeyStoreException {
-        List<X509Certificate> result = new ArrayList<>();
-        List<String> intermediateAliases = typeIndex.getOrDefault("intermediate", List.of());
+    public Optional<X509Certificate> readCertificateBySerialNumber(String serialNumber) {
+        refreshIfChanged();
+        return findEntryBySerialNumber(serialNumber).map(CertificateRegistry.RegistryEntry::certificate);
+    }
 
-        for (String alias : intermediateAliases) {
-            if (!serialNumbers.contains(alias.split("-")[1])) {
-                java.security.cert.Certificate cert = keyStore.getCertificate(alias);
-                if (cert instanceof X509Certificate x509Cert) {
-                    result.add(x509Cert);
-                }
+    /**
+     * CA shards are always resident, a miss can only be an end-entity certificate in a shard not loaded yet.
+     */
+    private Optional<CertificateRegistry.RegistryEntry> findEntryBySerialNumber(String serialNumber) {
+        CertificateRegistry snapshot = registry;
+        Optional<CertificateRegistry.RegistryEntry> entry = snapshot.findBySerialNumber(serialNumber);
+        if (entry.isEmpty() && snapshot.hasPendingShards()) {
+            ensureAllShardsLoaded();
+            entry = registry.findBySerialNumber(serialNumber);
+        }
+        return entry;
+    }
+
+    /**
+     * DER encodings of the certificates found, for list views; serial numbers not in the keystore are skipped.
+     */
+    public List<ByteBuffer> readCertificatesBySerialNumbers(Collection<String> serialNumbers) {
+        refreshIfChanged();
+        List<ByteBuffer> certificates = new ArrayList<>(serialNumbers.size());
+        for (String serialNumber : serialNumbers) {
+            findEntryBySerialNumber(serialNumber).ifPresent(entry -> certificates.add(entry.stored().encoded()));
+        }
+        return certificates;
+    }
+
+    /**
+     * One page of all certificates in keystore order, as DER encodings; nothing is decoded.
+     */
+    public Page<ByteBuffer> findPage(Pageable pageable) {
+        refreshIfChanged();
+        ensureAllShardsLoaded();
+        CertificateRegistry snapshot = registry;
+        List<ByteBuffer> content = snapshot.page(pageable.getOffset(), pageable.getPageSize()).stream()
+                .map(entry -> entry.stored().encoded())
+                .toList();
+        return new PageImpl<>(content, pageable, snapshot.size());
+    }
+
+
+    /**
+     * Intermediates whose serial number is not in the assigned set. Each intermediate costs two hash probes:
+     * the canonical hex form and, for assignments made before serials were canonical, the decimal form.
+     */
+    public List<ByteBuffer> findUnassignedCACertificates(Set<String> assignedSerialNumbers) {
+        refreshIfChanged();
+        List<ByteBuffer> result = new ArrayList<>();
+        for (CertificateRegistry.RegistryEntry entry : registry.entriesOfType(CertificateType.INTERMEDIATE)) {
+            BigInteger serialNumber = entry.serialNumber();
+            if (!assignedSerialNumbers.contains(SerialNumberUtil.toCanonical(serialNumber))
+                    && !assignedSerialNumbers.contains(serialNumber.toString())) {
+                result.add(entry.stored().encoded());
             }
         }
         return result;
     }
 
     public Optional<X509Certificate> readCertificate(String type, String serialNumber) {
-        String alias = type.toLowerCase() + "-" + serialNumber;
-        try {
-            java.security.cert.Certificate cert = keyStore.getCertificate(alias);
-            return cert != null ? Optional.of((X509Certificate) cert) : Optional.empty();
-        } catch (KeyStoreException e) {
-            logger.error("Failed to read certificate '{}'", alias, e);
-            return Optional.empty();
-        }
+        refreshIfChanged();
+        return findEntry(type, serialNumber).map(CertificateRegistry.RegistryEntry::certificate);
+    }
+
+    private Optional<CertificateRegistry.RegistryEntry> findEntry(String type, String serialNumber) {
+        return findEntryBySerialNumber(serialNumber)
+                .filter(entry -> entry.type() != null && entry.type().name().equalsIgnoreCase(type));
+    }
+
+    /**
+     * Alias the certificate's private key is stored under in the organization key store.
+     */
+    public Optional<String> findPrivateKeyAlias(String type, String serialNumber) {
+        refreshIfChanged();
+        return findEntry(type, serialNumber).map(CertificateRegistry.RegistryEntry::alias);
     }
 
     public Optional<PrivateKey> readPrivateKey(String orgId, String type, String serialNumber) {
         String alias = type.toLowerCase() + "-" + serialNumber;
         try {
-            if (!keyStore.containsAlias(alias)) {
+            Optional<CertificateRegistry.RegistryEntry> entry = findEntry(type, serialNumber);
+            if (entry.isEmpty()) {
                 logger.error("Alias '{}' not found", alias);
                 return Optional.empty();
             }
+            alias = entry.get().alias();
 
             PrivateKey key = organizationKeyStore.loadOrganizationKey(orgId, alias);
             return Optional.ofNullable(key);
@@ -264,77 +756,113 @@ public class ProjectKeyStore {
         }
     }
 
-    public Optional<X509Certificate> readCertificateBySubjectDN(String subjectDN) {
-        try {
-            Enumeration<String> aliases = keyStore.aliases();
-            while (aliases.hasMoreElements()) {
-                String alias = aliases.nextElement();
-                java.security.cert.Certificate cert = keyStore.getCertificate(alias);
-
-                if (cert instanceof X509Certificate x509Cert) {
-                    String certSubject = x509Cert.getSubjectX500Principal().getName();
+    public Optional<X509Certificate> readCertificateBySubjectDN(X500Principal subjectDN) {
+        refreshIfChanged();
+        CertificateRegistry snapshot = registry;
+        List<CertificateRegistry.RegistryEntry> matches = snapshot.findBySubject(subjectDN);
+        if (matches.isEmpty() && snapshot.hasPendingShards()) {
+            ensureAllShardsLoaded();
+            matches = registry.findBySubject(subjectDN);
+        }
+        if (matches.isEmpty()) {
+            logger.debug("No valid certificate found for subjectDN={}", subjectDN);
+            return Optional.empty();
+        }
+        logger.debug("Found valid certificate for subjectDN={} under alias={}", subjectDN, matches.get(0).alias());
+        return Optional.of(matches.get(0).certificate());
+    }
 
-                    if (certSubject.equals(subjectDN)) {
-                        Certificate domainCert = convertX509ToCertificate(x509Cert);
+    public List<X509Certificate> readCertificatesByIssuerDN(X500Principal issuerDN) {
+        refreshIfChanged();
+        ensureIssuerShardsLoaded(issuerDN);
+        return registry.findByIssuer(issuerDN).stream().map(CertificateRegistry.RegistryEntry::certificate).toList();
+    }
 
-                        if (Boolean.TRUE.equals(domainCert.getIsWithdrawn())) {
-                            logger.warn("Certificate with subjectDN={} found but is withdrawn (alias={})", subjectDN, alias);
-                            continue; // skip withdrawn certs
-                        }
+    /**
+     * Withdraws or reinstates the certificate. Its shard is not loaded for this; should it be loaded later the
+     * flag is applied then.
+     */
+    public void setWithdrawn(String serialNumber, boolean withdrawn) {
+        if (withdrawn) {
+            markWithdrawn(List.of(serialNumber));
+            return;
+        }
+        synchronized (this) {
+            CertificateRegistry.Builder builder = registry.edit();
+            boolean changed = false;
+            for (BigInteger candidate : withdrawalCandidates(serialNumber)) {
+                changed |= withdrawnSerialNumbers.remove(candidate);
+                builder.setWithdrawn(candidate, false);
+            }
+            if (changed) {
+                registry = builder.build();
+                withdrawalVersion.incrementAndGet();
+            }
+        }
+    }
 
-                        logger.debug("Found valid certificate for subjectDN={} under alias={}", subjectDN, alias);
-                        return Optional.of(x509Cert);
-                    }
-                }
+    /**
+     * Withdraws all the given certificates with a single new snapshot.
+     */
+    public synchronized void markWithdrawn(Collection<String> serialNumbers) {
+        CertificateRegistry.Builder builder = registry.edit();
+        boolean changed = false;
+        for (String serialNumber : serialNumbers) {
+            Optional<CertificateRegistry.RegistryEntry> resident = registry.findBySerialNumber(serialNumber);
+            // a resident entry tells which reading of a legacy decimal serial is meant, otherwise both are kept
+            List<BigInteger> candidates = resident.isPresent() ? List.of(resident.get().serialNumber())
+                    : SerialNumberUtil.parseCandidates(serialNumber);
+            for (BigInteger candidate : candidates) {
+                changed |= withdrawnSerialNumbers.add(candidate);
+                builder.setWithdrawn(candidate, true);
             }
-        } catch (Exception e) {
-            logger.error("Failed to read certificate by Subject DN '{}'", subjectDN, e);
         }
-        return Optional.empty();
+        if (changed) {
+            registry = builder.build();
+            withdrawalVersion.incrementAndGet();
+        }
     }
 
+    public boolean isWithdrawn(BigInteger serialNumber) {
+        return withdrawnSerialNumbers.contains(serialNumber);
+    }
 
+    private Set<BigInteger> withdrawalCandidates(String serialNumber) {
+        Set<BigInteger> candidates = new HashSet<>(SerialNumberUtil.parseCandidates(serialNumber));
+        registry.findBySerialNumber(serialNumber).ifPresent(entry -> candidates.add(entry.serialNumber()));
+        return candidates;
+    }
 
+    // called with the monitor held, before the builder is published
+    private void applyWithdrawals(CertificateRegistry.Builder builder) {
+        for (BigInteger serialNumber : withdrawnSerialNumbers) {
+            builder.setWithdrawn(serialNumber, true);
+        }
+    }
 
-    public Certificate convertX509ToCertificate(X509Certificate x509Cert) throws Exception {
-        Certificate certificate = new Certificate();
+    /**
+     * Changes whenever a certificate is withdrawn or reinstated.
+     */
+    public long withdrawalVersion() {
+        return withdrawalVersion.get();
+    }
 
+    /**
+     * Read model of a stored certificate; nothing is encrypted or persisted.
+     */
+    public CertificateView toCertificateView(X509Certificate x509Cert) throws Exception {
         JcaX509CertificateHolder certHolder = new JcaX509CertificateHolder(x509Cert);
-        X500Name subjectName = certHolder.getSubject();
-        X500Name issuerName = certHolder.getIssuer();
-        CertificateEntity subjectEntity = new CertificateEntity();
-        subjectEntity.setCommonName(getRDN(subjectName, BCStyle.CN));
-        subjectEntity.setOrganization(getRDN(subjectName, BCStyle.O));
-        subjectEntity.setOrganizationalUnit(getRDN(subjectName, BCStyle.OU));
-        subjectEntity.setCountry(getRDN(subjectName, BCStyle.C));
-        subjectEntity.setEmail(getRDN(subjectName, BCStyle.E));
-        subjectEntity.setState(getRDN(subjectName, BCStyle.ST));
-        subjectEntity.setLocality(getRDN(subjectName, BCStyle.L));
-        subjectEntity.setPublicKey(x509Cert.getPublicKey());
-
-        CertificateEntity issuerEntity = new CertificateEntity();
-        issuerEntity.setCommonName(getRDN(issuerName, BCStyle.CN));
-        issuerEntity.setOrganization(getRDN(issuerName, BCStyle.O));
-        issuerEntity.setOrganizationalUnit(getRDN(issuerName, BCStyle.OU));
-        issuerEntity.setCountry(getRDN(issuerName, BCStyle.C));
-        issuerEntity.setEmail(getRDN(issuerName, BCStyle.E));
-        issuerEntity.setState(getRDN(issuerName, BCStyle.ST));
-        issuerEntity.setLocality(getRDN(issuerName, BCStyle.L));
-        issuerEntity.setPublicKey(null);//  must load separately
-
-        certificate.setSubject(subjectEntity);
-        certificate.setIssuer(issuerEntity);
-        certificate.setSerialNumber(x509Cert.getSerialNumber().toString(16));
-        certificate.setIssued(x509Cert.getNotBefore());
-        certificate.setExpires(x509Cert.getNotAfter());
-        certificate.setSignatureAlgorithm(x509Cert.getSigAlgName());
-        certificate.setSignature(x509Cert.getSignature());
-        certificate.setVersion(x509Cert.getVersion());
-        // Extensions — možeš dodati ako želiš
-        certificate.setExtensions(new ExtensionUtil(issuerEntity.getPublicKey(), subjectEntity.getPublicKey())
-                .extractExtensions(certHolder));
-
-        return certificate;
+        return new CertificateView(
+                CertificateView.Name.of(certHolder.getSubject()),
+                CertificateView.Name.of(certHolder.getIssuer()),
+                x509Cert.getPublicKey(),
+                SerialNumberUtil.toCanonical(x509Cert.getSerialNumber()),
+                x509Cert.getNotBefore(),
+                x509Cert.getNotAfter(),
+                x509Cert.getSigAlgName(),
+                x509Cert.getSignature(),
+                x509Cert.getVersion(),
+                new ExtensionUtil(null, x509Cert.getPublicKey()).extractExtensions(certHolder));
     }
 
     private String getRDN(X500Name name, ASN1ObjectIdentifier oid) {
@@ -0,0 +1,128 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.keystore.CertificateRegistry.RegistryEntry;
+import com.example.publickeyinfrastructure.model.CertificateType;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One layer of a {@link CertificateRegistry} snapshot: entries by alias plus the serial, type, DN and shard indexes.
+ * Mutable while a {@link CertificateRegistry.Builder} owns it and never touched again once a snapshot is published.
+ * The multimaps are insertion-ordered sets, so replacing or removing an alias costs the same however many
+ * certificates share its type, issuer or shard.
+ */
+class RegistryIndex {
+
+    static final RegistryIndex EMPTY = new RegistryIndex();
+
+    private final Map<String, RegistryEntry> entries;
+    private final Map<BigInteger, RegistryEntry> serialIndex;
+    private final Map<CertificateType, Set<String>> typeIndex;
+    // multimaps hold aliases, entries are resolved through the alias map so flag updates touch a single place
+    private final Map<DistinguishedNameKey, Set<String>> subjectIndex;
+    private final Map<DistinguishedNameKey, Set<String>> issuerIndex;
+    private final Map<String, Set<String>> shardIndex;
+
+    RegistryIndex() {
+        entries = new LinkedHashMap<>();
+        serialIndex = new HashMap<>();
+        typeIndex = new HashMap<>();
+        subjectIndex = new HashMap<>();
+        issuerIndex = new HashMap<>();
+        shardIndex = new HashMap<>();
+    }
+
+    RegistryIndex(RegistryIndex source) {
+        entries = new LinkedHashMap<>(source.entries);
+        serialIndex = new HashMap<>(source.serialIndex);
+        typeIndex = copyMultimap(source.typeIndex);
+        subjectIndex = copyMultimap(source.subjectIndex);
+        issuerIndex = copyMultimap(source.issuerIndex);
+        shardIndex = copyMultimap(source.shardIndex);
+    }
+
+    private static <K> Map<K, Set<String>> copyMultimap(Map<K, Set<String>> source) {
+        Map<K, Set<String>> copy = new HashMap<>(source.size());
+        source.forEach((key, aliases) -> copy.put(key, new LinkedHashSet<>(aliases)));
+        return copy;
+    }
+
+    void put(RegistryEntry entry) {
+        String alias = entry.alias();
+        remove(alias);
+        entries.put(alias, entry);
+        if (entry.type() != null) {
+            typeIndex.computeIfAbsent(entry.type(), k -> new LinkedHashSet<>()).add(alias);
+        }
+        serialIndex.put(entry.serialNumber(), entry);
+        subjectIndex.computeIfAbsent(entry.subject(), k -> new LinkedHashSet<>(2)).add(alias);
+        issuerIndex.computeIfAbsent(entry.issuer(), k -> new LinkedHashSet<>()).add(alias);
+        shardIndex.computeIfAbsent(entry.shard(), k -> new LinkedHashSet<>()).add(alias);
+    }
+
+    void remove(String alias) {
+        RegistryEntry removed = entries.remove(alias);
+        if (removed == null) {
+            return;
+        }
+        serialIndex.remove(removed.serialNumber(), removed);
+        if (removed.type() != null) {
+            removeFromMultimap(typeIndex, removed.type(), alias);
+        }
+        removeFromMultimap(subjectIndex, removed.subject(), alias);
+        removeFromMultimap(issuerIndex, removed.issuer(), alias);
+        removeFromMultimap(shardIndex, removed.shard(), alias);
+    }
+
+    private static <K> void removeFromMultimap(Map<K, Set<String>> multimap, K key, String alias) {
+        Set<String> aliases = multimap.get(key);
+        if (aliases != null) {
+            aliases.remove(alias);
+            if (aliases.isEmpty()) {
+                multimap.remove(key);
+            }
+        }
+    }
+
+    RegistryEntry entry(String alias) {
+        return entries.get(alias);
+    }
+
+    boolean contains(String alias) {
+        return entries.containsKey(alias);
+    }
+
+    RegistryEntry bySerialNumber(BigInteger serialNumber) {
+        return serialIndex.get(serialNumber);
+    }
+
+    Set<String> aliasesOfType(CertificateType type) {
+        return typeIndex.getOrDefault(type, Set.of());
+    }
+
+    Set<String> aliasesBySubject(DistinguishedNameKey subject) {
+        return subjectIndex.getOrDefault(subject, Set.of());
+    }
+
+    Set<String> aliasesByIssuer(DistinguishedNameKey issuer) {
+        return issuerIndex.getOrDefault(issuer, Set.of());
+    }
+
+    Set<String> aliasesOfShard(String shard) {
+        return shardIndex.getOrDefault(shard, Set.of());
+    }
+
+    Collection<RegistryEntry> entries() {
+        return entries.values();
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
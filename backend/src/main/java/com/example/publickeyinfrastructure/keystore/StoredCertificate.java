@@ -0,0 +1,35 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import java.nio.ByteBuffer;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Certificate behind a registry entry: either already decoded on the heap (PKCS12 storage) or
+ * DER bytes inside the memory-mapped segment, decoded only when asked for.
+ */
+interface StoredCertificate {
+
+    X509Certificate certificate();
+
+    /**
+     * Read-only view of the DER encoding.
+     */
+    ByteBuffer encoded();
+
+    static StoredCertificate of(X509Certificate certificate) {
+        return new Decoded(certificate);
+    }
+
+    record Decoded(X509Certificate certificate) implements StoredCertificate {
+
+        @Override
+        public ByteBuffer encoded() {
+            try {
+                return ByteBuffer.wrap(certificate.getEncoded()).asReadOnlyBuffer();
+            } catch (CertificateEncodingException e) {
+                throw new IllegalStateException("Failed to encode certificate " + certificate.getSerialNumber(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Binary form of a private key wrapped under a master key version:
+ * {@code [byte version][byte algorithm][short master key version][12 byte IV][ciphertext || 16 byte GCM tag]}.
+ * <p>
+ * The wrapping is AES-256-GCM over the PKCS#8 encoding; the algorithm id names the key algorithm that
+ * {@code KeyFactory} needs to rebuild the key. Version 1 records have no master key version field and were
+ * always wrapped with master key version 1.
+ */
+record WrappedKey(int version, int algorithm, int masterKeyVersion, byte[] iv, byte[] ciphertext) {
+
+    static final int VERSION_1 = 1;
+    static final int VERSION_2 = 2;
+    static final int IV_LENGTH = 12;
+    static final int TAG_LENGTH = 16;
+    private static final int HEADER_LENGTH_V1 = 2;
+    private static final int HEADER_LENGTH_V2 = 4;
+
+    static final int ALGORITHM_RSA = 1;
+    static final int ALGORITHM_EC = 2;
+    static final int ALGORITHM_ED25519 = 3;
+
+    static WrappedKey of(int algorithm, int masterKeyVersion, byte[] iv, byte[] ciphertext) {
+        return new WrappedKey(VERSION_2, algorithm, masterKeyVersion, iv, ciphertext);
+    }
+
+    static int algorithmId(String algorithm) {
+        return switch (algorithm) {
+            case "RSA" -> ALGORITHM_RSA;
+            case "EC", "ECDSA" -> ALGORITHM_EC;
+            case "Ed25519", "EdDSA" -> ALGORITHM_ED25519;
+            default -> throw new IllegalArgumentException("Unsupported key algorithm " + algorithm);
+        };
+    }
+
+    static String algorithmName(int algorithm) {
+        return switch (algorithm) {
+            case ALGORITHM_RSA -> "RSA";
+            case ALGORITHM_EC -> "EC";
+            case ALGORITHM_ED25519 -> "Ed25519";
+            default -> throw new IllegalArgumentException("Unknown key algorithm id " + algorithm);
+        };
+    }
+
+    byte[] encode() {
+        if (version == VERSION_1) {
+            return ByteBuffer.allocate(HEADER_LENGTH_V1 + IV_LENGTH + ciphertext.length)
+                    .put((byte) version)
+                    .put((byte) algorithm)
+                    .put(iv)
+                    .put(ciphertext)
+                    .array();
+        }
+        return ByteBuffer.allocate(HEADER_LENGTH_V2 + IV_LENGTH + ciphertext.length)
+                .put((byte) version)
+                .put((byte) algorithm)
+                .putShort((short) masterKeyVersion)
+                .put(iv)
+                .put(ciphertext)
+                .array();
+    }
+
+    /**
+     * Master key version of an encoded record, read from the header only.
+     */
+    static int masterKeyVersionOf(byte[] encoded) {
+        int version = encoded[0] & 0xff;
+        return version == VERSION_1 ? 1 : ((encoded[2] & 0xff) << 8) | (encoded[3] & 0xff);
+    }
+
+    static WrappedKey decode(byte[] encoded) {
+        int version = encoded.length > 0 ? encoded[0] & 0xff : -1;
+        int headerLength;
+        int masterKeyVersion;
+        if (version == VERSION_1) {
+            headerLength = HEADER_LENGTH_V1;
+            masterKeyVersion = 1;
+        } else if (version == VERSION_2) {
+            headerLength = HEADER_LENGTH_V2;
+            masterKeyVersion = encoded.length >= HEADER_LENGTH_V2 ? masterKeyVersionOf(encoded) : -1;
+        } else {
+            throw new IllegalArgumentException("Unsupported wrapped key version " + version);
+        }
+        if (encoded.length < headerLength + IV_LENGTH + TAG_LENGTH) {
+            throw new IllegalArgumentException("Wrapped key of " + encoded.length + " bytes is too short");
+        }
+        return new WrappedKey(version, encoded[1] & 0xff, masterKeyVersion,
+                Arrays.copyOfRange(encoded, headerLength, headerLength + IV_LENGTH),
+                Arrays.copyOfRange(encoded, headerLength + IV_LENGTH, encoded.length));
+    }
+}
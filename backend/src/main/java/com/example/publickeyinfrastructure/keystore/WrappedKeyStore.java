@@ -0,0 +1,346 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only file of {@link WrappedKey} encodings by alias, fully held in memory for reads.
+ * <p>
+ * Records use the journal framing {@code [int length][int crc32c][payload]} with the payload being the alias
+ * (modified UTF-8) followed by the wrapped key; an empty wrapped key deletes the alias. Deletions survive
+ * compaction so that a renamed legacy alias is not picked up again from the old keystore. Keys are already
+ * encrypted under the master key, so unlike the PKCS12 store there is no second password-based layer.
+ * Each change is fsynced before it returns. Once superseded records outnumber live ones the file is
+ * rewritten and atomically swapped in.
+ * <p>
+ * Another process may follow the file with {@link #openReadOnly}; it never truncates an incomplete tail
+ * (that is the writer still appending) and picks up appended records or a compacted file on {@link #refresh}.
+ */
+class WrappedKeyStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WrappedKeyStore.class);
+    private static final int MAX_RECORD_LENGTH = 1 << 16;
+    private static final int MIN_COMPACTION_RECORDS = 256;
+
+    record Replacement(String alias, byte[] expected, byte[] replacement) {
+    }
+
+    private final Path path;
+    private final boolean readOnly;
+    private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+    private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+    // guarded by this
+    private FileChannel channel;
+    // guarded by this
+    private long supersededRecords;
+    // guarded by this; read-only stores only: identity of the open file and end of the last record read
+    private Object fileKey;
+    private long loadedLength;
+
+    WrappedKeyStore(Path path) throws IOException {
+        this(path, false);
+    }
+
+    private WrappedKeyStore(Path path, boolean readOnly) throws IOException {
+        this.path = path;
+        this.readOnly = readOnly;
+        synchronized (this) {
+            if (readOnly) {
+                openForReading();
+                loadedLength = load(0, entries, deleted);
+                return;
+            }
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long validLength = load(0, entries, deleted);
+            if (validLength < channel.size()) {
+                logger.warn("Truncating corrupt tail of {} at offset {}", path, validLength);
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+            channel.position(validLength);
+        }
+    }
+
+    static WrappedKeyStore openReadOnly(Path path) throws IOException {
+        return new WrappedKeyStore(path, true);
+    }
+
+    /**
+     * Read-only stores: picks up what the writing process appended or compacted since the last call.
+     * Returns whether anything was read.
+     */
+    synchronized boolean refresh() throws IOException {
+        if (!readOnly) {
+            return false;
+        }
+        Object currentKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        if (!Objects.equals(currentKey, fileKey) || channel.size() < loadedLength) {
+            // compacted and swapped in by the writer: read it from scratch, replacing entries without a gap
+            channel.close();
+            openForReading();
+            Map<String, byte[]> reloaded = new HashMap<>();
+            Set<String> reloadedDeleted = new HashSet<>();
+            loadedLength = load(0, reloaded, reloadedDeleted);
+            entries.putAll(reloaded);
+            entries.keySet().retainAll(reloaded.keySet());
+            deleted.addAll(reloadedDeleted);
+            deleted.retainAll(reloadedDeleted);
+            return true;
+        }
+        if (channel.size() == loadedLength) {
+            return false;
+        }
+        long previous = loadedLength;
+        loadedLength = load(loadedLength, entries, deleted);
+        return loadedLength > previous;
+    }
+
+    byte[] get(String alias) {
+        return entries.get(alias);
+    }
+
+    boolean contains(String alias) {
+        return entries.containsKey(alias);
+    }
+
+    boolean isDeleted(String alias) {
+        return deleted.contains(alias);
+    }
+
+    Set<String> aliases() {
+        return Set.copyOf(entries.keySet());
+    }
+
+    /**
+     * Live, weakly consistent view of all entries.
+     */
+    Map<String, byte[]> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    synchronized void put(String alias, byte[] wrapped) throws IOException {
+        checkWritable();
+        write(record(alias, wrapped));
+        if (entries.put(alias, wrapped) != null) {
+            supersededRecords++;
+        }
+        deleted.remove(alias);
+        compactIfNeeded();
+    }
+
+    /**
+     * Like {@link #put} for every entry, with one write and one fsync for all of them.
+     */
+    synchronized void putAll(Map<String, byte[]> wrapped) throws IOException {
+        checkWritable();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        for (Map.Entry<String, byte[]> entry : wrapped.entrySet()) {
+            batch.write(record(entry.getKey(), entry.getValue()));
+        }
+        write(batch.toByteArray());
+        wrapped.forEach((alias, value) -> {
+            if (entries.put(alias, value) != null) {
+                supersededRecords++;
+            }
+            deleted.remove(alias);
+        });
+        compactIfNeeded();
+    }
+
+    synchronized void rename(String oldAlias, String newAlias) throws IOException {
+        checkWritable();
+        byte[] wrapped = entries.get(oldAlias);
+        if (wrapped == null) {
+            return;
+        }
+        ByteArrayOutputStream both = new ByteArrayOutputStream();
+        both.write(record(newAlias, wrapped));
+        both.write(record(oldAlias, new byte[0]));
+        write(both.toByteArray());
+        if (entries.put(newAlias, wrapped) != null) {
+            supersededRecords++;
+        }
+        deleted.remove(newAlias);
+        entries.remove(oldAlias);
+        deleted.add(oldAlias);
+        supersededRecords++;
+        compactIfNeeded();
+    }
+
+    /**
+     * Applies the replacements whose alias still maps to the expected bytes, with one write and one fsync
+     * for the whole batch. Entries changed concurrently are left alone. Returns how many were applied.
+     */
+    synchronized int replaceAll(List<Replacement> replacements) throws IOException {
+        checkWritable();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        List<Replacement> applicable = new ArrayList<>();
+        for (Replacement replacement : replacements) {
+            if (entries.get(replacement.alias()) == replacement.expected()) {
+                batch.write(record(replacement.alias(), replacement.replacement()));
+                applicable.add(replacement);
+            }
+        }
+        if (applicable.isEmpty()) {
+            return 0;
+        }
+        write(batch.toByteArray());
+        applicable.forEach(replacement -> entries.put(replacement.alias(), replacement.replacement()));
+        supersededRecords += applicable.size();
+        compactIfNeeded();
+        return applicable.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException(path + " is open read-only");
+        }
+    }
+
+    // called with the monitor held
+    private void openForReading() throws IOException {
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    // called with the monitor held
+    private void write(byte[] records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    // called with the monitor held
+    private void compactIfNeeded() throws IOException {
+        if (supersededRecords < MIN_COMPACTION_RECORDS || supersededRecords < entries.size()) {
+            return;
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ByteBuffer buffer = ByteBuffer.wrap(record(entry.getKey(), entry.getValue()));
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            for (String alias : deleted) {
+                ByteBuffer buffer = ByteBuffer.wrap(record(alias, new byte[0]));
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        logger.debug("Compacted {} to {} keys, dropped {} superseded records", path, entries.size(), supersededRecords);
+        supersededRecords = 0;
+    }
+
+    // called with the monitor held; returns the end of the last complete record
+    private long load(long offset, Map<String, byte[]> target, Set<String> tombstones) throws IOException {
+        long validLength = offset;
+        channel.position(offset);
+        DataInputStream data = new DataInputStream(Channels.newInputStream(channel));
+        while (true) {
+            int length;
+            int checksum;
+            byte[] payload;
+            try {
+                length = data.readInt();
+                checksum = data.readInt();
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                payload = data.readNBytes(length);
+            } catch (EOFException e) {
+                break;
+            }
+            if (payload.length != length) {
+                break;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                logger.warn("Checksum mismatch in {} at offset {}", path, validLength);
+                break;
+            }
+            try (DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload))) {
+                String alias = record.readUTF();
+                byte[] wrapped = record.readAllBytes();
+                byte[] previous;
+                if (wrapped.length == 0) {
+                    previous = target.remove(alias);
+                    tombstones.add(alias);
+                } else {
+                    previous = target.put(alias, wrapped);
+                    tombstones.remove(alias);
+                }
+                if (previous != null) {
+                    supersededRecords++;
+                }
+            }
+            validLength += 8 + length;
+        }
+        return validLength;
+    }
+
+    private static byte[] record(String alias, byte[] wrapped) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(wrapped.length + alias.length() + 2);
+        try (DataOutputStream payload = new DataOutputStream(payloadBytes)) {
+            payload.writeUTF(alias);
+            payload.write(wrapped);
+        }
+        byte[] payload = payloadBytes.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        return record.array();
+    }
+}
@@ -4,16 +4,16 @@ import com.example.publickeyinfrastructure.dto.CertificateResponse;
 import com.example.publickeyinfrastructure.dto.CreateCertificateRequest;
 import com.example.publickeyinfrastructure.model.Certificate;
 import com.example.publickeyinfrastructure.model.CertificateType;
-import org.bouncycastle.asn1.ASN1ObjectIdentifier;
-import org.bouncycastle.asn1.x500.RDN;
-import org.bouncycastle.asn1.x500.X500Name;
-import org.bouncycastle.asn1.x500.style.BCStyle;
-import org.bouncycastle.asn1.x500.style.IETFUtils;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import com.example.publickeyinfrastructure.util.DerCertificateScanner;
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.security.cert.X509Certificate;
 
 @Component
@@ -48,7 +48,7 @@ public class CertificateMapper {
 
         return response;
     }
-    public CertificateResponse toDto(CertificateType type, X509Certificate certificate) {
+    public CertificateResponse toDto(CertificateType type, ByteBuffer certificate) {
 
         CertificateResponse response = this.toDto(certificate);
         response.setType(type);
@@ -56,37 +56,32 @@ public class CertificateMapper {
     }
 
     public CertificateResponse toDto(X509Certificate cert) {
-        CertificateResponse response = new CertificateResponse();
         try {
-            JcaX509CertificateHolder holder = new JcaX509CertificateHolder(cert);
-            X500Name subjectName = holder.getSubject();
-            X500Name issuerName = holder.getIssuer();
-
-            response.setSerialNumber(cert.getSerialNumber().toString());
-            response.setIssued(cert.getNotBefore());
-            response.setExpires(cert.getNotAfter());
-            response.setSignatureAlgorithm(cert.getSigAlgName());
-
-            response.setSubjectCN(getRDN(subjectName, BCStyle.CN));
-            response.setSubjectO(getRDN(subjectName, BCStyle.O));
-            response.setSubjectOU(getRDN(subjectName, BCStyle.OU));
-
-            response.setIssuerCN(getRDN(issuerName, BCStyle.CN));
-            response.setIssuerO(getRDN(issuerName, BCStyle.O));
-            response.setIssuerOU(getRDN(issuerName, BCStyle.OU));
-
+            return toDto(ByteBuffer.wrap(cert.getEncoded()));
         } catch (Exception e) {
             throw new RuntimeException("Failed to map X509Certificate to CertificateResponse", e);
         }
-        return response;
     }
 
-    private String getRDN(X500Name name, ASN1ObjectIdentifier oid) {
-        RDN[] rdns = name.getRDNs(oid);
-        if (rdns.length > 0) {
-            return IETFUtils.valueToString(rdns[0].getFirst().getValue());
-        }
-        return null;
+    /**
+     * List-view mapping straight from the DER encoding, see {@link DerCertificateScanner}.
+     */
+    public CertificateResponse toDto(ByteBuffer encoded) {
+        DerCertificateScanner.Summary summary = DerCertificateScanner.scan(encoded);
+        CertificateResponse response = new CertificateResponse();
+        response.setSerialNumber(SerialNumberUtil.toCanonical(summary.serialNumber()));
+        response.setIssued(summary.notBefore());
+        response.setExpires(summary.notAfter());
+        response.setSignatureAlgorithm(summary.signatureAlgorithm());
+
+        response.setSubjectCN(summary.subjectCN());
+        response.setSubjectO(summary.subjectO());
+        response.setSubjectOU(summary.subjectOU());
+
+        response.setIssuerCN(summary.issuerCN());
+        response.setIssuerO(summary.issuerO());
+        response.setIssuerOU(summary.issuerOU());
+        return response;
     }
 
     public Certificate toEntity(CreateCertificateRequest request) {
@@ -95,4 +90,14 @@ public class CertificateMapper {
         certificate.setExtensions(request.getExtensions().stream().map(extensionMapper::toEntity).toList());
         return certificate;
     }
+
+    public String toPem(X509Certificate certificate) {
+        StringWriter pem = new StringWriter();
+        try (JcaPEMWriter writer = new JcaPEMWriter(pem)) {
+            writer.writeObject(certificate);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode certificate as PEM", e);
+        }
+        return pem.toString();
+    }
 }
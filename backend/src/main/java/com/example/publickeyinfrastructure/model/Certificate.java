@@ -1,6 +1,7 @@
 package com.example.publickeyinfrastructure.model;
 
 import com.example.publickeyinfrastructure.config.Constants;
+import com.example.publickeyinfrastructure.util.CertificateProfile;
 import com.example.publickeyinfrastructure.util.ExtensionUtil;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
@@ -16,6 +17,7 @@ import jakarta.persistence.Lob;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -81,6 +83,10 @@ public class Certificate {
     @Column
     private String signatureAlgorithm;
 
+    @Enumerated(EnumType.STRING)
+    @Column
+    private KeyAlgorithm keyAlgorithm;
+
     @Lob
     @Column
     private byte[] signature;
@@ -89,6 +95,14 @@ public class Certificate {
     @JoinColumn(name = "certificate_id")
     private List<CertificateExtension> extensions = new ArrayList<>();
 
+    // name of the profile the extensions came from, null when they were listed in the request
+    @Column
+    private String profile;
+
+    // set when issued with a profile; builds the extensions instead of parsing the list above
+    @Transient
+    private CertificateProfile compiledProfile;
+
     public void addExtension(CertificateExtension extension) {
         if (extensions == null) {
             extensions = new ArrayList<>();
@@ -108,6 +122,17 @@ public class Certificate {
     }
 
     public X509Certificate toX509Certificate(PrivateKey issuerPrivateKey) throws Exception {
+        // signed with whatever the issuer's key supports, which may differ from the subject's algorithm
+        signatureAlgorithm = KeyAlgorithm.signatureAlgorithmFor(issuerPrivateKey);
+        return toX509Certificate(new JcaContentSignerBuilder(signatureAlgorithm)
+                .setProvider(Constants.PROVIDER)
+                .build(issuerPrivateKey));
+    }
+
+    /**
+     * Signs with {@code signer}, e.g. one backed by the signing daemon; {@link #signatureAlgorithm} must match it.
+     */
+    public X509Certificate toX509Certificate(ContentSigner signer) throws Exception {
         X500Name subjectName = subject.getX500Name();
         X500Name issuerName = issuer.getX500Name();
 
@@ -120,16 +145,16 @@ public class Certificate {
                 subject.getPublicKey()
         );
 
-        ExtensionUtil extensionUtil = new ExtensionUtil(issuer.getPublicKey(), subject.getPublicKey());
+        if (compiledProfile != null) {
+            compiledProfile.addExtensions(certBuilder, issuer.getPublicKey(), subject.getPublicKey(), extensions);
+        } else {
+            ExtensionUtil extensionUtil = new ExtensionUtil(issuer.getPublicKey(), subject.getPublicKey());
 
-        for (CertificateExtension ext : extensions) {
-            extensionUtil.addExtension(certBuilder, ext.getExtensionType().getOid(), ext.getIsCritical(), ext.getValue());
+            for (CertificateExtension ext : extensions) {
+                extensionUtil.addExtension(certBuilder, ext.getExtensionType().getOid(), ext.getIsCritical(), ext.getValue());
+            }
         }
 
-        ContentSigner signer = new JcaContentSignerBuilder(Constants.SIGNATURE_ALGORITHM)
-                .setProvider(Constants.PROVIDER)
-                .build(issuerPrivateKey);
-
         X509CertificateHolder holder = certBuilder.build(signer);
 
         return new JcaX509CertificateConverter()
@@ -149,6 +174,7 @@ public class Certificate {
                 ", isWithdrawn=" + isWithdrawn +
                 ", version=" + version +
                 ", signatureAlgorithm='" + signatureAlgorithm + '\'' +
+                ", keyAlgorithm=" + keyAlgorithm +
                 ", signature=" + Arrays.toString(signature) +
                 '}';
     }
@@ -6,12 +6,14 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x500.X500NameBuilder;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.crypto.SecretKey;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Arrays;
@@ -69,13 +71,25 @@ public class CertificateEntity {
     @Column
     private String publicKeyAlgorithm;
 
+    // null for rows still encrypted with a per-row PBKDF2 key
+    @Column
+    private Integer publicKeyEncryption;
+
     @Transient
     private static String encryptionPassphrase;
 
+    @Transient
+    private static SecretKey keyEncryptionKey;
+
     public static void setEncryptionPassphrase(String passphrase) {
         if (passphrase == null || passphrase.length() < 12) {
             throw new IllegalArgumentException("Encryption passphrase must be at least 12 characters long");
         }
+        try {
+            keyEncryptionKey = KeyUtil.deriveKeyEncryptionKey(passphrase);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to derive key encryption key", e);
+        }
         encryptionPassphrase = passphrase;
     }
 
@@ -83,10 +97,11 @@ public class CertificateEntity {
         this.publicKey = publicKey;
         if (publicKey != null) {
             try {
-                KeyUtil.EncryptionResult result = KeyUtil.encryptPublicKeyWithSaltIv(publicKey, encryptionPassphrase);
+                KeyUtil.EncryptionResult result = KeyUtil.encryptPublicKey(publicKey, keyEncryptionKey);
                 this.encryptedPublicKey = result.encryptedData();
                 this.publicKeySalt = result.salt();
                 this.publicKeyIv = result.iv();
+                this.publicKeyEncryption = KeyUtil.PUBLIC_KEY_ENCRYPTION_HKDF;
 
                 if (this.publicKeyAlgorithm == null) {
                     this.publicKeyAlgorithm = publicKey.getAlgorithm();
@@ -100,7 +115,9 @@ public class CertificateEntity {
     public PublicKey getPublicKey() {
         if (publicKey == null && encryptedPublicKey != null && publicKeySalt != null && publicKeyIv != null) {
             try {
-                publicKey = KeyUtil.decryptPublicKeyWithSaltIv(encryptedPublicKey, publicKeySalt, publicKeyIv, encryptionPassphrase, publicKeyAlgorithm);
+                publicKey = publicKeyEncryption == null
+                        ? KeyUtil.decryptPublicKeyWithSaltIv(encryptedPublicKey, publicKeySalt, publicKeyIv, encryptionPassphrase, publicKeyAlgorithm)
+                        : KeyUtil.decryptPublicKey(encryptedPublicKey, publicKeySalt, publicKeyIv, keyEncryptionKey, publicKeyAlgorithm);
             } catch (Exception e) {
                 throw new RuntimeException("Failed to decrypt public key", e);
             }
@@ -108,21 +125,39 @@ public class CertificateEntity {
         return publicKey;
     }
 
+    /**
+     * Re-encrypts a public key stored in the per-row PBKDF2 format. Returns false if there was nothing to do.
+     */
+    public boolean upgradePublicKeyEncryption() {
+        if (publicKeyEncryption != null || encryptedPublicKey == null) {
+            return false;
+        }
+        setPublicKey(getPublicKey());
+        return true;
+    }
+
     @Transient
     public X500Name getX500Name() {
         X500NameBuilder builder = new X500NameBuilder(BCStyle.INSTANCE);
-        builder.addRDN(BCStyle.CN, commonName);
-        builder.addRDN(BCStyle.O, organization);
-        builder.addRDN(BCStyle.OU, organizationalUnit);
-        builder.addRDN(BCStyle.C, country);
-        builder.addRDN(BCStyle.E, email);
+        addRDN(builder, BCStyle.CN, commonName);
+        addRDN(builder, BCStyle.O, organization);
+        addRDN(builder, BCStyle.OU, organizationalUnit);
+        addRDN(builder, BCStyle.C, country);
+        addRDN(builder, BCStyle.E, email);
         builder.addRDN(BCStyle.UID, String.valueOf(id));
-        builder.addRDN(BCStyle.ST, state);
-        builder.addRDN(BCStyle.L, locality);
+        addRDN(builder, BCStyle.ST, state);
+        addRDN(builder, BCStyle.L, locality);
 
         return builder.build();
     }
 
+    // subjects taken from a CSR need not have every attribute
+    private static void addRDN(X500NameBuilder builder, ASN1ObjectIdentifier oid, String value) {
+        if (value != null) {
+            builder.addRDN(oid, value);
+        }
+    }
+
     @Override
     public String toString() {
         return "CertificateEntity{" +
@@ -138,6 +173,7 @@ public class CertificateEntity {
                 ", publicKeySalt=" + Arrays.toString(publicKeySalt) +
                 ", publicKeyIv=" + Arrays.toString(publicKeyIv) +
                 ", publicKeyAlgorithm='" + publicKeyAlgorithm + '\'' +
+                ", publicKeyEncryption=" + publicKeyEncryption +
                 '}';
     }
 }
@@ -0,0 +1,72 @@
+package com.example.publickeyinfrastructure.model;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+
+import java.security.PublicKey;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Immutable description of a certificate already in the keystore. Unlike {@link Certificate} it is never
+ * persisted, so building one does not encrypt the public key; use {@link Name#toEntity(PublicKey)} when a
+ * subject or issuer actually has to be saved.
+ */
+public record CertificateView(Name subject, Name issuer, PublicKey publicKey, String serialNumber,
+                              Date issued, Date expires, String signatureAlgorithm, byte[] signature,
+                              int version, List<CertificateExtension> extensions) {
+
+    public record Name(String commonName, String organization, String organizationalUnit, String country,
+                       String state, String locality, String email) {
+
+        /**
+         * The attributes of {@code name} the model keeps; absent ones are null and any others are dropped.
+         */
+        public static Name of(X500Name name) {
+            return new Name(
+                    attribute(name, BCStyle.CN),
+                    attribute(name, BCStyle.O),
+                    attribute(name, BCStyle.OU),
+                    attribute(name, BCStyle.C),
+                    attribute(name, BCStyle.ST),
+                    attribute(name, BCStyle.L),
+                    attribute(name, BCStyle.E));
+        }
+
+        private static String attribute(X500Name name, ASN1ObjectIdentifier oid) {
+            RDN[] rdns = name.getRDNs(oid);
+            return rdns.length > 0 ? IETFUtils.valueToString(rdns[0].getFirst().getValue()) : null;
+        }
+
+        public CertificateEntity toEntity(PublicKey publicKey) {
+            CertificateEntity entity = new CertificateEntity();
+            entity.setCommonName(commonName);
+            entity.setOrganization(organization);
+            entity.setOrganizationalUnit(organizationalUnit);
+            entity.setCountry(country);
+            entity.setState(state);
+            entity.setLocality(locality);
+            entity.setEmail(email);
+            entity.setPublicKey(publicKey);
+            return entity;
+        }
+    }
+
+    public CertificateView {
+        signature = signature.clone();
+        extensions = List.copyOf(extensions);
+    }
+
+    @Override
+    public byte[] signature() {
+        return signature.clone();
+    }
+
+    public boolean isDateValid() {
+        Date now = new Date();
+        return issued.compareTo(now) <= 0 && expires.compareTo(now) > 0;
+    }
+}
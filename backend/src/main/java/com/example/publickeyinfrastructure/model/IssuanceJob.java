@@ -0,0 +1,56 @@
+package com.example.publickeyinfrastructure.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * A certificate request accepted for asynchronous issuance, kept in the database so queued jobs survive a
+ * restart. The request is stored as submitted, as JSON.
+ */
+@Entity
+@Table(name = "issuance_jobs", indexes = @Index(name = "idx_issuance_job_status", columnList = "status"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class IssuanceJob {
+    @Id
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column
+    private IssuanceJobStatus status;
+
+    @Column
+    private String requesterEmail;
+
+    @Lob
+    @Column
+    private String request;
+
+    @Column
+    private Date submitted;
+
+    @Column
+    private Date started;
+
+    @Column
+    private Date finished;
+
+    // set once the job succeeded
+    @Column
+    private String serialNumber;
+
+    @Column(length = 1000)
+    private String error;
+}
@@ -0,0 +1,12 @@
+package com.example.publickeyinfrastructure.model;
+
+public enum IssuanceJobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED;
+
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED;
+    }
+}
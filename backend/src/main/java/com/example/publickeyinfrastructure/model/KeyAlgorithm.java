@@ -0,0 +1,50 @@
+package com.example.publickeyinfrastructure.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.security.Key;
+
+/**
+ * Key types certificates can be issued for. The signature algorithm of a certificate follows the issuer's key,
+ * not the subject's, so chains may mix algorithms.
+ */
+@AllArgsConstructor
+@Getter
+public enum KeyAlgorithm {
+    RSA_2048("RSA", 2048, "SHA256withRSA", true),
+    EC_P256("EC", 256, "SHA256withECDSA", false),
+    ED25519("Ed25519", 255, "Ed25519", false);
+
+    public static final KeyAlgorithm DEFAULT = RSA_2048;
+
+    private final String jcaName;
+    private final int keySize;
+    private final String signatureAlgorithm;
+    @Getter(AccessLevel.NONE)
+    private final boolean encipherment;
+
+    /**
+     * Whether keys of this type can encrypt (keyEncipherment/dataEncipherment key usages).
+     */
+    public boolean supportsEncipherment() {
+        return encipherment;
+    }
+
+    /**
+     * Key family of an existing key, by its JCA algorithm name; the size is not checked.
+     */
+    public static KeyAlgorithm of(Key key) {
+        return switch (key.getAlgorithm()) {
+            case "RSA" -> RSA_2048;
+            case "EC", "ECDSA" -> EC_P256;
+            case "Ed25519", "EdDSA" -> ED25519;
+            default -> throw new IllegalArgumentException("Unsupported key algorithm " + key.getAlgorithm());
+        };
+    }
+
+    public static String signatureAlgorithmFor(Key signingKey) {
+        return of(signingKey).signatureAlgorithm;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.publickeyinfrastructure.model;
 
+import jakarta.persistence.CollectionTable;
 import jakarta.persistence.Column;
 import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
@@ -8,6 +9,7 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -47,6 +49,8 @@ public class User {
     private Role role;
 
     @ElementCollection
+    @CollectionTable(name = "user_certificate_serial_numbers",
+            indexes = @Index(name = "idx_user_certificate_serial_number", columnList = "certificate_serial_number"))
     @Column(name = "certificate_serial_number")
     private List<String> certificateSerialNumbers;
 
@@ -2,6 +2,12 @@ package com.example.publickeyinfrastructure.repository;
 
 import com.example.publickeyinfrastructure.model.CertificateEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
 
 public interface CertificateEntityRepository extends JpaRepository<CertificateEntity, Long> {
+
+    @Query("select e.id from CertificateEntity e where e.publicKeyEncryption is null and e.encryptedPublicKey is not null")
+    List<Long> findIdsWithLegacyPublicKeyEncryption();
 }
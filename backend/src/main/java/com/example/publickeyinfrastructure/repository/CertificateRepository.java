@@ -3,7 +3,11 @@ package com.example.publickeyinfrastructure.repository;
 import com.example.publickeyinfrastructure.model.Certificate;
 import com.example.publickeyinfrastructure.model.CertificateType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,4 +18,15 @@ public interface CertificateRepository extends JpaRepository<Certificate, Long>
     Optional<Certificate> findBySerialNumber(String serialNumber);
 
     List<Certificate> findAllByTypeIn(List<CertificateType> types);
+
+    @Query("select c.serialNumber from Certificate c where c.isWithdrawn = true")
+    List<String> findAllWithdrawnSerialNumbers();
+
+    @Query("select c.serialNumber from Certificate c")
+    List<String> findAllSerialNumbers();
+
+    @Modifying
+    @Transactional
+    @Query("update Certificate c set c.serialNumber = :canonical where c.serialNumber = :legacy")
+    int updateSerialNumber(@Param("legacy") String legacy, @Param("canonical") String canonical);
 }
@@ -0,0 +1,13 @@
+package com.example.publickeyinfrastructure.repository;
+
+import com.example.publickeyinfrastructure.model.IssuanceJob;
+import com.example.publickeyinfrastructure.model.IssuanceJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface IssuanceJobRepository extends JpaRepository<IssuanceJob, String> {
+    List<IssuanceJob> findAllByStatusOrderBySubmittedAsc(IssuanceJobStatus status);
+}
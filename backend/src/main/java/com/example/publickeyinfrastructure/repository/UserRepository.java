@@ -4,8 +4,14 @@ import java.util.List;
 import java.util.Optional;
 
 import com.example.publickeyinfrastructure.model.Role;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.publickeyinfrastructure.model.User;
 
@@ -14,4 +20,29 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByEmail(String email);
 
     List<User> findAllByRole(Role role);
+
+    @Query("select distinct s from User u join u.certificateSerialNumbers s")
+    List<String> findAllAssignedSerialNumbers();
+
+    /**
+     * One page of the user's serial numbers in serial number order, read through the index on the collection table.
+     */
+    @Query(value = "select s from User u join u.certificateSerialNumbers s where u.id = :userId order by s",
+            countQuery = "select count(s) from User u join u.certificateSerialNumbers s where u.id = :userId")
+    Page<String> findCertificateSerialNumbers(@Param("userId") Integer userId, Pageable pageable);
+
+    /**
+     * Adds one row to the user's certificate collection without loading or rewriting the rest of it.
+     */
+    @Modifying
+    // the join column is quoted like the quoted "users" table it is derived from
+    @Query(value = "insert into user_certificate_serial_numbers (\"user_id\", certificate_serial_number) values (:userId, :serialNumber)",
+            nativeQuery = true)
+    void insertCertificateSerialNumber(@Param("userId") Integer userId, @Param("serialNumber") String serialNumber);
+
+    @Modifying
+    @Transactional
+    @Query(value = "update user_certificate_serial_numbers set certificate_serial_number = :canonical where certificate_serial_number = :legacy",
+            nativeQuery = true)
+    int updateCertificateSerialNumber(@Param("legacy") String legacy, @Param("canonical") String canonical);
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.example.publickeyinfrastructure.model.CertificateEntity;
+import com.example.publickeyinfrastructure.repository.CertificateEntityRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Re-encodes {@code certificate_entities} rows whose public key is still encrypted with a per-row PBKDF2 key.
+ * Runs in the background after startup, in batches spread over a pool sized to the available cores, since
+ * each legacy row costs one full PBKDF2 derivation to decrypt. Both formats stay readable meanwhile.
+ */
+@Component
+public class CertificateEntityMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateEntityMigration.class);
+
+    @Value("${certificate-entity.migration.batch-size:100}")
+    private int batchSize;
+    @Value("${certificate-entity.migration.parallelism:0}")
+    private int parallelism;
+
+    private final CertificateEntityRepository certificateEntityRepository;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "certificate-entity-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CertificateEntityMigration(CertificateEntityRepository certificateEntityRepository) {
+        this.certificateEntityRepository = certificateEntityRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateInBackground() {
+        coordinator.execute(this::migrate);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        coordinator.shutdownNow();
+    }
+
+    /**
+     * Returns how many rows were re-encoded.
+     */
+    public int migrate() {
+        List<Long> ids = certificateEntityRepository.findIdsWithLegacyPublicKeyEncryption();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        long started = System.nanoTime();
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "certificate-entity-migration-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger migrated = new AtomicInteger();
+        try {
+            List<Callable<Void>> batches = new ArrayList<>();
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<Long> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+                batches.add(() -> {
+                    List<CertificateEntity> upgraded = new ArrayList<>();
+                    for (CertificateEntity entity : certificateEntityRepository.findAllById(batch)) {
+                        try {
+                            if (entity.upgradePublicKeyEncryption()) {
+                                upgraded.add(entity);
+                            }
+                        } catch (RuntimeException e) {
+                            logger.error("Failed to re-encode public key of certificate entity {}", entity.getId(), e);
+                        }
+                    }
+                    certificateEntityRepository.saveAll(upgraded);
+                    migrated.addAndGet(upgraded.size());
+                    return null;
+                });
+            }
+            for (Future<Void> done : workers.invokeAll(batches)) {
+                done.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Certificate entity migration failed after {} rows", migrated.get(), e);
+        } finally {
+            workers.shutdownNow();
+        }
+        logger.info("Re-encoded {} of {} certificate entity public keys in {} ms",
+                migrated.get(), ids.size(), (System.nanoTime() - started) / 1_000_000);
+        return migrated.get();
+    }
+}
@@ -1,11 +1,11 @@
 package com.example.publickeyinfrastructure.service;
 
-import com.example.publickeyinfrastructure.config.Constants;
 import com.example.publickeyinfrastructure.model.Certificate;
 import com.example.publickeyinfrastructure.model.CertificateExtension;
 import com.example.publickeyinfrastructure.model.CertificateType;
 import com.example.publickeyinfrastructure.model.CertificateEntity;
 import com.example.publickeyinfrastructure.model.ExtensionType;
+import com.example.publickeyinfrastructure.model.KeyAlgorithm;
 import com.example.publickeyinfrastructure.util.DateUtil;
 import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
 import org.bouncycastle.asn1.x509.Extension;
@@ -15,6 +15,7 @@ import org.bouncycastle.asn1.x509.KeyPurposeId;
 import org.bouncycastle.asn1.x509.KeyUsage;
 import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,7 +41,23 @@ public class CertificateGenerator {
         return cert;
     }
 
+    /**
+     * Non-root certificates signed by {@code issuerSigner}, which may hold the key out of process.
+     */
+    public static X509Certificate generateX509Certificate(Certificate certificate,
+                                                          ContentSigner issuerSigner,
+                                                          PublicKey issuerPublicKey) throws Exception {
+        addBasicConstraints(certificate);
+        X509Certificate cert = certificate.toX509Certificate(issuerSigner);
+        cert.verify(issuerPublicKey);
+        return cert;
+    }
+
     private static void addBasicConstraints(Certificate certificate){
+        // a profile sets basic constraints itself
+        if (certificate.getCompiledProfile() != null) {
+            return;
+        }
         StringBuilder value = new StringBuilder("CA=");
         switch (certificate.getType()) {
             case ROOT, INTERMEDIATE -> value.append("true");
@@ -126,7 +143,7 @@ public class CertificateGenerator {
         cert.setExpires(DateUtil.generateEndTime(cert.getIssued(), type));
         cert.setIsWithdrawn(false);
         cert.setVersion(3); // X.509 v3
-        cert.setSignatureAlgorithm(Constants.SIGNATURE_ALGORITHM);
+        cert.setKeyAlgorithm(KeyAlgorithm.DEFAULT);
 
         return cert;
     }
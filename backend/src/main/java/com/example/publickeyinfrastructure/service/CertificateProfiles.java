@@ -0,0 +1,148 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.example.publickeyinfrastructure.model.CertificateExtension;
+import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.model.ExtensionType;
+import com.example.publickeyinfrastructure.util.CertificateProfile;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Named issuance profiles, compiled once by {@link CertificateProfile#compile}. They are read from the JSON file
+ * at {@code certificate.profiles.path}, or from the defaults on the classpath while there is no such file, and
+ * reloaded when the file changes. A file that fails to compile is logged and the profiles already loaded stay
+ * in use. Certificates being issued keep the profile they started with.
+ */
+@Component
+public class CertificateProfiles {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateProfiles.class);
+    private static final String DEFAULT_PROFILES = "/certificate-profiles.json";
+
+    record ExtensionDefinition(ExtensionType type, boolean critical, String value) {
+    }
+
+    record ProfileDefinition(CertificateType type, List<ExtensionDefinition> extensions, boolean requireSubjectAlternativeName) {
+    }
+
+    @Value("${certificate.profiles.path:./certificate-profiles.json}")
+    private String path;
+    @Value("${certificate.profiles.reload-interval-seconds:10}")
+    private long reloadIntervalSeconds;
+
+    private final ObjectMapper objectMapper;
+    private volatile Map<String, CertificateProfile> profiles = Map.of();
+    // guarded by this; the version of the file last read, whether it compiled or not, null while the classpath
+    // defaults are in use
+    private FileTime loadedModified;
+    private ScheduledExecutorService watcher;
+
+    @Autowired
+    public CertificateProfiles(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            reloadIfChanged();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load certificate profiles", e);
+        }
+        if (reloadIntervalSeconds > 0) {
+            watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "certificate-profiles-watcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watcher.scheduleWithFixedDelay(() -> {
+                try {
+                    reloadIfChanged();
+                } catch (Exception e) {
+                    logger.error("Failed to reload certificate profiles from {}, keeping {}", path, profiles.keySet(), e);
+                }
+            }, reloadIntervalSeconds, reloadIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+    }
+
+    public Optional<CertificateProfile> find(String name) {
+        return Optional.ofNullable(profiles.get(name));
+    }
+
+    public Set<String> names() {
+        return profiles.keySet();
+    }
+
+    /**
+     * Loads and compiles the profile file if it changed since the last load. Returns whether anything was loaded.
+     */
+    public synchronized boolean reloadIfChanged() throws IOException {
+        Path file = Path.of(path);
+        if (!Files.exists(file)) {
+            if (!profiles.isEmpty() && loadedModified == null) {
+                return false;
+            }
+            try (InputStream in = CertificateProfiles.class.getResourceAsStream(DEFAULT_PROFILES)) {
+                if (in == null) {
+                    throw new IOException("No " + path + " and no default profiles on the classpath");
+                }
+                profiles = compile(objectMapper.readValue(in, new TypeReference<LinkedHashMap<String, ProfileDefinition>>() {}));
+            }
+            loadedModified = null;
+            logger.info("Loaded default certificate profiles {}", profiles.keySet());
+            return true;
+        }
+        FileTime modified = Files.getLastModifiedTime(file);
+        if (modified.equals(loadedModified)) {
+            return false;
+        }
+        // a broken version is reported once, not on every check until it is fixed
+        loadedModified = modified;
+        profiles = compile(objectMapper.readValue(file.toFile(), new TypeReference<LinkedHashMap<String, ProfileDefinition>>() {}));
+        logger.info("Loaded certificate profiles {} from {}", profiles.keySet(), file);
+        return true;
+    }
+
+    private static Map<String, CertificateProfile> compile(Map<String, ProfileDefinition> definitions) {
+        Map<String, CertificateProfile> compiled = new LinkedHashMap<>();
+        definitions.forEach((name, definition) -> {
+            if (definition.type() == null) {
+                throw new IllegalArgumentException("Profile " + name + " has no certificate type");
+            }
+            List<CertificateExtension> extensions = definition.extensions() == null ? List.of() : definition.extensions().stream()
+                    .map(extension -> new CertificateExtension(null, extension.critical(), extension.value(), extension.type()))
+                    .toList();
+            compiled.put(name, CertificateProfile.compile(name, definition.type(), extensions, definition.requireSubjectAlternativeName()));
+        });
+        return Collections.unmodifiableMap(compiled);
+    }
+}
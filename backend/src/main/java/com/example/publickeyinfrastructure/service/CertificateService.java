@@ -1,173 +1,466 @@
 package com.example.publickeyinfrastructure.service;
 
 import com.example.publickeyinfrastructure.config.Constants;
+import com.example.publickeyinfrastructure.keystore.OrganizationKeyBackend;
 import com.example.publickeyinfrastructure.keystore.ProjectKeyStore;
 import com.example.publickeyinfrastructure.model.Certificate;
 import com.example.publickeyinfrastructure.model.CertificateType;
 import com.example.publickeyinfrastructure.model.CertificateEntity;
+import com.example.publickeyinfrastructure.model.CertificateView;
+import com.example.publickeyinfrastructure.model.KeyAlgorithm;
 import com.example.publickeyinfrastructure.model.Role;
 import com.example.publickeyinfrastructure.model.User;
 import com.example.publickeyinfrastructure.repository.CertificateRepository;
+import com.example.publickeyinfrastructure.repository.UserRepository;
+import com.example.publickeyinfrastructure.signing.SigningClient;
+import com.example.publickeyinfrastructure.util.CertificateProfile;
+import com.example.publickeyinfrastructure.util.CsrReader;
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+import com.example.publickeyinfrastructure.util.ExtensionUtil;
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
 import jakarta.persistence.EntityNotFoundException;
+import org.bouncycastle.asn1.sec.SECObjectIdentifiers;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.pkcs.PKCSException;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.PrivateKey;
-import java.security.SecureRandom;
+import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 @Service
 public class CertificateService {
 
-    @Value("${keystore.path}")
-    private String keystorePath;
     private final CertificateRepository certificateRepository;
 
     private static final Logger logger = LoggerFactory.getLogger(CertificateService.class);
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    @Value("${certificate.key-algorithm.default:RSA_2048}")
+    private KeyAlgorithm defaultKeyAlgorithm;
+    @Value("${certificate.bulk.max-items:1000}")
+    private int bulkMaxItems;
 
     private final ProjectKeyStore projectKeyStore;
+    private final UserRepository userRepository;
+    private final KeyPairPool keyPairPool;
+    private final ObjectProvider<SigningClient> signingClient;
+    private final OrganizationKeyBackend organizationKeys;
+    private final VerifiedChainCache verifiedChains;
+    private final CertificateProfiles certificateProfiles;
+    private final ExecutorService issuanceExecutor;
 
     @Autowired
-    public CertificateService(CertificateRepository certificateRepository, ProjectKeyStore projectKeyStore) {
+    public CertificateService(CertificateRepository certificateRepository, ProjectKeyStore projectKeyStore,
+                              UserRepository userRepository, KeyPairPool keyPairPool,
+                              ObjectProvider<SigningClient> signingClient, OrganizationKeyBackend organizationKeys,
+                              VerifiedChainCache verifiedChains, CertificateProfiles certificateProfiles,
+                              @Qualifier("issuanceExecutor") ExecutorService issuanceExecutor) {
         this.certificateRepository = certificateRepository;
         this.projectKeyStore = projectKeyStore;
+        this.userRepository = userRepository;
+        this.keyPairPool = keyPairPool;
+        this.signingClient = signingClient;
+        this.organizationKeys = organizationKeys;
+        this.verifiedChains = verifiedChains;
+        this.certificateProfiles = certificateProfiles;
+        this.issuanceExecutor = issuanceExecutor;
     }
 
-    public KeyPair generateKeyPair() {
-        KeyPairGenerator keyGen;
-        try {
-            keyGen = KeyPairGenerator.getInstance(Constants.KEY_ALGORITHM);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(String.format("%s algorithm not supported on this JVM", Constants.CRYPTO_ALGORITHM), e);
+    @EventListener(ApplicationReadyEvent.class)
+    public void syncWithKeystore() {
+        migrateLegacySerialNumbers();
+        List<String> withdrawn = certificateRepository.findAllWithdrawnSerialNumbers();
+        projectKeyStore.markWithdrawn(withdrawn);
+        logger.debug("Marked {} withdrawn certificates in keystore index", withdrawn.size());
+    }
+
+    /**
+     * Rewrites serial numbers still stored in the legacy decimal form to canonical hex, in the certificates and
+     * in the users' certificate lists, like the keystore migrates its aliases on load. Only all-digit values can
+     * be decimal, and since those also parse as hex the keystore decides which reading is the certificate it
+     * holds. Returns how many serial numbers were rewritten.
+     */
+    int migrateLegacySerialNumbers() {
+        Set<String> stored = new LinkedHashSet<>(certificateRepository.findAllSerialNumbers());
+        stored.addAll(userRepository.findAllAssignedSerialNumbers());
+        int migrated = 0;
+        for (String serialNumber : stored) {
+            if (serialNumber == null || serialNumber.isEmpty() || !serialNumber.chars().allMatch(Character::isDigit)) {
+                continue;
+            }
+            Optional<X509Certificate> certificate = projectKeyStore.readCertificateBySerialNumber(serialNumber);
+            if (certificate.isEmpty()) {
+                logger.warn("No keystore certificate for stored serial number {}, left as it is", serialNumber);
+                continue;
+            }
+            String canonical = SerialNumberUtil.toCanonical(certificate.get().getSerialNumber());
+            if (canonical.equals(serialNumber)) {
+                continue;
+            }
+            certificateRepository.updateSerialNumber(serialNumber, canonical);
+            userRepository.updateCertificateSerialNumber(serialNumber, canonical);
+            migrated++;
         }
-        try{
-            SecureRandom random = SecureRandom.getInstance(Constants.RANDOM_ALGORITHM, Constants.RANDOM_PROVIDER);
-            keyGen.initialize(Constants.KEY_SIZE, random);
-            return keyGen.generateKeyPair();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(String.format("%s algorithm not supported on this JVM", Constants.RANDOM_ALGORITHM), e);
-        } catch (NoSuchProviderException e) {
-            throw new RuntimeException(String.format("%s provider not supported on this JVM", Constants.RANDOM_PROVIDER), e);
+        if (migrated > 0) {
+            logger.info("Migrated {} legacy decimal serial numbers to canonical hex", migrated);
         }
+        return migrated;
     }
 
-    public Optional<X509Certificate> findBySerialNumber(String serialNumber){
-        projectKeyStore.loadOrCreate(keystorePath);
-        return projectKeyStore.readCertificateBySerialNumber(serialNumber);
+    /**
+     * Withdraws or reinstates a certificate, in the database and in the keystore index chains are checked against.
+     * The serial number may be given in any form {@link SerialNumberUtil#parseCandidates} accepts.
+     */
+    public Certificate setWithdrawn(String serialNumber, boolean withdrawn) {
+        Certificate certificate = findStoredBySerialNumber(serialNumber)
+                .orElseThrow(() -> new EntityNotFoundException("Certificate not found with serial number: " + serialNumber));
+        certificate.setIsWithdrawn(withdrawn);
+        certificate = certificateRepository.save(certificate);
+        projectKeyStore.setWithdrawn(certificate.getSerialNumber(), withdrawn);
+        return certificate;
     }
 
-    public List<X509Certificate> findAllByUser(User user) {
-        projectKeyStore.loadOrCreate(keystorePath);
-        return projectKeyStore.findAllByUser(user);
+    /**
+     * Exact match first, so a row the migration could not rewrite is still found as it was given.
+     */
+    private Optional<Certificate> findStoredBySerialNumber(String serialNumber) {
+        Optional<Certificate> certificate = certificateRepository.findBySerialNumber(serialNumber);
+        Iterator<BigInteger> candidates = SerialNumberUtil.parseCandidates(serialNumber).iterator();
+        while (certificate.isEmpty() && candidates.hasNext()) {
+            certificate = certificateRepository.findBySerialNumber(SerialNumberUtil.toCanonical(candidates.next()));
+        }
+        return certificate;
     }
 
-    public Map<CertificateType, List<X509Certificate>> findAllIssuers(){
-        projectKeyStore.loadOrCreate(keystorePath);
-        return projectKeyStore.getCACertificates();
+        public KeyPair generateKeyPair(KeyAlgorithm keyAlgorithm) {
+        return keyPairPool.take(keyAlgorithm.getJcaName(), keyAlgorithm.getKeySize());
     }
 
-    public List<X509Certificate> findAllUnassignedCACertificates(List<String> serialNumbers) throws KeyStoreException {
-        projectKeyStore.loadOrCreate(keystorePath);
-        return projectKeyStore.findUnassignedCACertificates(serialNumbers);
+    public Optional<X509Certificate> findBySerialNumber(String serialNumber){
+        return projectKeyStore.readCertificateBySerialNumber(serialNumber);
     }
 
-    private void checkChain(X509Certificate certificate) throws Exception {
-        X509Certificate currentCert = certificate;
-
-        while (true) {
-            currentCert.checkValidity();
-
-            if (isSelfSigned(currentCert)) {
-                currentCert.verify(currentCert.getPublicKey());
-                break;
-            }
-
-            X509Certificate finalCurrentCert = currentCert;
-            X509Certificate issuerCert = projectKeyStore.readCertificateBySubjectDN(
-                    currentCert.getIssuerX500Principal().getName()
-            ).orElseThrow(() -> new EntityNotFoundException(
-                    "Issuer certificate not found for " + finalCurrentCert.getSerialNumber()
-            ));
-            currentCert.verify(issuerCert.getPublicKey());
-
-            currentCert = issuerCert;
+    /**
+     * Admins page through the whole keystore, everyone else through the certificates they own; only the
+     * requested page is read from the keystore. The certificates are returned DER encoded, for list views.
+     */
+    public Page<ByteBuffer> findAllByUser(User user, int page, int size) {
+        if (page < 0 || size < 1) {
+            throw new IllegalArgumentException("Page must not be negative and size must be positive");
         }
+        Pageable pageable = PageRequest.of(page, Math.min(size, MAX_PAGE_SIZE));
+        if (user.getRole().equals(Role.ADMIN)) {
+            return projectKeyStore.findPage(pageable);
+        }
+        Page<String> owned = userRepository.findCertificateSerialNumbers(user.getId(), pageable);
+        return new PageImpl<>(projectKeyStore.readCertificatesBySerialNumbers(owned.getContent()), pageable, owned.getTotalElements());
     }
 
-    private boolean isSelfSigned(X509Certificate cert) {
-        try {
-            return cert.getSubjectX500Principal().equals(cert.getIssuerX500Principal())
-                    && verifySelfSigned(cert);
-        } catch (Exception e) {
-            return false;
-        }
+    public Set<String> findAllProfiles() {
+        return certificateProfiles.names();
     }
 
-    private boolean verifySelfSigned(X509Certificate cert) {
-        try {
-            cert.verify(cert.getPublicKey());
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    public Map<CertificateType, List<ByteBuffer>> findAllIssuers(){
+        return projectKeyStore.getCACertificates();
+    }
+
+    public List<ByteBuffer> findAllUnassignedCACertificates(Set<String> assignedSerialNumbers) {
+        return projectKeyStore.findUnassignedCACertificates(assignedSerialNumbers);
     }
 
     public Certificate createCertificate(Certificate request, Role subjectRole, String issuerSerialNumber, CertificateType issuerCertificateType) throws Exception {
         CertificateEntity subject = request.getSubject();
         request.setSubject(subject);
-        request.setSignatureAlgorithm(Constants.SIGNATURE_ALGORITHM);
-        BigInteger serial = new BigInteger(128, new SecureRandom());
-        request.setSerialNumber(serial.toString(16).toUpperCase());
         X509Certificate xCertificate;
-        projectKeyStore.loadOrCreate(keystorePath);
 
         if(request.getType().equals(CertificateType.ROOT)) {
             if(subjectRole.equals(Role.ADMIN)) {
+                prepare(request);
                 createRootCertificateEntities(request);
                 xCertificate = CertificateGenerator.generateX509Certificate(request, request.getSubject().getPrivateKey(), request.getSubject().getPublicKey());
             }
             else
                 throw new IllegalArgumentException("You don't have permission to create Root CA Certificate");
         } else {
-            X509Certificate issuerX509Certificate = projectKeyStore.readCertificateBySerialNumber(issuerSerialNumber).orElseThrow(() -> new EntityNotFoundException("Certificate not found"));
-            Certificate issuerCertificate = projectKeyStore.convertX509ToCertificate(issuerX509Certificate);
-            PrivateKey issuerPrivateKey = projectKeyStore.readPrivateKey(issuerCertificate.getSubject().getOrganization(), issuerCertificateType.name(), issuerSerialNumber).orElseThrow(() -> new EntityNotFoundException("Private key not found"));
-            if(!request.isDateValid() || request.getExpires().after(issuerCertificate.getExpires()))
-                throw new IllegalArgumentException("Subject's expiration date cannot be after issuer's expiration date");
-            request.setIssuer(issuerCertificate.getSubject());
-            KeyPair subjectKeyPair = this.generateKeyPair();
-            request.getSubject().setPublicKey(subjectKeyPair.getPublic());
-            request.getSubject().setPrivateKey(subjectKeyPair.getPrivate());
-            if (request.getType().equals(CertificateType.INTERMEDIATE) && subjectRole.equals(Role.USER))
-                throw new IllegalCallerException("You don't have permission for intermediate certificates");
-            xCertificate = CertificateGenerator.generateX509Certificate(request, issuerPrivateKey, request.getIssuer().getPublicKey());
+            IssuerContext issuer = resolveIssuer(issuerSerialNumber, issuerCertificateType);
+            verifiedChains.checkChain(issuer.certificate());
+            xCertificate = issue(request, subjectRole, issuer);
         }
-        checkChain(xCertificate);
+        // the generator verified the new signature, only the validity of the new link is left
+        xCertificate.checkValidity();
         request.setSignature(xCertificate.getSignature());
-        request.setSerialNumber(xCertificate.getSerialNumber().toString());
+        request.setSerialNumber(SerialNumberUtil.toCanonical(xCertificate.getSerialNumber()));
         //todo only save to keystore
         request = certificateRepository.save(request);
-        projectKeyStore.writeKeyEntry(request.getType().name(), String.format(request.getSerialNumber()), request.getSubject().getPrivateKey(), xCertificate, request.getSubject().getOrganization());
-        projectKeyStore.save(keystorePath);
+        projectKeyStore.writeKeyEntry(request.getType().name(), request.getSerialNumber(), request.getSubject().getPrivateKey(), xCertificate, request.getSubject().getOrganization());
+        return request;
+    }
+
+    /**
+     * Outcome of one certificate of a bulk issuance: the issued certificate, or why it was not issued.
+     */
+    public record IssuanceResult(Certificate certificate, X509Certificate x509Certificate, String error) {
+    }
+
+    /**
+     * Issues every request under one issuer. The issuer is resolved and its chain verified once; keys are
+     * generated and certificates signed in parallel, and the issued certificates are stored together, see
+     * {@link #issueAll}. Results are in request order.
+     */
+    public List<IssuanceResult> createCertificates(List<Certificate> requests, Role subjectRole, String issuerSerialNumber, CertificateType issuerCertificateType) throws Exception {
+        if (requests.size() > bulkMaxItems) {
+            throw new IllegalArgumentException("At most " + bulkMaxItems + " certificates can be issued at once");
+        }
+        IssuerContext issuer = resolveIssuer(issuerSerialNumber, issuerCertificateType);
+        verifiedChains.checkChain(issuer.certificate());
+        return issueAll(requests.stream().<Callable<Certificate>>map(request -> () -> request).toList(), subjectRole, issuer);
+    }
+
+    /**
+     * Like {@link #createCertificatesFromCsrs} for a single DER-encoded request.
+     */
+    public IssuanceResult createCertificateFromCsr(byte[] csr, Date issued, Date expires, Role subjectRole, String issuerSerialNumber,
+                                                   CertificateType issuerCertificateType) throws Exception {
+        IssuerContext issuer = resolveIssuer(issuerSerialNumber, issuerCertificateType);
+        verifiedChains.checkChain(issuer.certificate());
+        return issueAll(List.of(() -> fromCsr(csr, issued, expires)), subjectRole, issuer).get(0);
+    }
+
+    /**
+     * Issues end-entity certificates for the PKCS#10 requests read from {@code csrs}, valid from {@code issued}
+     * to {@code expires}. Each request must be signed with the key it asks to certify (proof of possession);
+     * that key stays with the subscriber, so nothing is written to the organization key store. The stream is
+     * issued in chunks of {@code certificate.bulk.max-items}, each stored on its own, and every chunk's results
+     * are handed to {@code chunkResults} in request order before the next one is read. If storing a chunk fails
+     * that chunk is undone and the exception thrown, while the chunks handed over before it stay issued.
+     */
+    public void createCertificatesFromCsrs(CsrReader csrs, Date issued, Date expires, Role subjectRole, String issuerSerialNumber,
+                                           CertificateType issuerCertificateType, Consumer<List<IssuanceResult>> chunkResults) throws Exception {
+        IssuerContext issuer = resolveIssuer(issuerSerialNumber, issuerCertificateType);
+        verifiedChains.checkChain(issuer.certificate());
+        List<Callable<Certificate>> chunk = new ArrayList<>();
+        byte[] csr;
+        while ((csr = csrs.next()) != null) {
+            byte[] encoded = csr;
+            chunk.add(() -> fromCsr(encoded, issued, expires));
+            if (chunk.size() == bulkMaxItems) {
+                chunkResults.accept(issueAll(chunk, subjectRole, issuer));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunkResults.accept(issueAll(chunk, subjectRole, issuer));
+        }
+    }
+
+    /**
+     * Builds each request and issues it on the shared issuance workers, then stores the ones that were issued
+     * together: their rows in one {@code saveAll}, then their keys and certificates in one keystore write. If
+     * the keystore write fails the rows are deleted again, so a row never points at a certificate that was not
+     * stored.
+     */
+    private List<IssuanceResult> issueAll(List<Callable<Certificate>> requests, Role subjectRole, IssuerContext issuer) {
+        List<Future<IssuanceResult>> signed = new ArrayList<>(requests.size());
+        try {
+            for (Callable<Certificate> build : requests) {
+                signed.add(issuanceExecutor.submit(() -> {
+                    Certificate request = build.call();
+                    X509Certificate xCertificate = issue(request, subjectRole, issuer);
+                    // the issuer's chain was verified above and the generator verified the new signature
+                    xCertificate.checkValidity();
+                    request.setSignature(xCertificate.getSignature());
+                    request.setSerialNumber(SerialNumberUtil.toCanonical(xCertificate.getSerialNumber()));
+                    return new IssuanceResult(request, xCertificate, null);
+                }));
+            }
+
+            List<IssuanceResult> results = new ArrayList<>(requests.size());
+            List<Certificate> issued = new ArrayList<>();
+            List<ProjectKeyStore.KeyEntry> entries = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                try {
+                    IssuanceResult result = signed.get(i).get();
+                    Certificate request = result.certificate();
+                    issued.add(request);
+                    entries.add(new ProjectKeyStore.KeyEntry(request.getType(), request.getSubject().getPrivateKey(), result.x509Certificate(), request.getSubject().getOrganization()));
+                    results.add(result);
+                } catch (ExecutionException e) {
+                    logger.debug("Bulk issuance item {} failed", i, e.getCause());
+                    results.add(new IssuanceResult(null, null, e.getCause().getMessage()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while issuing certificates", e);
+                }
+            }
+            List<Certificate> saved = certificateRepository.saveAll(issued);
+            try {
+                projectKeyStore.writeKeyEntries(entries);
+            } catch (RuntimeException e) {
+                certificateRepository.deleteAll(saved);
+                throw e;
+            }
+            logger.debug("Issued {} of {} certificates under {}", issued.size(), requests.size(), issuer.certificate().getSerialNumber());
+            return results;
+        } finally {
+            // items still queued when an earlier one threw are not wanted any more
+            signed.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * An end-entity request for the key and subject of a PKCS#10 request, after checking its proof of
+     * possession and that its key is one issuance supports.
+     */
+    private Certificate fromCsr(byte[] encoded, Date issued, Date expires) throws Exception {
+        JcaPKCS10CertificationRequest csr;
+        try {
+            csr = new JcaPKCS10CertificationRequest(encoded);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed PKCS#10 request", e);
+        }
+        SubjectPublicKeyInfo keyInfo = csr.getSubjectPublicKeyInfo();
+        try {
+            if (!csr.isSignatureValid(new JcaContentVerifierProviderBuilder().setProvider(Constants.PROVIDER).build(keyInfo))) {
+                throw new IllegalArgumentException("CSR signature does not match its public key");
+            }
+        } catch (OperatorCreationException | PKCSException e) {
+            throw new IllegalArgumentException("CSR signature cannot be verified", e);
+        }
+        PublicKey publicKey = csr.getPublicKey();
+        KeyAlgorithm keyAlgorithm = KeyAlgorithm.of(publicKey);
+        // larger RSA keys are fine and are recorded as the RSA family
+        if (publicKey instanceof RSAPublicKey rsa && rsa.getModulus().bitLength() < 2048) {
+            throw new IllegalArgumentException("RSA keys must be at least 2048 bits");
+        }
+        if (keyAlgorithm == KeyAlgorithm.EC_P256 && !SECObjectIdentifiers.secp256r1.equals(keyInfo.getAlgorithm().getParameters())) {
+            throw new IllegalArgumentException("Only P-256 EC keys are supported");
+        }
+        CertificateView.Name subject = CertificateView.Name.of(csr.getSubject());
+        if (subject.commonName() == null) {
+            throw new IllegalArgumentException("CSR subject has no common name");
+        }
+
+        Certificate request = new Certificate();
+        request.setSubject(subject.toEntity(publicKey));
+        request.setType(CertificateType.END_ENTITY);
+        request.setKeyAlgorithm(keyAlgorithm);
+        request.setIssued(issued);
+        request.setExpires(expires);
+        request.setExtensions(ExtensionUtil.fromRequestedExtensions(csr.getRequestedExtensions()));
         return request;
     }
 
+    /**
+     * What every certificate signed by one issuer needs, looked up once per issuance call. The signer factory is
+     * shared by the workers; each certificate gets its own signer from it.
+     */
+    private record IssuerContext(X509Certificate certificate, CertificateView view, CertificateEntity entity,
+                                 String signatureAlgorithm, OrganizationKeyBackend.SignerFactory signers) {
+    }
+
+    private IssuerContext resolveIssuer(String serialNumber, CertificateType type) throws Exception {
+        X509Certificate issuerX509Certificate = projectKeyStore.readCertificateBySerialNumber(serialNumber).orElseThrow(() -> new EntityNotFoundException("Certificate not found"));
+        CertificateView issuerCertificate = projectKeyStore.toCertificateView(issuerX509Certificate);
+        String keyAlias = projectKeyStore.findPrivateKeyAlias(type.name(), serialNumber).orElseThrow(() -> new EntityNotFoundException("Private key not found"));
+        // the issuer is saved together with the requests, so this is the one place its key gets encrypted
+        CertificateEntity entity = issuerCertificate.subject().toEntity(issuerCertificate.publicKey());
+        String signatureAlgorithm = KeyAlgorithm.signatureAlgorithmFor(issuerCertificate.publicKey());
+        return new IssuerContext(issuerX509Certificate, issuerCertificate, entity, signatureAlgorithm,
+                issuerSigners(issuerCertificate.subject().organization(), keyAlias, signatureAlgorithm));
+    }
+
+    private void prepare(Certificate request) {
+        if (request.getKeyAlgorithm() == null) {
+            request.setKeyAlgorithm(defaultKeyAlgorithm);
+        }
+        if (request.getProfile() != null && request.getCompiledProfile() == null) {
+            CertificateProfile profile = certificateProfiles.find(request.getProfile())
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown certificate profile " + request.getProfile()));
+            if (profile.getType() != request.getType()) {
+                throw new IllegalArgumentException("Profile " + profile.getName() + " is for " + profile.getType() + " certificates");
+            }
+            request.setExtensions(profile.extensionsFor(request.getExtensions()));
+            request.setCompiledProfile(profile);
+        }
+        BigInteger serial = new BigInteger(128, CryptoPrimitives.random());
+        request.setSerialNumber(SerialNumberUtil.toCanonical(serial));
+    }
+
+    /**
+     * Generates the subject key pair unless the request has a public key, and signs the certificate; the caller
+     * verifies and stores it.
+     */
+    private X509Certificate issue(Certificate request, Role subjectRole, IssuerContext issuer) throws Exception {
+        if (request.getType().equals(CertificateType.ROOT))
+            throw new IllegalArgumentException("Root CA Certificates are self-signed and have no issuer");
+        if (request.getType().equals(CertificateType.INTERMEDIATE) && subjectRole.equals(Role.USER))
+            throw new IllegalCallerException("You don't have permission for intermediate certificates");
+        if(!request.isDateValid() || request.getExpires().after(issuer.view().expires()))
+            throw new IllegalArgumentException("Subject's expiration date cannot be after issuer's expiration date");
+        prepare(request);
+        request.setIssuer(issuer.entity());
+        // a request from a CSR already has the subscriber's public key and never gets the private key
+        if (request.getSubject().getPublicKey() == null) {
+            KeyPair subjectKeyPair = this.generateKeyPair(request.getKeyAlgorithm());
+            request.getSubject().setPublicKey(subjectKeyPair.getPublic());
+            request.getSubject().setPrivateKey(subjectKeyPair.getPrivate());
+        }
+        request.setSignatureAlgorithm(issuer.signatureAlgorithm());
+        return CertificateGenerator.generateX509Certificate(request, issuer.signers().newSigner(), issuer.entity().getPublicKey());
+    }
+
+    /**
+     * Signs through the signing daemon when it is enabled, otherwise through the organization key backend.
+     */
+    private OrganizationKeyBackend.SignerFactory issuerSigners(String orgId, String keyAlias, String signatureAlgorithm) throws Exception {
+        SigningClient daemon = signingClient.getIfAvailable();
+        if (daemon != null) {
+            return () -> daemon.contentSigner(orgId, keyAlias, signatureAlgorithm);
+        }
+        OrganizationKeyBackend.SignerFactory signers = organizationKeys.signerFactory(orgId, keyAlias, signatureAlgorithm);
+        if (signers == null) {
+            throw new EntityNotFoundException("Private key not found");
+        }
+        return signers;
+    }
+
     private void createRootCertificateEntities(Certificate certificate){
         CertificateEntity issuer = new CertificateEntity();
         CertificateEntity subject = certificate.getSubject();
-        KeyPair keyPair = this.generateKeyPair();
+        KeyPair keyPair = this.generateKeyPair(certificate.getKeyAlgorithm());
         subject.setPublicKey(keyPair.getPublic());
         subject.setPrivateKey(keyPair.getPrivate());
         issuer.setPublicKey(keyPair.getPublic());
@@ -0,0 +1,226 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.example.publickeyinfrastructure.dto.CreateCertificateRequest;
+import com.example.publickeyinfrastructure.mapper.CertificateMapper;
+import com.example.publickeyinfrastructure.model.Certificate;
+import com.example.publickeyinfrastructure.model.IssuanceJob;
+import com.example.publickeyinfrastructure.model.IssuanceJobStatus;
+import com.example.publickeyinfrastructure.model.Role;
+import com.example.publickeyinfrastructure.model.User;
+import com.example.publickeyinfrastructure.repository.IssuanceJobRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Issues certificates in the background so slow issuances do not hold an HTTP thread. Submitted jobs are saved
+ * before they are queued; at most {@code certificate.jobs.queue-capacity} may wait at once, beyond that
+ * {@link #submit} is rejected so clients back off. {@code certificate.jobs.workers} jobs run at a time.
+ * <p>
+ * On startup, jobs still queued are queued again in submission order. A job that was running when the
+ * application stopped is failed rather than run again, because its certificate may already have been issued.
+ * This assumes a single instance works on the job table.
+ */
+@Service
+public class IssuanceJobService implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(IssuanceJobService.class);
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Value("${certificate.jobs.workers:2}")
+    private int workers;
+    @Value("${certificate.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    private final IssuanceJobRepository issuanceJobRepository;
+    private final CertificateService certificateService;
+    private final CertificateMapper certificateMapper;
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    // completed when the job finishes, for callers waiting on jobs started by this instance
+    private final Map<String, CompletableFuture<IssuanceJob>> completions = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @Autowired
+    public IssuanceJobService(IssuanceJobRepository issuanceJobRepository, CertificateService certificateService,
+                              CertificateMapper certificateMapper, UserService userService, ObjectMapper objectMapper) {
+        this.issuanceJobRepository = issuanceJobRepository;
+        this.certificateService = certificateService;
+        this.certificateMapper = certificateMapper;
+        this.userService = userService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        workers = Math.max(1, workers);
+        AtomicInteger workerCount = new AtomicInteger();
+        // the queue itself is unbounded, the capacity is enforced on submit so recovered jobs always fit
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "issuance-job-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverJobs() {
+        List<IssuanceJob> interrupted = issuanceJobRepository.findAllByStatusOrderBySubmittedAsc(IssuanceJobStatus.RUNNING);
+        for (IssuanceJob job : interrupted) {
+            job.setStatus(IssuanceJobStatus.FAILED);
+            job.setFinished(new Date());
+            job.setError("Interrupted by a restart, check whether the certificate was issued before submitting again");
+        }
+        issuanceJobRepository.saveAll(interrupted);
+        List<IssuanceJob> pending = issuanceJobRepository.findAllByStatusOrderBySubmittedAsc(IssuanceJobStatus.QUEUED);
+        pending.forEach(job -> enqueue(job.getId()));
+        if (!interrupted.isEmpty() || !pending.isEmpty()) {
+            logger.info("Requeued {} issuance jobs, failed {} interrupted ones", pending.size(), interrupted.size());
+        }
+    }
+
+    /**
+     * Saves the request as a queued job for {@code requester} and returns it.
+     *
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public IssuanceJob submit(CreateCertificateRequest request, User requester) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            throw new RejectedExecutionException("Issuance queue is full");
+        }
+        IssuanceJob job = new IssuanceJob();
+        try {
+            job.setId(UUID.randomUUID().toString());
+            job.setStatus(IssuanceJobStatus.QUEUED);
+            job.setRequesterEmail(requester.getEmail());
+            job.setRequest(objectMapper.writeValueAsString(request));
+            job.setSubmitted(new Date());
+            job = issuanceJobRepository.save(job);
+        } catch (JsonProcessingException | RuntimeException e) {
+            queued.decrementAndGet();
+            throw new RuntimeException("Failed to save issuance job", e);
+        }
+        String id = job.getId();
+        executor.execute(() -> run(id));
+        return job;
+    }
+
+    public Optional<IssuanceJob> findById(String id) {
+        return issuanceJobRepository.findById(id);
+    }
+
+    /**
+     * The job once it has finished, or as it is after {@code timeoutMillis}, whichever comes first. The
+     * calling thread does not wait.
+     */
+    public CompletableFuture<IssuanceJob> awaitCompletion(IssuanceJob job, long timeoutMillis) {
+        if (job.getStatus().isFinished() || timeoutMillis <= 0) {
+            return CompletableFuture.completedFuture(job);
+        }
+        String id = job.getId();
+        CompletableFuture<IssuanceJob> done = completions.computeIfAbsent(id, key -> new CompletableFuture<>());
+        // the job may have finished between reading it and registering
+        IssuanceJob current = issuanceJobRepository.findById(id).orElse(job);
+        if (current.getStatus().isFinished()) {
+            completions.remove(id, done);
+            done.complete(current);
+        }
+        return done.copy()
+                .completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS)
+                .thenApply(finished -> finished != null ? finished : issuanceJobRepository.findById(id).orElse(job));
+    }
+
+    private void enqueue(String id) {
+        queued.incrementAndGet();
+        executor.execute(() -> run(id));
+    }
+
+    private void run(String id) {
+        queued.decrementAndGet();
+        IssuanceJob job = issuanceJobRepository.findById(id).orElse(null);
+        if (job == null || job.getStatus() != IssuanceJobStatus.QUEUED) {
+            return;
+        }
+        running.incrementAndGet();
+        try {
+            job.setStatus(IssuanceJobStatus.RUNNING);
+            job.setStarted(new Date());
+            job = issuanceJobRepository.save(job);
+            try {
+                job.setSerialNumber(issue(job));
+                job.setStatus(IssuanceJobStatus.SUCCEEDED);
+            } catch (Exception e) {
+                logger.debug("Issuance job {} failed", id, e);
+                job.setStatus(IssuanceJobStatus.FAILED);
+                String error = String.valueOf(e.getMessage());
+                job.setError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+            }
+            job.setFinished(new Date());
+            job = issuanceJobRepository.save(job);
+        } catch (RuntimeException e) {
+            logger.error("Failed to update issuance job {}", id, e);
+        } finally {
+            running.decrementAndGet();
+            CompletableFuture<IssuanceJob> done = completions.remove(id);
+            if (done != null) {
+                done.complete(job);
+            }
+        }
+    }
+
+    private String issue(IssuanceJob job) throws Exception {
+        CreateCertificateRequest request = objectMapper.readValue(job.getRequest(), CreateCertificateRequest.class);
+        User user = userService.findByEmail(job.getRequesterEmail())
+                .orElseThrow(() -> new EntityNotFoundException("User not found with email: " + job.getRequesterEmail()));
+        Certificate certificate = certificateService.createCertificate(certificateMapper.toEntity(request), user.getRole(),
+                request.getIssuerSerialNumber(), request.getIssuerCertificateType());
+        if (!user.getRole().equals(Role.ADMIN)) {
+            userService.assignCertificate(user, certificate.getSerialNumber());
+        }
+        return certificate.getSerialNumber();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("certificate.jobs.queued", queued, AtomicInteger::get)
+                .description("Issuance jobs waiting for a worker")
+                .register(registry);
+        Gauge.builder("certificate.jobs.running", running, AtomicInteger::get)
+                .description("Issuance jobs being issued")
+                .register(registry);
+    }
+}
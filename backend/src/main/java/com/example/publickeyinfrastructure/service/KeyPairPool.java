@@ -0,0 +1,205 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.KeyPair;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Key pairs generated ahead of time by background workers, so issuance does not pay for the prime search.
+ * Each configured algorithm and size has its own pool, refilled up to its high watermark whenever it drops
+ * below its low watermark. {@link #take} generates inline when the pool is empty or not configured.
+ */
+@Component
+public class KeyPairPool implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyPairPool.class);
+
+    enum Source {POOL, INLINE}
+
+    // comma-separated algorithm:keySize:lowWatermark:highWatermark
+    @Value("${key-pair-pool.pools:RSA:2048:8:32}")
+    private List<String> poolSpecs;
+    @Value("${key-pair-pool.workers:2}")
+    private int workers;
+
+    private final Map<String, Pool> pools = new LinkedHashMap<>();
+    // replaced by the application registry in bindTo, so take() can be used before metrics are bound
+    private volatile MeterRegistry meterRegistry = new CompositeMeterRegistry();
+    private ExecutorService generators;
+
+    private final class Pool {
+        final String algorithm;
+        final int keySize;
+        final int lowWatermark;
+        final int highWatermark;
+        final BlockingQueue<KeyPair> ready;
+        // keys being generated right now, counted against the high watermark
+        final AtomicInteger reserved = new AtomicInteger();
+        final AtomicInteger activeWorkers = new AtomicInteger();
+        final LongAdder generated = new LongAdder();
+
+        Pool(String algorithm, int keySize, int lowWatermark, int highWatermark) {
+            this.algorithm = algorithm;
+            this.keySize = keySize;
+            this.lowWatermark = lowWatermark;
+            this.highWatermark = highWatermark;
+            this.ready = new ArrayBlockingQueue<>(highWatermark);
+        }
+
+        void refillIfLow() {
+            if (ready.size() >= lowWatermark || generators == null || generators.isShutdown()) {
+                return;
+            }
+            int running = activeWorkers.get();
+            while (running < workers) {
+                if (activeWorkers.compareAndSet(running, running + 1)) {
+                    generators.execute(this::refill);
+                }
+                running = activeWorkers.get();
+            }
+        }
+
+        private void refill() {
+            boolean failed = false;
+            try {
+                while (!Thread.currentThread().isInterrupted() && reserve()) {
+                    try {
+                        ready.offer(CryptoPrimitives.keyPairGenerator(algorithm, keySize).generateKeyPair());
+                        generated.increment();
+                    } finally {
+                        reserved.decrementAndGet();
+                    }
+                }
+            } catch (RuntimeException e) {
+                failed = true;
+                logger.error("Failed to pre-generate {} {} key pair", algorithm, keySize, e);
+            } finally {
+                activeWorkers.decrementAndGet();
+            }
+            // takes that ran while this worker was finishing saw it as active and did not start another
+            if (!failed) {
+                refillIfLow();
+            }
+        }
+
+        private boolean reserve() {
+            while (true) {
+                int inFlight = reserved.get();
+                if (ready.size() + inFlight >= highWatermark) {
+                    return false;
+                }
+                if (reserved.compareAndSet(inFlight, inFlight + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String spec : poolSpecs) {
+            String[] parts = spec.trim().split(":");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Invalid key pair pool '" + spec + "', expected algorithm:keySize:low:high");
+            }
+            int low = Integer.parseInt(parts[2]);
+            int high = Integer.parseInt(parts[3]);
+            if (low < 0 || high < 1 || low > high) {
+                throw new IllegalArgumentException("Invalid watermarks for key pair pool '" + spec + "'");
+            }
+            Pool pool = new Pool(parts[0], Integer.parseInt(parts[1]), low, high);
+            pools.put(keyOf(pool.algorithm, pool.keySize), pool);
+        }
+        workers = Math.max(1, workers);
+        AtomicInteger workerCount = new AtomicInteger();
+        generators = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "key-pair-pool-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        pools.values().forEach(Pool::refillIfLow);
+        logger.debug("Key pair pools {} started with {} workers", pools.keySet(), workers);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (generators != null) {
+            generators.shutdownNow();
+        }
+        pools.values().forEach(pool -> pool.ready.clear());
+    }
+
+    /**
+     * Returns a fresh key pair, taken from the pool when one is ready. Each pair is handed out exactly once.
+     */
+    public KeyPair take(String algorithm, int keySize) {
+        long started = System.nanoTime();
+        Pool pool = pools.get(keyOf(algorithm, keySize));
+        KeyPair keyPair = pool != null ? pool.ready.poll() : null;
+        Source source = keyPair != null ? Source.POOL : Source.INLINE;
+        if (keyPair == null) {
+            keyPair = CryptoPrimitives.keyPairGenerator(algorithm, keySize).generateKeyPair();
+        }
+        if (pool != null) {
+            pool.refillIfLow();
+        }
+        Timer.builder("key.pair.pool.wait")
+                .tag("algorithm", algorithm)
+                .tag("size", String.valueOf(keySize))
+                .tag("source", source.name().toLowerCase())
+                .description("Time issuance spent obtaining a key pair")
+                .register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return keyPair;
+    }
+
+    public int size(String algorithm, int keySize) {
+        Pool pool = pools.get(keyOf(algorithm, keySize));
+        return pool != null ? pool.ready.size() : 0;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        for (Pool pool : pools.values()) {
+            String size = String.valueOf(pool.keySize);
+            Gauge.builder("key.pair.pool.size", pool.ready, BlockingQueue::size)
+                    .tag("algorithm", pool.algorithm)
+                    .tag("size", size)
+                    .description("Pre-generated key pairs ready for issuance")
+                    .register(registry);
+            FunctionCounter.builder("key.pair.pool.generated", pool.generated, LongAdder::doubleValue)
+                    .tag("algorithm", pool.algorithm)
+                    .tag("size", size)
+                    .description("Key pairs generated by the background workers")
+                    .register(registry);
+        }
+    }
+
+    private static String keyOf(String algorithm, int keySize) {
+        return algorithm.toUpperCase() + ":" + keySize;
+    }
+}
@@ -1,12 +1,16 @@
 package com.example.publickeyinfrastructure.service;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import com.example.publickeyinfrastructure.model.Role;
 import jakarta.persistence.EntityNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.publickeyinfrastructure.model.User;
 import com.example.publickeyinfrastructure.repository.UserRepository;
@@ -30,12 +34,32 @@ public class UserService {
         return this.userRepository.save(user);
     }
 
+    @Transactional
+    public void assignCertificate(User user, String serialNumber) {
+        assignCertificates(user, List.of(serialNumber));
+    }
+
+    /**
+     * Inserts the assignments into the collection table. Saving the user instead would write back the whole
+     * collection as the caller loaded it, and of two concurrent assignments to the same user one would be lost.
+     * The caller's {@code user} is left as it is.
+     */
+    @Transactional
+    public void assignCertificates(User user, Collection<String> serialNumbers) {
+        for (String serialNumber : serialNumbers) {
+            this.userRepository.insertCertificateSerialNumber(user.getId(), serialNumber);
+        }
+    }
+
     public List<User> findAllCAUsers() {
         return this.userRepository.findAllByRole(Role.CA_USER);
     }
 
-    public List<String> findAllAssigned() {
-        return this.userRepository.findAll().stream().flatMap(u -> u.getCertificateSerialNumbers().stream()).toList();
+    /**
+     * Every assigned serial number, read with a single projection query over the assignment table.
+     */
+    public Set<String> findAllAssigned() {
+        return new HashSet<>(this.userRepository.findAllAssignedSerialNumbers());
     }
 
     public User findById(Integer userId){
@@ -0,0 +1,91 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.example.publickeyinfrastructure.keystore.ProjectKeyStore;
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Issuer chains already verified up to their self-signed root, by issuer serial number, so issuing under a
+ * known issuer only checks the new certificate against it. An entry holds until the first link of its chain
+ * expires or any certificate is withdrawn or reinstated; after that the chain is walked again.
+ */
+@Component
+public class VerifiedChainCache implements MeterBinder {
+
+    private record Verified(X509Certificate certificate, long validUntil, long withdrawalVersion) {
+    }
+
+    private final ProjectKeyStore projectKeyStore;
+    private final Map<BigInteger, Verified> verified = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public VerifiedChainCache(ProjectKeyStore projectKeyStore) {
+        this.projectKeyStore = projectKeyStore;
+    }
+
+    /**
+     * Checks that every link from {@code certificate} up to its root is within its validity period, not
+     * withdrawn and signed by the next one.
+     */
+    public void checkChain(X509Certificate certificate) throws Exception {
+        // read before walking, so a withdrawal during the walk leaves the entry stale
+        long withdrawalVersion = projectKeyStore.withdrawalVersion();
+        Verified cached = verified.get(certificate.getSerialNumber());
+        if (cached != null && cached.withdrawalVersion() == withdrawalVersion
+                && System.currentTimeMillis() <= cached.validUntil() && cached.certificate().equals(certificate)) {
+            hits.increment();
+            return;
+        }
+        misses.increment();
+        long validUntil = walk(certificate);
+        verified.put(certificate.getSerialNumber(), new Verified(certificate, validUntil, withdrawalVersion));
+    }
+
+    // returns when the first link of the chain expires
+    private long walk(X509Certificate certificate) throws Exception {
+        X509Certificate current = certificate;
+        long validUntil = Long.MAX_VALUE;
+        while (true) {
+            current.checkValidity();
+            validUntil = Math.min(validUntil, current.getNotAfter().getTime());
+            if (projectKeyStore.isWithdrawn(current.getSerialNumber())) {
+                throw new IllegalArgumentException("Certificate " + SerialNumberUtil.toCanonical(current.getSerialNumber()) + " in the chain is withdrawn");
+            }
+            if (current.getSubjectX500Principal().equals(current.getIssuerX500Principal())) {
+                current.verify(current.getPublicKey());
+                return validUntil;
+            }
+            X509Certificate finalCurrent = current;
+            X509Certificate issuer = projectKeyStore.readCertificateBySubjectDN(current.getIssuerX500Principal())
+                    .orElseThrow(() -> new EntityNotFoundException(
+                            "Issuer certificate not found for " + finalCurrent.getSerialNumber()));
+            current.verify(issuer.getPublicKey());
+            current = issuer;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("certificate.chain.cache", hits, LongAdder::doubleValue)
+                .tag("result", "hit")
+                .description("Issuer chain checks answered from the cache")
+                .register(registry);
+        FunctionCounter.builder("certificate.chain.cache", misses, LongAdder::doubleValue)
+                .tag("result", "miss")
+                .description("Issuer chain checks that walked the chain to the root")
+                .register(registry);
+    }
+}
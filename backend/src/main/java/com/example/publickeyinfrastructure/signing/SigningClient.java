@@ -0,0 +1,260 @@
+package com.example.publickeyinfrastructure.signing;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application side of the signing daemon, enabled with {@code signing.daemon.enabled=true}.
+ * <p>
+ * Callers hash locally and get a future; a sender thread coalesces whatever requests queued up while the
+ * previous batch was being written into the next batch, and a reader thread completes the futures as the
+ * daemon answers. One pipelined connection thus carries any number of concurrent issuances.
+ * <p>
+ * Only issuance signing goes through the daemon: this JVM still holds the master key, generates and wraps new
+ * CA keys when it stores them and self-signs new roots, so issuing never decrypts a CA key here, but the key of a
+ * newly created CA does pass through it.
+ */
+@Component
+@ConditionalOnProperty(name = "signing.daemon.enabled", havingValue = "true")
+public class SigningClient implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SigningClient.class);
+
+    private record Pending(SigningProtocol.SignRequest request, CompletableFuture<byte[]> result) {
+    }
+
+    private record Sent(SocketChannel connection, List<Pending> batch) {
+    }
+
+    @Value("${signing.daemon.socket:./data/signer.sock}")
+    private String socketPath;
+    @Value("${signing.daemon.max-batch:64}")
+    private int maxBatch;
+    @Value("${signing.daemon.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Map<Long, Sent> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    // opened by the sender thread, cleared by whichever thread sees the connection fail
+    private volatile SocketChannel channel;
+    private Thread sender;
+
+    public SigningClient() {
+    }
+
+    public SigningClient(Path socketPath, int maxBatch, long timeoutMillis) {
+        this.socketPath = socketPath.toString();
+        this.maxBatch = maxBatch;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        maxBatch = Math.max(1, Math.min(maxBatch, SigningProtocol.MAX_BATCH));
+        sender = new Thread(this::send, "signing-client-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        if (sender != null) {
+            sender.interrupt();
+        }
+        SocketChannel current = channel;
+        if (current != null) {
+            dropConnection(current, new IOException("Signing client closed"));
+        }
+    }
+
+    /**
+     * Signs {@code toBeSigned} with the organization key {@code orgId-keyId} held by the daemon.
+     */
+    public CompletableFuture<byte[]> sign(String orgId, String keyId, String signatureAlgorithm, byte[] toBeSigned) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        try {
+            byte[] data = SigningProtocol.prehash(signatureAlgorithm, toBeSigned);
+            queue.add(new Pending(new SigningProtocol.SignRequest(orgId, keyId, signatureAlgorithm, data), result));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * A {@link ContentSigner} for certificate builders that signs through the daemon.
+     */
+    public ContentSigner contentSigner(String orgId, String keyId, String signatureAlgorithm) {
+        return new RemoteContentSigner(orgId, keyId, signatureAlgorithm);
+    }
+
+    private void send() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long id = nextId.incrementAndGet();
+            List<Pending> sent = List.copyOf(batch);
+            batch.clear();
+            SocketChannel current = null;
+            try {
+                current = connection();
+                inFlight.put(id, new Sent(current, sent));
+                SigningProtocol.writeFrame(current, SigningProtocol.encodeRequest(id, sent.stream().map(Pending::request).toList()));
+            } catch (IOException e) {
+                logger.warn("Failed to send signing batch to {}", socketPath, e);
+                inFlight.remove(id);
+                sent.forEach(pending -> pending.result().completeExceptionally(e));
+                if (current != null) {
+                    dropConnection(current, e);
+                }
+            }
+        }
+    }
+
+    // sender thread only
+    private SocketChannel connection() throws IOException {
+        SocketChannel current = channel;
+        if (current != null && current.isOpen()) {
+            return current;
+        }
+        current = SocketChannel.open(StandardProtocolFamily.UNIX);
+        current.connect(UnixDomainSocketAddress.of(socketPath));
+        channel = current;
+        SocketChannel connected = current;
+        Thread reader = new Thread(() -> receive(connected), "signing-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+        logger.debug("Connected to signing daemon at {}", socketPath);
+        return current;
+    }
+
+    private void receive(SocketChannel connection) {
+        try {
+            byte[] frame;
+            while ((frame = SigningProtocol.readFrame(connection)) != null) {
+                SigningProtocol.Batch<SigningProtocol.SignResult> response = SigningProtocol.decodeResponse(frame);
+                Sent sent = inFlight.remove(response.id());
+                if (sent == null) {
+                    continue;
+                }
+                List<Pending> batch = sent.batch();
+                for (int i = 0; i < batch.size(); i++) {
+                    SigningProtocol.SignResult result = i < response.items().size() ? response.items().get(i) : null;
+                    if (result != null && result.signature() != null) {
+                        batch.get(i).result().complete(result.signature());
+                    } else {
+                        String error = result != null ? result.error() : "No result from signing daemon";
+                        batch.get(i).result().completeExceptionally(new IllegalStateException(error));
+                    }
+                }
+            }
+            throw new IOException("Signing daemon closed the connection");
+        } catch (IOException e) {
+            if (channel == connection) {
+                logger.warn("Lost connection to signing daemon at {}", socketPath, e);
+            }
+            dropConnection(connection, e);
+        }
+    }
+
+    /**
+     * Closes the connection and fails what was sent on it, since it will not be answered; the next batch
+     * reconnects.
+     */
+    private void dropConnection(SocketChannel connection, IOException cause) {
+        synchronized (this) {
+            if (channel == connection) {
+                channel = null;
+            }
+        }
+        closeQuietly(connection);
+        inFlight.entrySet().removeIf(entry -> {
+            if (entry.getValue().connection() != connection) {
+                return false;
+            }
+            entry.getValue().batch().forEach(pending -> pending.result().completeExceptionally(cause));
+            return true;
+        });
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close signing connection", e);
+        }
+    }
+
+    private final class RemoteContentSigner implements ContentSigner {
+        private final String orgId;
+        private final String keyId;
+        private final String signatureAlgorithm;
+        private final AlgorithmIdentifier algorithmIdentifier;
+        private final ByteArrayOutputStream toBeSigned = new ByteArrayOutputStream(1024);
+
+        RemoteContentSigner(String orgId, String keyId, String signatureAlgorithm) {
+            this.orgId = orgId;
+            this.keyId = keyId;
+            this.signatureAlgorithm = signatureAlgorithm;
+            this.algorithmIdentifier = new DefaultSignatureAlgorithmIdentifierFinder().find(signatureAlgorithm);
+        }
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+            return algorithmIdentifier;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return toBeSigned;
+        }
+
+        @Override
+        public byte[] getSignature() {
+            try {
+                return sign(orgId, keyId, signatureAlgorithm, toBeSigned.toByteArray()).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the signing daemon", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Signing daemon failed to sign with key '" + orgId + "-" + keyId + "'", e.getCause());
+            } catch (Exception e) {
+                throw new RuntimeException("Signing daemon did not answer in time", e);
+            }
+        }
+    }
+}
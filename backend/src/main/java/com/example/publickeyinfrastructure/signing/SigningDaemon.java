@@ -0,0 +1,48 @@
+package com.example.publickeyinfrastructure.signing;
+
+import com.example.publickeyinfrastructure.config.SecurityProperties;
+import com.example.publickeyinfrastructure.keystore.MasterKeyStore;
+import com.example.publickeyinfrastructure.keystore.OrganizationKeyCache;
+import com.example.publickeyinfrastructure.keystore.OrganizationKeyStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.nio.file.Path;
+
+/**
+ * Entry point of the signing daemon: a separate JVM that decrypts the organization keys and signs for the
+ * application over {@link SigningServer}, so issuing certificates never unwraps a CA key in the web process.
+ * The web process still holds the master key: it wraps the keys of new CAs and self-signs new roots itself.
+ * <p>
+ * It reads the same configuration as the application (key store paths, passphrases, {@code signing.daemon.*})
+ * and opens the master and organization key stores read-only, picking up keys the application adds or
+ * re-wraps later. Start it from the application jar before the application, which then needs
+ * {@code signing.daemon.enabled=true}:
+ * {@code java -Dloader.main=com.example.publickeyinfrastructure.signing.SigningDaemon -cp app.jar
+ * org.springframework.boot.loader.launch.PropertiesLauncher}.
+ * <p>
+ * Deliberately not a {@code @Configuration}: the application's component scan must not pick it up.
+ */
+@Import({MasterKeyStore.class, OrganizationKeyCache.class, OrganizationKeyStore.class})
+@EnableConfigurationProperties(SecurityProperties.class)
+public class SigningDaemon {
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    SigningServer signingServer(OrganizationKeyStore organizationKeyStore,
+                                @Value("${signing.daemon.socket:./data/signer.sock}") String socketPath,
+                                @Value("${signing.daemon.workers:0}") int workers) {
+        return new SigningServer(Path.of(socketPath), organizationKeyStore::loadOrganizationKey, workers);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        new SpringApplicationBuilder(SigningDaemon.class)
+                .web(WebApplicationType.NONE)
+                .properties("organization.keys.read-only=true", "master.keystore.read-only=true")
+                .run(args);
+    }
+}
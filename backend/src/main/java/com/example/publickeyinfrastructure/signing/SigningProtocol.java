@@ -0,0 +1,206 @@
+package com.example.publickeyinfrastructure.signing;
+
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.DigestInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format between the application and the signing daemon. Every message is a frame
+ * {@code [int length][payload]}. Requests and responses carry an id, so a connection can have many batches in
+ * flight and the daemon answers them in whatever order they finish.
+ * <p>
+ * Request payload: {@code [long id][short count]} and per item {@code [UTF orgId][UTF keyId]
+ * [UTF signature algorithm][int length][data]}. Response payload: {@code [long id][short count]} and per item
+ * {@code [byte status][int length][signature or UTF-8 error message]}, in request order.
+ * <p>
+ * For RSA and ECDSA the data is the SHA-256 digest of the to-be-signed certificate, so only 32 bytes cross the
+ * socket. Ed25519 signs the message itself (X.509 uses PureEdDSA), so its items carry the whole TBS.
+ */
+final class SigningProtocol {
+
+    static final int MAX_FRAME_LENGTH = 1 << 24;
+    static final int MAX_BATCH = Short.MAX_VALUE;
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    private static final int SHA256_LENGTH = 32;
+    private static final AlgorithmIdentifier SHA256 = new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256, DERNull.INSTANCE);
+
+    record SignRequest(String orgId, String keyId, String signatureAlgorithm, byte[] data) {
+    }
+
+    // exactly one of signature and error is set
+    record SignResult(byte[] signature, String error) {
+    }
+
+    record Batch<T>(long id, List<T> items) {
+    }
+
+    private SigningProtocol() {
+    }
+
+    /**
+     * What the client sends for {@code toBeSigned}: its SHA-256 digest, or the data itself for Ed25519.
+     */
+    static byte[] prehash(String signatureAlgorithm, byte[] toBeSigned) {
+        return switch (signatureAlgorithm) {
+            case "SHA256withRSA", "SHA256withECDSA" -> CryptoPrimitives.messageDigest("SHA-256").digest(toBeSigned);
+            case "Ed25519" -> toBeSigned;
+            default -> throw new IllegalArgumentException("Unsupported signature algorithm " + signatureAlgorithm);
+        };
+    }
+
+    /**
+     * Daemon side of {@link #prehash}: the same signature {@code signatureAlgorithm} would produce over the
+     * original data.
+     */
+    static byte[] signPrehashed(PrivateKey key, String signatureAlgorithm, byte[] data) throws Exception {
+        Signature signature;
+        byte[] input = data;
+        switch (signatureAlgorithm) {
+            case "SHA256withRSA" -> {
+                checkDigestLength(data);
+                // PKCS#1 v1.5 signs the DER DigestInfo, which NONEwithRSA pads as is
+                input = new DigestInfo(SHA256, data).getEncoded(ASN1Encoding.DER);
+                signature = CryptoPrimitives.signature("NONEwithRSA");
+            }
+            case "SHA256withECDSA" -> {
+                checkDigestLength(data);
+                signature = CryptoPrimitives.signature("NONEwithECDSA");
+            }
+            case "Ed25519" -> signature = CryptoPrimitives.signature("Ed25519");
+            default -> throw new IllegalArgumentException("Unsupported signature algorithm " + signatureAlgorithm);
+        }
+        signature.initSign(key);
+        signature.update(input);
+        return signature.sign();
+    }
+
+    static byte[] encodeRequest(long id, List<SignRequest> items) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * items.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(id);
+            out.writeShort(items.size());
+            for (SignRequest item : items) {
+                out.writeUTF(item.orgId());
+                out.writeUTF(item.keyId());
+                out.writeUTF(item.signatureAlgorithm());
+                out.writeInt(item.data().length);
+                out.write(item.data());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static Batch<SignRequest> decodeRequest(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            long id = in.readLong();
+            int count = in.readUnsignedShort();
+            List<SignRequest> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(new SignRequest(in.readUTF(), in.readUTF(), in.readUTF(), readBytes(in)));
+            }
+            return new Batch<>(id, items);
+        }
+    }
+
+    static byte[] encodeResponse(long id, List<SignResult> results) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(300 * results.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(id);
+            out.writeShort(results.size());
+            for (SignResult result : results) {
+                byte[] body = result.signature() != null ? result.signature() : result.error().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(result.signature() != null ? STATUS_OK : STATUS_ERROR);
+                out.writeInt(body.length);
+                out.write(body);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static Batch<SignResult> decodeResponse(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            long id = in.readLong();
+            int count = in.readUnsignedShort();
+            List<SignResult> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte status = in.readByte();
+                byte[] body = readBytes(in);
+                results.add(status == STATUS_OK
+                        ? new SignResult(body, null)
+                        : new SignResult(null, new String(body, StandardCharsets.UTF_8)));
+            }
+            return new Batch<>(id, results);
+        }
+    }
+
+    /**
+     * Next frame's payload, or null once the peer closed the connection between frames.
+     */
+    static byte[] readFrame(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        if (!readFully(channel, header, true)) {
+            return null;
+        }
+        int length = header.flip().getInt();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, false);
+        return payload.array();
+    }
+
+    // callers serialize writes to a channel
+    static void writeFrame(WritableByteChannel channel, byte[] payload) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(4 + payload.length).putInt(payload.length).put(payload).flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer, boolean eofAllowed) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (eofAllowed && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Connection closed inside a frame");
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid item length " + length);
+        }
+        return in.readNBytes(length);
+    }
+
+    private static void checkDigestLength(byte[] digest) {
+        if (digest.length != SHA256_LENGTH) {
+            throw new IllegalArgumentException("Expected a SHA-256 digest, got " + digest.length + " bytes");
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.publickeyinfrastructure.signing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves {@link SigningProtocol} on a Unix domain socket that only the owning user can connect to.
+ * <p>
+ * Each connection has a reader thread that hands every batch to a shared worker pool; responses are written as
+ * batches finish, so a client can keep many batches in flight on one connection. A connection stops reading
+ * once {@value #MAX_IN_FLIGHT} of its batches are queued, which pushes back on a client that sends faster than
+ * the workers sign.
+ */
+public class SigningServer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SigningServer.class);
+    private static final int MAX_IN_FLIGHT = 256;
+
+    @FunctionalInterface
+    public interface KeyResolver {
+        /**
+         * The private key for the alias, or null if there is none.
+         */
+        PrivateKey resolve(String orgId, String keyId) throws Exception;
+    }
+
+    private final Path socketPath;
+    private final KeyResolver keys;
+    private final int workerCount;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private ExecutorService workers;
+    private ServerSocketChannel server;
+
+    public SigningServer(Path socketPath, KeyResolver keys, int workers) {
+        this.socketPath = socketPath;
+        this.keys = keys;
+        this.workerCount = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    }
+
+    public synchronized void start() throws IOException {
+        // a socket file left behind by a previous run would make bind fail
+        Files.deleteIfExists(socketPath);
+        Path parent = socketPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "signing-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+
+        Thread acceptor = new Thread(this::accept, "signing-acceptor");
+        acceptor.start();
+        logger.info("Signing daemon listening on {} with {} workers", socketPath, workerCount);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (server != null) {
+            server.close();
+            // clients notice right away and reconnect, instead of sending to a daemon that is gone
+            for (SocketChannel connection : connections) {
+                connection.close();
+            }
+            workers.shutdownNow();
+            Files.deleteIfExists(socketPath);
+            server = null;
+        }
+    }
+
+    private void accept() {
+        AtomicInteger connectionCount = new AtomicInteger();
+        while (true) {
+            SocketChannel connection;
+            try {
+                connection = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.error("Failed to accept signing connection", e);
+                return;
+            }
+            Thread reader = new Thread(() -> serve(connection), "signing-connection-" + connectionCount.incrementAndGet());
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    private void serve(SocketChannel connection) {
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        connections.add(connection);
+        try (connection) {
+            byte[] frame;
+            while ((frame = SigningProtocol.readFrame(connection)) != null) {
+                SigningProtocol.Batch<SigningProtocol.SignRequest> batch = SigningProtocol.decodeRequest(frame);
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        byte[] response = SigningProtocol.encodeResponse(batch.id(), sign(batch.items()));
+                        synchronized (connection) {
+                            SigningProtocol.writeFrame(connection, response);
+                        }
+                    } catch (IOException e) {
+                        logger.debug("Failed to answer signing batch {}", batch.id(), e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            // let the batches already accepted finish before the connection is closed
+            inFlight.acquire(MAX_IN_FLIGHT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RejectedExecutionException e) {
+            logger.debug("Signing connection closed", e);
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    private List<SigningProtocol.SignResult> sign(List<SigningProtocol.SignRequest> items) {
+        List<SigningProtocol.SignResult> results = new ArrayList<>(items.size());
+        for (SigningProtocol.SignRequest item : items) {
+            try {
+                PrivateKey key = keys.resolve(item.orgId(), item.keyId());
+                if (key == null) {
+                    results.add(new SigningProtocol.SignResult(null, "Key '" + item.orgId() + "-" + item.keyId() + "' not found"));
+                    continue;
+                }
+                results.add(new SigningProtocol.SignResult(SigningProtocol.signPrehashed(key, item.signatureAlgorithm(), item.data()), null));
+            } catch (Exception e) {
+                logger.error("Failed to sign with key '{}-{}'", item.orgId(), item.keyId(), e);
+                results.add(new SigningProtocol.SignResult(null, e.getClass().getSimpleName() + ": " + e.getMessage()));
+            }
+        }
+        return results;
+    }
+}
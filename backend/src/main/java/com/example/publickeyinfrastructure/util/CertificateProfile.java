@@ -0,0 +1,187 @@
+package com.example.publickeyinfrastructure.util;
+
+import com.example.publickeyinfrastructure.model.CertificateExtension;
+import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.model.ExtensionType;
+import com.example.publickeyinfrastructure.model.KeyAlgorithm;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.CertIOException;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+
+import java.io.IOException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A named set of extensions compiled once into DER, so issuing with it only encodes what differs per
+ * certificate: the subject alternative names from the request and the subject key identifier, which is a SHA-1
+ * of the key patched in behind a fixed header. The authority key identifier is encoded once per issuer key.
+ * Basic constraints follow the certificate type unless the profile sets them, e.g. with a path length.
+ */
+public class CertificateProfile {
+
+    private static final Set<ExtensionType> COMPILABLE = Set.of(ExtensionType.BASIC_CONSTRAINTS, ExtensionType.KEY_USAGE,
+            ExtensionType.EXTENDED_KEY_USAGE, ExtensionType.CRL_DISTRIBUTION_POINTS);
+    private static final int KEY_IDENTIFIER_LENGTH = 20;
+    // DER header of the OCTET STRING holding a SHA-1 key identifier
+    private static final byte[] KEY_IDENTIFIER_HEADER = {0x04, KEY_IDENTIFIER_LENGTH};
+    // one entry per issuer key, cleared should that ever grow past the number of CAs anyone runs
+    private static final int MAX_CACHED_ISSUERS = 1024;
+    private static final Map<PublicKey, Extension> AUTHORITY_KEY_IDENTIFIERS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final CertificateType type;
+    private final boolean requireSubjectAlternativeName;
+    private final Extension[] template;
+    private final boolean claimsEncipherment;
+    // as written, recorded with every certificate issued from the profile
+    private final List<CertificateExtension> extensions;
+
+    private CertificateProfile(String name, CertificateType type, boolean requireSubjectAlternativeName, Extension[] template,
+                               boolean claimsEncipherment, List<CertificateExtension> extensions) {
+        this.name = name;
+        this.type = type;
+        this.requireSubjectAlternativeName = requireSubjectAlternativeName;
+        this.template = template;
+        this.claimsEncipherment = claimsEncipherment;
+        this.extensions = extensions;
+    }
+
+    /**
+     * Parses and encodes {@code extensions}, given in the string form {@link ExtensionUtil#addExtension} takes.
+     * Subject alternative names and key identifiers are per certificate and cannot be part of a profile.
+     */
+    public static CertificateProfile compile(String name, CertificateType type, List<CertificateExtension> extensions,
+                                             boolean requireSubjectAlternativeName) {
+        List<CertificateExtension> written = new ArrayList<>(extensions);
+        if (written.stream().noneMatch(extension -> extension.getExtensionType() == ExtensionType.BASIC_CONSTRAINTS)) {
+            written.add(new CertificateExtension(null, true, type == CertificateType.END_ENTITY ? "CA=false" : "CA=true",
+                    ExtensionType.BASIC_CONSTRAINTS));
+        }
+        List<Extension> template = new ArrayList<>(written.size());
+        boolean claimsEncipherment = false;
+        for (CertificateExtension extension : written) {
+            if (!COMPILABLE.contains(extension.getExtensionType())) {
+                throw new IllegalArgumentException("Profile " + name + ": " + extension.getExtensionType().getDisplayName() + " cannot be part of a profile");
+            }
+            ASN1Encodable value = ExtensionUtil.parseExtensionValue(extension.getExtensionType().getOid(), extension.getValue());
+            if (value instanceof BasicConstraints basicConstraints && basicConstraints.isCA() != (type != CertificateType.END_ENTITY)) {
+                throw new IllegalArgumentException("Profile " + name + ": basic constraints do not match " + type + " certificates");
+            }
+            if (value instanceof KeyUsage usage) {
+                claimsEncipherment = ExtensionUtil.claimsEncipherment(usage);
+            }
+            try {
+                template.add(new Extension(new ASN1ObjectIdentifier(extension.getExtensionType().getOid()),
+                        Boolean.TRUE.equals(extension.getIsCritical()), value.toASN1Primitive().getEncoded(ASN1Encoding.DER)));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Profile " + name + ": failed to encode " + extension.getExtensionType().getDisplayName(), e);
+            }
+        }
+        written.add(new CertificateExtension(null, false, "", ExtensionType.SUBJECT_KEY_IDENTIFIER));
+        written.add(new CertificateExtension(null, false, "", ExtensionType.AUTHORITY_KEY_IDENTIFIER));
+        return new CertificateProfile(name, type, requireSubjectAlternativeName, template.toArray(new Extension[0]),
+                claimsEncipherment, List.copyOf(written));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CertificateType getType() {
+        return type;
+    }
+
+    /**
+     * The extensions to record for a certificate issued from this profile: the profile's own plus the subject
+     * alternative names among {@code requested}; anything else requested is dropped.
+     */
+    public List<CertificateExtension> extensionsFor(List<CertificateExtension> requested) {
+        List<CertificateExtension> result = new ArrayList<>(extensions.size() + 1);
+        CertificateExtension subjectAlternativeName = subjectAlternativeName(requested);
+        if (subjectAlternativeName != null) {
+            result.add(new CertificateExtension(null, subjectAlternativeName.getIsCritical(), subjectAlternativeName.getValue(),
+                    ExtensionType.SUBJECT_ALTERNATIVE_NAME));
+        } else if (requireSubjectAlternativeName) {
+            throw new IllegalArgumentException("Profile " + name + " requires subject alternative names");
+        }
+        for (CertificateExtension extension : extensions) {
+            result.add(new CertificateExtension(null, extension.getIsCritical(), extension.getValue(), extension.getExtensionType()));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the compiled extensions, the subject alternative names among {@code extensions} and both key
+     * identifiers to {@code builder}.
+     */
+    public void addExtensions(X509v3CertificateBuilder builder, PublicKey issuerKey, PublicKey subjectKey,
+                              List<CertificateExtension> extensions) throws CertIOException {
+        if (claimsEncipherment && !KeyAlgorithm.of(subjectKey).supportsEncipherment()) {
+            throw new IllegalArgumentException("Key encipherment is not supported for " + subjectKey.getAlgorithm() + " keys");
+        }
+        for (Extension extension : template) {
+            builder.addExtension(extension);
+        }
+        CertificateExtension subjectAlternativeName = subjectAlternativeName(extensions);
+        if (subjectAlternativeName != null) {
+            builder.addExtension(Extension.subjectAlternativeName, Boolean.TRUE.equals(subjectAlternativeName.getIsCritical()),
+                    ExtensionUtil.parseExtensionValue(Extension.subjectAlternativeName.getId(), subjectAlternativeName.getValue()));
+        } else if (requireSubjectAlternativeName) {
+            throw new IllegalArgumentException("Profile " + name + " requires subject alternative names");
+        }
+        byte[] subjectKeyIdentifier = new byte[KEY_IDENTIFIER_HEADER.length + KEY_IDENTIFIER_LENGTH];
+        System.arraycopy(KEY_IDENTIFIER_HEADER, 0, subjectKeyIdentifier, 0, KEY_IDENTIFIER_HEADER.length);
+        System.arraycopy(keyIdentifier(subjectKey), 0, subjectKeyIdentifier, KEY_IDENTIFIER_HEADER.length, KEY_IDENTIFIER_LENGTH);
+        builder.addExtension(new Extension(Extension.subjectKeyIdentifier, false, subjectKeyIdentifier));
+        builder.addExtension(authorityKeyIdentifier(issuerKey));
+    }
+
+    private static CertificateExtension subjectAlternativeName(List<CertificateExtension> extensions) {
+        if (extensions == null) {
+            return null;
+        }
+        for (CertificateExtension extension : extensions) {
+            if (extension.getExtensionType() == ExtensionType.SUBJECT_ALTERNATIVE_NAME
+                    && extension.getValue() != null && !extension.getValue().isBlank()) {
+                return extension;
+            }
+        }
+        return null;
+    }
+
+    private static Extension authorityKeyIdentifier(PublicKey issuerKey) {
+        Extension cached = AUTHORITY_KEY_IDENTIFIERS.get(issuerKey);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            cached = new Extension(Extension.authorityKeyIdentifier, false,
+                    new AuthorityKeyIdentifier(keyIdentifier(issuerKey)).getEncoded(ASN1Encoding.DER));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to encode authority key identifier", e);
+        }
+        if (AUTHORITY_KEY_IDENTIFIERS.size() >= MAX_CACHED_ISSUERS) {
+            AUTHORITY_KEY_IDENTIFIERS.clear();
+        }
+        AUTHORITY_KEY_IDENTIFIERS.put(issuerKey, cached);
+        return cached;
+    }
+
+    // the SHA-1 of the key bits, as JcaX509ExtensionUtils computes it
+    private static byte[] keyIdentifier(PublicKey key) {
+        byte[] keyBits = SubjectPublicKeyInfo.getInstance(key.getEncoded()).getPublicKeyData().getBytes();
+        return CryptoPrimitives.messageDigest("SHA-1").digest(keyBits);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.publickeyinfrastructure.util;
+
+import com.example.publickeyinfrastructure.config.Constants;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKeyFactory;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-thread JCA objects for the hot paths. Provider lookup and construction of these objects is far more
+ * expensive than using them, and none of them is safe to share between threads, so every thread keeps its
+ * own instances. Callers must (re)initialize a cipher before each use, as they would a fresh one.
+ */
+public class CryptoPrimitives {
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(() -> {
+        try {
+            return SecureRandom.getInstance(Constants.RANDOM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(String.format("%s algorithm not supported on this JVM", Constants.RANDOM_ALGORITHM), e);
+        }
+    });
+    private static final ThreadLocal<Cipher> AES_GCM = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(Constants.CRYPTO_TRANSFORMATION);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new RuntimeException(String.format("%s not supported on this JVM", Constants.CRYPTO_TRANSFORMATION), e);
+        }
+    });
+    private static final ThreadLocal<CertificateFactory> X509 = ThreadLocal.withInitial(() -> {
+        try {
+            return CertificateFactory.getInstance("X.509");
+        } catch (CertificateException e) {
+            throw new RuntimeException("X.509 certificate factory not available", e);
+        }
+    });
+    private static final ThreadLocal<Map<String, KeyFactory>> KEY_FACTORIES = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, SecretKeyFactory>> SECRET_KEY_FACTORIES = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, KeyPairGenerator>> KEY_PAIR_GENERATORS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, MessageDigest>> MESSAGE_DIGESTS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, Signature>> SIGNATURES = ThreadLocal.withInitial(HashMap::new);
+
+    private interface Factory<T> {
+        T create(String key) throws GeneralSecurityException;
+    }
+
+    /**
+     * DRBG seeded once per thread.
+     */
+    public static SecureRandom random() {
+        return RANDOM.get();
+    }
+
+    public static Cipher aesGcm() {
+        return AES_GCM.get();
+    }
+
+    public static CertificateFactory x509CertificateFactory() {
+        return X509.get();
+    }
+
+    public static KeyFactory keyFactory(String algorithm) {
+        return cached(KEY_FACTORIES, algorithm, KeyFactory::getInstance);
+    }
+
+    public static SecretKeyFactory secretKeyFactory(String algorithm) {
+        return cached(SECRET_KEY_FACTORIES, algorithm, SecretKeyFactory::getInstance);
+    }
+
+    public static MessageDigest messageDigest(String algorithm) {
+        return cached(MESSAGE_DIGESTS, algorithm, MessageDigest::getInstance);
+    }
+
+    public static Signature signature(String algorithm) {
+        return cached(SIGNATURES, algorithm, Signature::getInstance);
+    }
+
+    /**
+     * Generator already initialized with {@code keySize} and this thread's {@link #random()}.
+     */
+    public static KeyPairGenerator keyPairGenerator(String algorithm, int keySize) {
+        return cached(KEY_PAIR_GENERATORS, algorithm + ":" + keySize, key -> {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+            generator.initialize(keySize, random());
+            return generator;
+        });
+    }
+
+    private static <T> T cached(ThreadLocal<Map<String, T>> pool, String key, Factory<T> factory) {
+        Map<String, T> instances = pool.get();
+        T instance = instances.get(key);
+        if (instance == null) {
+            try {
+                instance = factory.create(key);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(String.format("%s algorithm not supported on this JVM", key), e);
+            }
+            instances.put(key, instance);
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.publickeyinfrastructure.util;
+
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.util.io.pem.PemObject;
+import org.bouncycastle.util.io.pem.PemReader;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Reads PKCS#10 requests one at a time from a stream of concatenated PEM blocks or DER structures, so a batch
+ * never has to be held in memory as a whole. The encoding is told apart by the first byte: DER starts with a
+ * SEQUENCE tag. PEM blocks other than certificate requests are skipped. Each request is returned still encoded,
+ * so one that does not parse only fails itself; a broken DER stream cannot be resynchronized and fails
+ * {@link #next}.
+ */
+public class CsrReader implements Closeable {
+
+    // a CSR carries a public key and a few extensions, an RSA-4096 one is under 2 KB
+    private static final int MAX_CSR_LENGTH = 64 * 1024;
+    private static final Set<String> PEM_TYPES = Set.of("CERTIFICATE REQUEST", "NEW CERTIFICATE REQUEST");
+
+    private final PemReader pem;
+    private final ASN1InputStream der;
+
+    public CsrReader(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(1);
+        int first = buffered.read();
+        buffered.reset();
+        if (first == 0x30) {
+            der = new ASN1InputStream(buffered, MAX_CSR_LENGTH);
+            pem = null;
+        } else {
+            pem = new PemReader(new InputStreamReader(buffered, StandardCharsets.US_ASCII));
+            der = null;
+        }
+    }
+
+    /**
+     * The DER encoding of the next request, or null at the end of the stream.
+     */
+    public byte[] next() throws IOException {
+        if (der != null) {
+            ASN1Primitive request = der.readObject();
+            return request != null ? request.getEncoded() : null;
+        }
+        PemObject block;
+        while ((block = pem.readPemObject()) != null) {
+            if (PEM_TYPES.contains(block.getType())) {
+                return block.getContent();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (der != null) {
+            der.close();
+        } else {
+            pem.close();
+        }
+    }
+}
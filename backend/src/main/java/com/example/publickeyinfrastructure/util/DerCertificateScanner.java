@@ -0,0 +1,327 @@
+package com.example.publickeyinfrastructure.util;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Pulls the fields shown in certificate lists (serial, validity, signature algorithm and the CN/O/OU of subject
+ * and issuer) straight out of the DER encoding, without building an {@code X509Certificate} or an ASN.1 tree.
+ * Values are rendered exactly like {@code IETFUtils.valueToString} on the first matching RDN, which is what the
+ * mappers used before.
+ */
+public class DerCertificateScanner {
+
+    public record Summary(BigInteger serialNumber, Date notBefore, Date notAfter, String signatureAlgorithm,
+                          String subjectCN, String subjectO, String subjectOU,
+                          String issuerCN, String issuerO, String issuerOU) {
+    }
+
+    private static final int SEQUENCE = 0x30;
+    private static final int SET = 0x31;
+    private static final int INTEGER = 0x02;
+    private static final int OBJECT_IDENTIFIER = 0x06;
+    private static final int UTC_TIME = 0x17;
+    private static final int GENERALIZED_TIME = 0x18;
+    private static final int EXPLICIT_VERSION = 0xA0;
+
+    private static final int UTF8_STRING = 0x0C;
+    private static final int BMP_STRING = 0x1E;
+    private static final int UNIVERSAL_STRING = 0x1C;
+    private static final int[] SINGLE_BYTE_STRINGS = {0x12, 0x13, 0x14, 0x15, 0x16, 0x19, 0x1A, 0x1B};
+
+    // 2.5.4.3, 2.5.4.10 and 2.5.4.11 share the 55 04 prefix
+    private static final int ATTRIBUTE_CN = 0x03;
+    private static final int ATTRIBUTE_O = 0x0A;
+    private static final int ATTRIBUTE_OU = 0x0B;
+
+    // names as reported by X509Certificate#getSigAlgName
+    private static final Map<String, String> SIGNATURE_ALGORITHMS = Map.ofEntries(
+            Map.entry("1.2.840.113549.1.1.4", "MD5withRSA"),
+            Map.entry("1.2.840.113549.1.1.5", "SHA1withRSA"),
+            Map.entry("1.2.840.113549.1.1.14", "SHA224withRSA"),
+            Map.entry("1.2.840.113549.1.1.11", "SHA256withRSA"),
+            Map.entry("1.2.840.113549.1.1.12", "SHA384withRSA"),
+            Map.entry("1.2.840.113549.1.1.13", "SHA512withRSA"),
+            Map.entry("1.2.840.113549.1.1.10", "RSASSA-PSS"),
+            Map.entry("1.2.840.10045.4.1", "SHA1withECDSA"),
+            Map.entry("1.2.840.10045.4.3.1", "SHA224withECDSA"),
+            Map.entry("1.2.840.10045.4.3.2", "SHA256withECDSA"),
+            Map.entry("1.2.840.10045.4.3.3", "SHA384withECDSA"),
+            Map.entry("1.2.840.10045.4.3.4", "SHA512withECDSA"),
+            Map.entry("1.2.840.10040.4.3", "SHA1withDSA"),
+            Map.entry("2.16.840.1.101.3.4.3.2", "SHA256withDSA"),
+            Map.entry("1.3.101.112", "Ed25519"),
+            Map.entry("1.3.101.113", "Ed448"));
+
+    public static Summary scan(byte[] der) {
+        return scan(ByteBuffer.wrap(der));
+    }
+
+    /**
+     * Reads with absolute gets only, so the buffer (e.g. a slice of a mapped file) is neither copied nor moved.
+     */
+    public static Summary scan(ByteBuffer der) {
+        try {
+            Cursor certificate = new Cursor(der, der.position(), der.limit());
+            Cursor tbs = certificate.enter(SEQUENCE).enter(SEQUENCE);
+            if (tbs.peekTag() == EXPLICIT_VERSION) {
+                tbs.skip();
+            }
+            BigInteger serialNumber = new BigInteger(bytes(tbs.readContent(INTEGER)));
+            Cursor signature = tbs.enter(SEQUENCE);
+            String signatureAlgorithm = oidToString(signature.readContent(OBJECT_IDENTIFIER));
+            Cursor issuer = tbs.enter(SEQUENCE);
+            Cursor validity = tbs.enter(SEQUENCE);
+            Date notBefore = readTime(validity);
+            Date notAfter = readTime(validity);
+            Cursor subject = tbs.enter(SEQUENCE);
+
+            String[] subjectValues = readAttributes(subject);
+            String[] issuerValues = readAttributes(issuer);
+            return new Summary(serialNumber, notBefore, notAfter,
+                    SIGNATURE_ALGORITHMS.getOrDefault(signatureAlgorithm, signatureAlgorithm),
+                    subjectValues[0], subjectValues[1], subjectValues[2],
+                    issuerValues[0], issuerValues[1], issuerValues[2]);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated certificate encoding", e);
+        }
+    }
+
+    /**
+     * CN, O and OU of a Name, each taken from the first RDN that carries the attribute (like {@code X500Name#getRDNs}).
+     */
+    private static String[] readAttributes(Cursor name) {
+        String[] values = new String[3];
+        while (name.hasMore()) {
+            Cursor rdn = name.enter(SET);
+            Cursor first = null;
+            int found = 0;
+            while (rdn.hasMore()) {
+                Cursor attribute = rdn.enter(SEQUENCE);
+                if (first == null) {
+                    first = attribute.copy();
+                }
+                found |= attributeBit(attribute.peekContent(OBJECT_IDENTIFIER));
+            }
+            if (found == 0) {
+                continue;
+            }
+            // a multi-valued RDN yields its first value for every attribute it carries
+            first.skip();
+            String value = valueToString(first);
+            for (int i = 0; i < values.length; i++) {
+                if ((found & (1 << i)) != 0 && values[i] == null) {
+                    values[i] = value;
+                }
+            }
+        }
+        return values;
+    }
+
+    private static int attributeBit(ByteBuffer oid) {
+        if (oid.remaining() != 3 || oid.get(oid.position()) != 0x55 || oid.get(oid.position() + 1) != 0x04) {
+            return 0;
+        }
+        return switch (oid.get(oid.position() + 2)) {
+            case ATTRIBUTE_CN -> 1;
+            case ATTRIBUTE_O -> 1 << 1;
+            case ATTRIBUTE_OU -> 1 << 2;
+            default -> 0;
+        };
+    }
+
+    private static String valueToString(Cursor value) {
+        int tag = value.peekTag();
+        int start = value.position;
+        ByteBuffer content = value.readContent(tag);
+        StringBuilder builder = new StringBuilder();
+        String text = decodeString(tag, content);
+        if (text != null) {
+            if (!text.isEmpty() && text.charAt(0) == '#') {
+                builder.append('\\');
+            }
+            builder.append(text);
+        } else {
+            byte[] encoded = new byte[value.position - start];
+            value.buffer.get(start, encoded);
+            builder.append('#').append(HexFormat.of().formatHex(encoded));
+        }
+        return escape(builder);
+    }
+
+    private static String decodeString(int tag, ByteBuffer content) {
+        byte[] bytes = bytes(content);
+        if (tag == UTF8_STRING) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (tag == BMP_STRING) {
+            return new String(bytes, StandardCharsets.UTF_16BE);
+        }
+        if (tag == UNIVERSAL_STRING) {
+            return null;
+        }
+        for (int singleByte : SINGLE_BYTE_STRINGS) {
+            if (tag == singleByte) {
+                return new String(bytes, StandardCharsets.ISO_8859_1);
+            }
+        }
+        return null;
+    }
+
+    // same escaping rules as IETFUtils.valueToString
+    private static String escape(StringBuilder value) {
+        int end = value.length();
+        int index = value.length() >= 2 && value.charAt(0) == '\\' && value.charAt(1) == '#' ? 2 : 0;
+        while (index != end) {
+            switch (value.charAt(index)) {
+                case ',', '"', '\\', '+', '=', '<', '>', ';' -> {
+                    value.insert(index, '\\');
+                    index += 2;
+                    end++;
+                }
+                default -> index++;
+            }
+        }
+        int start = 0;
+        while (value.length() > start && value.charAt(start) == ' ') {
+            value.insert(start, '\\');
+            start += 2;
+        }
+        int last = value.length() - 1;
+        while (last >= 0 && value.charAt(last) == ' ') {
+            value.insert(last, '\\');
+            last--;
+        }
+        return value.toString();
+    }
+
+    private static Date readTime(Cursor validity) {
+        int tag = validity.peekTag();
+        String text = new String(bytes(validity.readContent(tag)), StandardCharsets.US_ASCII);
+        int offset;
+        int year;
+        if (tag == UTC_TIME) {
+            int twoDigits = Integer.parseInt(text, 0, 2, 10);
+            year = twoDigits >= 50 ? 1900 + twoDigits : 2000 + twoDigits;
+            offset = 2;
+        } else if (tag == GENERALIZED_TIME) {
+            year = Integer.parseInt(text, 0, 4, 10);
+            offset = 4;
+        } else {
+            throw new IllegalArgumentException("Unexpected time tag 0x" + Integer.toHexString(tag));
+        }
+        LocalDateTime time = LocalDateTime.of(year,
+                Integer.parseInt(text, offset, offset + 2, 10),
+                Integer.parseInt(text, offset + 2, offset + 4, 10),
+                Integer.parseInt(text, offset + 4, offset + 6, 10),
+                Integer.parseInt(text, offset + 6, offset + 8, 10),
+                Integer.parseInt(text, offset + 8, offset + 10, 10));
+        return Date.from(time.toInstant(ZoneOffset.UTC));
+    }
+
+    private static byte[] bytes(ByteBuffer content) {
+        byte[] bytes = new byte[content.remaining()];
+        content.get(content.position(), bytes);
+        return bytes;
+    }
+
+    private static String oidToString(ByteBuffer oid) {
+        StringBuilder builder = new StringBuilder();
+        long value = 0;
+        boolean first = true;
+        for (int i = oid.position(); i < oid.limit(); i++) {
+            int b = oid.get(i) & 0xff;
+            value = (value << 7) | (b & 0x7f);
+            if ((b & 0x80) != 0) {
+                continue;
+            }
+            if (first) {
+                int arc = (int) Math.min(value / 40, 2);
+                builder.append(arc).append('.').append(value - arc * 40L);
+                first = false;
+            } else {
+                builder.append('.').append(value);
+            }
+            value = 0;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Walks the TLVs of one constructed value; {@link #enter} descends into a child and advances past it.
+     */
+    private static final class Cursor {
+
+        private final ByteBuffer buffer;
+        private int position;
+        private final int end;
+
+        private Cursor(ByteBuffer buffer, int position, int end) {
+            this.buffer = buffer;
+            this.position = position;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        int peekTag() {
+            return buffer.get(position) & 0xff;
+        }
+
+        Cursor copy() {
+            return new Cursor(buffer, position, end);
+        }
+
+        Cursor enter(int expectedTag) {
+            ByteBuffer content = readContent(expectedTag);
+            return new Cursor(buffer, content.position(), content.limit());
+        }
+
+        void skip() {
+            readContent(peekTag());
+        }
+
+        ByteBuffer peekContent(int expectedTag) {
+            int saved = position;
+            ByteBuffer content = readContent(expectedTag);
+            position = saved;
+            return content;
+        }
+
+        /**
+         * Returns the content octets as a view whose position/limit delimit them, and moves past the TLV.
+         */
+        ByteBuffer readContent(int expectedTag) {
+            int tag = buffer.get(position) & 0xff;
+            if (tag != expectedTag) {
+                throw new IllegalArgumentException("Expected tag 0x" + Integer.toHexString(expectedTag)
+                        + " at offset " + position + " but found 0x" + Integer.toHexString(tag));
+            }
+            int index = position + 1;
+            int length = buffer.get(index++) & 0xff;
+            if (length > 0x7f) {
+                int octets = length & 0x7f;
+                if (octets == 0 || octets > 4) {
+                    throw new IllegalArgumentException("Unsupported length encoding at offset " + position);
+                }
+                length = 0;
+                for (int i = 0; i < octets; i++) {
+                    length = (length << 8) | (buffer.get(index++) & 0xff);
+                }
+            }
+            if (length < 0 || index + length > end) {
+                throw new IllegalArgumentException("Length " + length + " at offset " + position + " exceeds its parent");
+            }
+            position = index + length;
+            return buffer.duplicate().limit(index + length).position(index);
+        }
+    }
+}
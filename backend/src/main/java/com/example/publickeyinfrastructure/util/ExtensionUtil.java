@@ -2,7 +2,10 @@ package com.example.publickeyinfrastructure.util;
 
 import com.example.publickeyinfrastructure.model.CertificateExtension;
 import com.example.publickeyinfrastructure.model.ExtensionType;
+import com.example.publickeyinfrastructure.model.KeyAlgorithm;
+import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1String;
 import org.bouncycastle.asn1.x509.*;
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
@@ -10,12 +13,38 @@ import org.bouncycastle.cert.X509v3CertificateBuilder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ExtensionUtil {
 
+    // in the order and spelling addExtension parses
+    private static final Map<Integer, String> KEY_USAGES = new LinkedHashMap<>();
+    private static final Map<KeyPurposeId, String> KEY_PURPOSES = new LinkedHashMap<>();
+
+    static {
+        KEY_USAGES.put(KeyUsage.digitalSignature, "digitalSignature");
+        KEY_USAGES.put(KeyUsage.nonRepudiation, "nonRepudiation");
+        KEY_USAGES.put(KeyUsage.keyEncipherment, "keyEncipherment");
+        KEY_USAGES.put(KeyUsage.dataEncipherment, "dataEncipherment");
+        KEY_USAGES.put(KeyUsage.keyAgreement, "keyAgreement");
+        KEY_USAGES.put(KeyUsage.keyCertSign, "keyCertSign");
+        KEY_USAGES.put(KeyUsage.cRLSign, "cRLSign");
+        KEY_USAGES.put(KeyUsage.encipherOnly, "encipherOnly");
+        KEY_USAGES.put(KeyUsage.decipherOnly, "decipherOnly");
+        KEY_PURPOSES.put(KeyPurposeId.id_kp_serverAuth, "serverAuth");
+        KEY_PURPOSES.put(KeyPurposeId.id_kp_clientAuth, "clientAuth");
+        KEY_PURPOSES.put(KeyPurposeId.id_kp_codeSigning, "codeSigning");
+        KEY_PURPOSES.put(KeyPurposeId.id_kp_emailProtection, "emailProtection");
+        KEY_PURPOSES.put(KeyPurposeId.id_kp_timeStamping, "timeStamping");
+        KEY_PURPOSES.put(KeyPurposeId.id_kp_OCSPSigning, "OCSPSigning");
+    }
+
     private final PublicKey issuerKey;
     private final PublicKey subjectKey;
     private final JcaX509ExtensionUtils extUtils;
@@ -35,6 +64,28 @@ public class ExtensionUtil {
     }
 
     private ASN1Encodable buildExtensionValue(String oid, String value) {
+        // --- Authority Key Identifier ---
+        if (oid.equals(Extension.authorityKeyIdentifier.getId())) {
+            return extUtils.createAuthorityKeyIdentifier(issuerKey);
+        }
+
+        // --- Subject Key Identifier ---
+        if (oid.equals(Extension.subjectKeyIdentifier.getId())) {
+            return extUtils.createSubjectKeyIdentifier(subjectKey);
+        }
+
+        ASN1Encodable parsed = parseExtensionValue(oid, value);
+        if (parsed instanceof KeyUsage usage && subjectKey != null) {
+            checkEncipherment(usage, subjectKey);
+        }
+        return parsed;
+    }
+
+    /**
+     * Value of an extension that does not depend on the keys, from its string form; null for types it does
+     * not know.
+     */
+    static ASN1Encodable parseExtensionValue(String oid, String value) {
         // --- Basic Constraints ---
         if (oid.equals(Extension.basicConstraints.getId())) {
             // frontend: "CA=true,pathLen=0" or "CA=false"
@@ -107,16 +158,6 @@ public class ExtensionUtil {
             return new GeneralNames(names.toArray(new GeneralName[0]));
         }
 
-        // --- Authority Key Identifier ---
-        if (oid.equals(Extension.authorityKeyIdentifier.getId())) {
-            return extUtils.createAuthorityKeyIdentifier(issuerKey);
-        }
-
-        // --- Subject Key Identifier ---
-        if (oid.equals(Extension.subjectKeyIdentifier.getId())) {
-            return extUtils.createSubjectKeyIdentifier(subjectKey);
-        }
-
         // --- CRL Distribution Points ---
         if (oid.equals(Extension.cRLDistributionPoints.getId())) {
             // frontend: "http://example.com/crl.pem"
@@ -130,6 +171,94 @@ public class ExtensionUtil {
         return null;
     }
 
+    static boolean claimsEncipherment(KeyUsage usage) {
+        return usage.hasUsages(KeyUsage.keyEncipherment) || usage.hasUsages(KeyUsage.dataEncipherment);
+    }
+
+    // EC and EdDSA keys only sign; a certificate claiming encipherment for them would be unusable
+    static void checkEncipherment(KeyUsage usage, PublicKey subjectKey) {
+        if (claimsEncipherment(usage) && !KeyAlgorithm.of(subjectKey).supportsEncipherment()) {
+            throw new IllegalArgumentException("Key encipherment is not supported for " + subjectKey.getAlgorithm() + " keys");
+        }
+    }
+
+    /**
+     * Extensions for an end-entity certificate issued from a CSR: the subject alternative names, key usage and
+     * extended key usage it requests, in the form {@link #addExtension} parses, plus both key identifiers. Basic
+     * constraints are set from the certificate type and anything else requested is left out. Requests for CA
+     * capabilities or for values the model cannot represent are rejected.
+     */
+    public static List<CertificateExtension> fromRequestedExtensions(Extensions requested) {
+        List<CertificateExtension> result = new ArrayList<>();
+        if (requested != null) {
+            BasicConstraints basicConstraints = BasicConstraints.fromExtensions(requested);
+            if (basicConstraints != null && basicConstraints.isCA()) {
+                throw new IllegalArgumentException("A CSR cannot request a CA certificate");
+            }
+            Extension subjectAlternativeName = requested.getExtension(Extension.subjectAlternativeName);
+            if (subjectAlternativeName != null) {
+                result.add(new CertificateExtension(null, subjectAlternativeName.isCritical(),
+                        subjectAlternativeNames(GeneralNames.getInstance(subjectAlternativeName.getParsedValue())),
+                        ExtensionType.SUBJECT_ALTERNATIVE_NAME));
+            }
+            Extension keyUsage = requested.getExtension(Extension.keyUsage);
+            if (keyUsage != null) {
+                KeyUsage usage = KeyUsage.getInstance(keyUsage.getParsedValue());
+                if (usage.hasUsages(KeyUsage.keyCertSign) || usage.hasUsages(KeyUsage.cRLSign)) {
+                    throw new IllegalArgumentException("A CSR cannot request certificate or CRL signing");
+                }
+                List<String> usages = new ArrayList<>();
+                KEY_USAGES.forEach((bit, name) -> {
+                    if (usage.hasUsages(bit)) {
+                        usages.add(name);
+                    }
+                });
+                result.add(new CertificateExtension(null, keyUsage.isCritical(), String.join(",", usages), ExtensionType.KEY_USAGE));
+            }
+            Extension extendedKeyUsage = requested.getExtension(Extension.extendedKeyUsage);
+            if (extendedKeyUsage != null) {
+                List<String> purposes = new ArrayList<>();
+                for (KeyPurposeId purpose : ExtendedKeyUsage.getInstance(extendedKeyUsage.getParsedValue()).getUsages()) {
+                    String name = KEY_PURPOSES.get(purpose);
+                    if (name == null) {
+                        throw new IllegalArgumentException("Unsupported extended key usage " + purpose.getId());
+                    }
+                    purposes.add(name);
+                }
+                result.add(new CertificateExtension(null, extendedKeyUsage.isCritical(), String.join(",", purposes), ExtensionType.EXTENDED_KEY_USAGE));
+            }
+        }
+        // the values are computed from the keys when the certificate is built
+        result.add(new CertificateExtension(null, false, "", ExtensionType.SUBJECT_KEY_IDENTIFIER));
+        result.add(new CertificateExtension(null, false, "", ExtensionType.AUTHORITY_KEY_IDENTIFIER));
+        return result;
+    }
+
+    private static String subjectAlternativeNames(GeneralNames names) {
+        List<String> values = new ArrayList<>();
+        for (GeneralName name : names.getNames()) {
+            switch (name.getTagNo()) {
+                case GeneralName.dNSName -> values.add("DNS=" + ((ASN1String) name.getName()).getString());
+                case GeneralName.rfc822Name -> values.add("email=" + ((ASN1String) name.getName()).getString());
+                case GeneralName.uniformResourceIdentifier -> values.add("URI=" + ((ASN1String) name.getName()).getString());
+                case GeneralName.iPAddress -> {
+                    try {
+                        values.add("IP=" + InetAddress.getByAddress(ASN1OctetString.getInstance(name.getName()).getOctets()).getHostAddress());
+                    } catch (UnknownHostException e) {
+                        throw new IllegalArgumentException("Invalid IP address in subject alternative name", e);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unsupported subject alternative name type " + name.getTagNo());
+            }
+        }
+        for (String value : values) {
+            if (value.indexOf(',') >= 0) {
+                throw new IllegalArgumentException("Unsupported subject alternative name '" + value + "'");
+            }
+        }
+        return String.join(",", values);
+    }
+
     public List<CertificateExtension> extractExtensions(JcaX509CertificateHolder certHolder) {
         List<CertificateExtension> extensionList = new ArrayList<>();
         try {
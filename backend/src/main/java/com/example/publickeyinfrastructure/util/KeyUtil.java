@@ -1,13 +1,17 @@
 package com.example.publickeyinfrastructure.util;
 
-import com.example.publickeyinfrastructure.config.Constants;
+import com.example.publickeyinfrastructure.model.KeyAlgorithm;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.params.HKDFParameters;
 
 import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.security.KeyFactory;
+import java.nio.charset.StandardCharsets;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.spec.X509EncodedKeySpec;
@@ -21,44 +25,68 @@ public class KeyUtil {
     public static final int TAG_LENGTH_BITS = 128;
     public static final int PBKDF2_ITERATIONS = 65536;
     public static final int KEY_LENGTH_BITS = 256;
+    // records written with a per-record key derived by HKDF from the key-encryption key; null means per-record PBKDF2
+    public static final int PUBLIC_KEY_ENCRYPTION_HKDF = 2;
+    private static final byte[] KEY_ENCRYPTION_KEY_SALT = "public-key-infrastructure/certificate-entity-kek".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PUBLIC_KEY_INFO = "certificate-entity-public-key".getBytes(StandardCharsets.UTF_8);
 
     public record EncryptionResult(byte[] encryptedData, byte[] salt, byte[] iv) {
     }
 
-    public static EncryptionResult encryptPublicKeyWithSaltIv(PublicKey key, String passphrase) throws Exception {
+    /**
+     * Stretches the passphrase once; per-record keys are then derived from the result with HKDF.
+     */
+    public static SecretKeySpec deriveKeyEncryptionKey(String passphrase) throws Exception {
+        return deriveKey(passphrase, KEY_ENCRYPTION_KEY_SALT);
+    }
+
+    public static EncryptionResult encryptPublicKey(PublicKey key, SecretKey keyEncryptionKey) throws Exception {
         byte[] salt = new byte[SALT_LENGTH];
         byte[] iv = new byte[IV_LENGTH];
-        SecureRandom random = new SecureRandom();
+        SecureRandom random = CryptoPrimitives.random();
         random.nextBytes(salt);
         random.nextBytes(iv);
 
-        SecretKeySpec secretKey = deriveKey(passphrase, salt);
-
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec spec = new GCMParameterSpec(TAG_LENGTH_BITS, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey, spec);
-
+        Cipher cipher = CryptoPrimitives.aesGcm();
+        cipher.init(Cipher.ENCRYPT_MODE, deriveRecordKey(keyEncryptionKey, salt), new GCMParameterSpec(TAG_LENGTH_BITS, iv));
         byte[] encrypted = cipher.doFinal(key.getEncoded());
 
         return new EncryptionResult(encrypted, salt, iv);
     }
 
+    public static PublicKey decryptPublicKey(byte[] encryptedData, byte[] salt, byte[] iv, SecretKey keyEncryptionKey, String algorithm) throws Exception {
+        Cipher cipher = CryptoPrimitives.aesGcm();
+        cipher.init(Cipher.DECRYPT_MODE, deriveRecordKey(keyEncryptionKey, salt), new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+        byte[] decrypted = cipher.doFinal(encryptedData);
+        return CryptoPrimitives.keyFactory(algorithm).generatePublic(new X509EncodedKeySpec(decrypted));
+    }
+
+    /**
+     * Format written before {@link #PUBLIC_KEY_ENCRYPTION_HKDF}, still read until every row is migrated.
+     */
     public static PublicKey decryptPublicKeyWithSaltIv(byte[] encryptedData, byte[] salt, byte[] iv, String passphrase, String algorithm) throws Exception {
         SecretKeySpec secretKey = deriveKey(passphrase, salt);
 
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        Cipher cipher = CryptoPrimitives.aesGcm();
         GCMParameterSpec spec = new GCMParameterSpec(TAG_LENGTH_BITS, iv);
         cipher.init(Cipher.DECRYPT_MODE, secretKey, spec);
 
         byte[] decrypted = cipher.doFinal(encryptedData);
 
         X509EncodedKeySpec keySpec = new X509EncodedKeySpec(decrypted);
-        KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
-        return keyFactory.generatePublic(keySpec);
+        return CryptoPrimitives.keyFactory(algorithm).generatePublic(keySpec);
+    }
+
+    private static SecretKeySpec deriveRecordKey(SecretKey keyEncryptionKey, byte[] salt) {
+        HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA256Digest());
+        hkdf.init(new HKDFParameters(keyEncryptionKey.getEncoded(), salt, PUBLIC_KEY_INFO));
+        byte[] keyBytes = new byte[KEY_LENGTH_BITS / 8];
+        hkdf.generateBytes(keyBytes, 0, keyBytes.length);
+        return new SecretKeySpec(keyBytes, "AES");
     }
 
     private static SecretKeySpec deriveKey(String passphrase, byte[] salt) throws Exception {
-        SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        SecretKeyFactory factory = CryptoPrimitives.secretKeyFactory("PBKDF2WithHmacSHA256");
         KeySpec spec = new PBEKeySpec(passphrase.toCharArray(), salt, PBKDF2_ITERATIONS, KEY_LENGTH_BITS);
         byte[] keyBytes = factory.generateSecret(spec).getEncoded();
         return new SecretKeySpec(keyBytes, "AES");
@@ -73,7 +101,7 @@ public class KeyUtil {
         if (base64Key == null) return null;
         byte[] decoded = Base64.getDecoder().decode(base64Key);
         X509EncodedKeySpec spec = new X509EncodedKeySpec(decoded);
-        return KeyFactory.getInstance(algorithm != null ? algorithm : Constants.KEY_ALGORITHM).generatePublic(spec);
+        return CryptoPrimitives.keyFactory(algorithm != null ? algorithm : KeyAlgorithm.DEFAULT.getJcaName()).generatePublic(spec);
     }
 }
 
@@ -0,0 +1,55 @@
+package com.example.publickeyinfrastructure.util;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SerialNumberUtil {
+
+    private static final String HEX_PREFIX = "0x";
+
+    /**
+     * Canonical textual form of a serial number: upper-case hex without leading zeros.
+     * This is what goes into the database, the API and (lower-cased) the keystore aliases.
+     */
+    public static String toCanonical(BigInteger serialNumber) {
+        return serialNumber.toString(16).toUpperCase();
+    }
+
+    public static String toAliasSuffix(BigInteger serialNumber) {
+        return serialNumber.toString(16);
+    }
+
+    /**
+     * Interprets user supplied serial numbers that may be either hex (canonical) or decimal (legacy).
+     * Candidates are returned in lookup order: hex first, then decimal.
+     */
+    public static List<BigInteger> parseCandidates(String serialNumber) {
+        List<BigInteger> candidates = new ArrayList<>(2);
+        if (serialNumber == null) {
+            return candidates;
+        }
+        String value = serialNumber.trim().replace(":", "");
+        if (value.regionMatches(true, 0, HEX_PREFIX, 0, HEX_PREFIX.length())) {
+            addIfParsable(candidates, value.substring(HEX_PREFIX.length()), 16);
+            return candidates;
+        }
+        addIfParsable(candidates, value, 16);
+        addIfParsable(candidates, value, 10);
+        return candidates;
+    }
+
+    private static void addIfParsable(List<BigInteger> candidates, String value, int radix) {
+        if (value.isEmpty()) {
+            return;
+        }
+        try {
+            BigInteger parsed = new BigInteger(value, radix);
+            if (parsed.signum() >= 0 && !candidates.contains(parsed)) {
+                candidates.add(parsed);
+            }
+        } catch (NumberFormatException ignored) {
+            // not valid in this radix
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.publickeyinfrastructure.benchmark;
+
+import com.example.publickeyinfrastructure.util.DerCertificateScanner;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping a page of certificates for a list view: the former {@link JcaX509CertificateHolder} + {@code getRDNs}
+ * path against {@link DerCertificateScanner}, both from a decoded certificate and from raw DER (segment storage).
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.publickeyinfrastructure.benchmark.CertificateListMappingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateListMappingBenchmark {
+
+	private static final int PAGE_SIZE = 100;
+
+	private X509Certificate[] certificates;
+	private ByteBuffer[] encodings;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		KeyPair keyPair = generator.generateKeyPair();
+		ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate());
+		X500Name issuer = new X500Name("C=RS,ST=Vojvodina,L=Novi Sad,O=Example PKI,OU=Intermediate CAs,CN=Example Issuing CA 1");
+		Date notBefore = new Date();
+		Date notAfter = new Date(notBefore.getTime() + 365L * 24 * 60 * 60 * 1000);
+
+		certificates = new X509Certificate[PAGE_SIZE];
+		encodings = new ByteBuffer[PAGE_SIZE];
+		for (int i = 0; i < PAGE_SIZE; i++) {
+			X500Name subject = new X500Name("C=RS,L=Novi Sad,O=Example PKI,OU=Services,CN=service-" + i + ".example.com,E=ops@example.com");
+			certificates[i] = new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(
+					issuer, BigInteger.valueOf(System.nanoTime()).shiftLeft(64).or(BigInteger.valueOf(i)),
+					notBefore, notAfter, subject, keyPair.getPublic()).build(signer));
+			encodings[i] = ByteBuffer.wrap(certificates[i].getEncoded()).asReadOnlyBuffer();
+			if (!Arrays.equals(holderFields(certificates[i]), scannerFields(DerCertificateScanner.scan(encodings[i])))) {
+				throw new IllegalStateException("Scanner disagrees with the holder path for certificate " + i);
+			}
+		}
+	}
+
+	@Benchmark
+	public void holder(Blackhole blackhole) throws Exception {
+		for (X509Certificate certificate : certificates) {
+			blackhole.consume(holderFields(certificate));
+		}
+	}
+
+	@Benchmark
+	public void scannerFromCertificate(Blackhole blackhole) throws Exception {
+		for (X509Certificate certificate : certificates) {
+			blackhole.consume(DerCertificateScanner.scan(certificate.getEncoded()));
+		}
+	}
+
+	@Benchmark
+	public void scannerFromEncoding(Blackhole blackhole) {
+		for (ByteBuffer encoding : encodings) {
+			blackhole.consume(DerCertificateScanner.scan(encoding));
+		}
+	}
+
+	private static Object[] holderFields(X509Certificate certificate) throws Exception {
+		JcaX509CertificateHolder holder = new JcaX509CertificateHolder(certificate);
+		X500Name subject = holder.getSubject();
+		X500Name issuer = holder.getIssuer();
+		return new Object[]{certificate.getSerialNumber(), certificate.getNotBefore(), certificate.getNotAfter(),
+				certificate.getSigAlgName(),
+				rdn(subject, BCStyle.CN), rdn(subject, BCStyle.O), rdn(subject, BCStyle.OU),
+				rdn(issuer, BCStyle.CN), rdn(issuer, BCStyle.O), rdn(issuer, BCStyle.OU)};
+	}
+
+	private static Object[] scannerFields(DerCertificateScanner.Summary summary) {
+		return List.of(summary.serialNumber(), summary.notBefore(), summary.notAfter(), summary.signatureAlgorithm(),
+				summary.subjectCN(), summary.subjectO(), summary.subjectOU(),
+				summary.issuerCN(), summary.issuerO(), summary.issuerOU()).toArray();
+	}
+
+	private static String rdn(X500Name name, ASN1ObjectIdentifier oid) {
+		RDN[] rdns = name.getRDNs(oid);
+		return rdns.length > 0 ? IETFUtils.valueToString(rdns[0].getFirst().getValue()) : null;
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(CertificateListMappingBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,103 @@
+package com.example.publickeyinfrastructure.benchmark;
+
+import com.example.publickeyinfrastructure.model.CertificateExtension;
+import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.model.ExtensionType;
+import com.example.publickeyinfrastructure.model.KeyAlgorithm;
+import com.example.publickeyinfrastructure.util.CertificateProfile;
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+import com.example.publickeyinfrastructure.util.ExtensionUtil;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.Security;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding the extensions of a TLS server certificate to a fresh builder, parsed from their string form by
+ * {@link ExtensionUtil} against written from a compiled {@link CertificateProfile}. Both write the same
+ * extensions, so the difference is what issuing from a profile saves per certificate before signing.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.publickeyinfrastructure.benchmark.CertificateProfileBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateProfileBenchmark {
+
+	private static final X500Name ISSUER = new X500Name("CN=Benchmark CA,O=Benchmark,C=RS");
+	private static final X500Name SUBJECT = new X500Name("CN=leaf.example.com,O=Benchmark,C=RS");
+
+	private KeyPair issuerKeyPair;
+	private KeyPair subjectKeyPair;
+	private CertificateProfile profile;
+	private List<CertificateExtension> extensions;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Security.addProvider(new BouncyCastleProvider());
+		issuerKeyPair = generateKeyPair();
+		subjectKeyPair = generateKeyPair();
+		profile = CertificateProfile.compile("tls-server", CertificateType.END_ENTITY, List.of(
+				new CertificateExtension(null, true, "digitalSignature", ExtensionType.KEY_USAGE),
+				new CertificateExtension(null, false, "serverAuth", ExtensionType.EXTENDED_KEY_USAGE),
+				new CertificateExtension(null, false, "http://crl.example.com/ca.crl", ExtensionType.CRL_DISTRIBUTION_POINTS)
+		), true);
+		extensions = profile.extensionsFor(List.of(
+				new CertificateExtension(null, false, "DNS=leaf.example.com,DNS=www.example.com", ExtensionType.SUBJECT_ALTERNATIVE_NAME)));
+	}
+
+	@Benchmark
+	public X509v3CertificateBuilder strings() throws Exception {
+		X509v3CertificateBuilder builder = builder();
+		ExtensionUtil extensionUtil = new ExtensionUtil(issuerKeyPair.getPublic(), subjectKeyPair.getPublic());
+		for (CertificateExtension extension : extensions) {
+			extensionUtil.addExtension(builder, extension.getExtensionType().getOid(), extension.getIsCritical(), extension.getValue());
+		}
+		return builder;
+	}
+
+	@Benchmark
+	public X509v3CertificateBuilder profile() throws Exception {
+		X509v3CertificateBuilder builder = builder();
+		profile.addExtensions(builder, issuerKeyPair.getPublic(), subjectKeyPair.getPublic(), extensions);
+		return builder;
+	}
+
+	private X509v3CertificateBuilder builder() {
+		Date now = new Date();
+		return new JcaX509v3CertificateBuilder(ISSUER, BigInteger.ONE, now, now, SUBJECT, subjectKeyPair.getPublic());
+	}
+
+	private static KeyPair generateKeyPair() {
+		KeyAlgorithm algorithm = KeyAlgorithm.EC_P256;
+		return CryptoPrimitives.keyPairGenerator(algorithm.getJcaName(), algorithm.getKeySize()).generateKeyPair();
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(CertificateProfileBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,103 @@
+package com.example.publickeyinfrastructure.benchmark;
+
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-operation cost of the JCA objects on the issuance and key-store paths, constructed per call as before
+ * against the per-thread instances from {@link CryptoPrimitives}. Runs on four threads to include contention.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.publickeyinfrastructure.benchmark.CryptoPrimitivesBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class CryptoPrimitivesBenchmark {
+
+	private SecretKey key;
+	private byte[] plaintext;
+	private byte[] encodedPublicKey;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(256);
+		key = keyGenerator.generateKey();
+		plaintext = new byte[1200];
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		encodedPublicKey = generator.generateKeyPair().getPublic().getEncoded();
+	}
+
+	@Benchmark
+	public BigInteger serialPerCall() {
+		return new BigInteger(128, new SecureRandom());
+	}
+
+	@Benchmark
+	public BigInteger serialPooled() {
+		return new BigInteger(128, CryptoPrimitives.random());
+	}
+
+	@Benchmark
+	public byte[] wrapPerCall() throws Exception {
+		byte[] iv = new byte[12];
+		new SecureRandom().nextBytes(iv);
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+		return cipher.doFinal(plaintext);
+	}
+
+	@Benchmark
+	public byte[] wrapPooled() throws Exception {
+		byte[] iv = new byte[12];
+		CryptoPrimitives.random().nextBytes(iv);
+		Cipher cipher = CryptoPrimitives.aesGcm();
+		cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+		return cipher.doFinal(plaintext);
+	}
+
+	@Benchmark
+	public PublicKey publicKeyPerCall() throws Exception {
+		return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(encodedPublicKey));
+	}
+
+	@Benchmark
+	public PublicKey publicKeyPooled() throws Exception {
+		return CryptoPrimitives.keyFactory("RSA").generatePublic(new X509EncodedKeySpec(encodedPublicKey));
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(CryptoPrimitivesBenchmark.class.getSimpleName()).build()).run();
+	}
+}
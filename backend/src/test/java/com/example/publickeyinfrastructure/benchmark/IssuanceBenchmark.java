@@ -0,0 +1,99 @@
+package com.example.publickeyinfrastructure.benchmark;
+
+import com.example.publickeyinfrastructure.model.Certificate;
+import com.example.publickeyinfrastructure.model.CertificateEntity;
+import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.model.KeyAlgorithm;
+import com.example.publickeyinfrastructure.service.CertificateGenerator;
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-entity issuance throughput per key algorithm, with issuer and subject of the same algorithm: key pair
+ * generation, public key encryption for the entity, signing and verification as in {@code createCertificate},
+ * without the keystore and database writes. {@code keyPair} isolates the generation step.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.publickeyinfrastructure.benchmark.IssuanceBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IssuanceBenchmark {
+
+	@Param({"RSA_2048", "EC_P256", "ED25519"})
+	private KeyAlgorithm keyAlgorithm;
+
+	private KeyPair issuerKeyPair;
+	private CertificateEntity issuer;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Security.addProvider(new BouncyCastleProvider());
+		CertificateEntity.setEncryptionPassphrase("benchmark-passphrase");
+		issuerKeyPair = generateKeyPair();
+		issuer = entity("Benchmark CA", issuerKeyPair);
+	}
+
+	@Benchmark
+	public KeyPair keyPair() {
+		return generateKeyPair();
+	}
+
+	@Benchmark
+	public X509Certificate issue() throws Exception {
+		String serialNumber = SerialNumberUtil.toCanonical(new BigInteger(128, CryptoPrimitives.random()));
+		Certificate certificate = CertificateGenerator.createCertificateData(entity("leaf.example.com", generateKeyPair()),
+				issuer, serialNumber, CertificateType.END_ENTITY);
+		certificate.setKeyAlgorithm(keyAlgorithm);
+		certificate.setExtensions(new ArrayList<>());
+		return CertificateGenerator.generateX509Certificate(certificate, issuerKeyPair.getPrivate(), issuerKeyPair.getPublic());
+	}
+
+	private KeyPair generateKeyPair() {
+		return CryptoPrimitives.keyPairGenerator(keyAlgorithm.getJcaName(), keyAlgorithm.getKeySize()).generateKeyPair();
+	}
+
+	private static CertificateEntity entity(String commonName, KeyPair keyPair) {
+		CertificateEntity entity = new CertificateEntity();
+		entity.setCommonName(commonName);
+		entity.setOrganization("Benchmark");
+		entity.setOrganizationalUnit("Issuance");
+		entity.setCountry("RS");
+		entity.setState("Vojvodina");
+		entity.setLocality("Novi Sad");
+		entity.setEmail("pki@example.com");
+		entity.setPublicKey(keyPair.getPublic());
+		entity.setPrivateKey(keyPair.getPrivate());
+		return entity;
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(IssuanceBenchmark.class.getSimpleName()).build()).run();
+	}
+}
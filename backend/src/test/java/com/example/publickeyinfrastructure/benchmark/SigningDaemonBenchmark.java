@@ -0,0 +1,94 @@
+package com.example.publickeyinfrastructure.benchmark;
+
+import com.example.publickeyinfrastructure.model.KeyAlgorithm;
+import com.example.publickeyinfrastructure.signing.SigningClient;
+import com.example.publickeyinfrastructure.signing.SigningServer;
+import com.example.publickeyinfrastructure.util.CryptoPrimitives;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing throughput of the signing daemon protocol against signing in-process, with sixteen concurrent
+ * callers so that requests overlap and get batched. The server runs in the benchmark JVM; the socket round
+ * trip, framing and batching are the same as with a separate daemon process.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.publickeyinfrastructure.benchmark.SigningDaemonBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class SigningDaemonBenchmark {
+
+	@Param({"RSA_2048", "EC_P256", "ED25519"})
+	private KeyAlgorithm keyAlgorithm;
+
+	private Path directory;
+	private KeyPair keyPair;
+	private SigningServer server;
+	private SigningClient client;
+	private byte[] toBeSigned;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		keyPair = CryptoPrimitives.keyPairGenerator(keyAlgorithm.getJcaName(), keyAlgorithm.getKeySize()).generateKeyPair();
+		// a typical TBS certificate is around a kilobyte
+		toBeSigned = new byte[1024];
+		CryptoPrimitives.random().nextBytes(toBeSigned);
+
+		directory = Files.createTempDirectory("signing-benchmark");
+		Path socket = directory.resolve("signer.sock");
+		server = new SigningServer(socket, (orgId, keyId) -> keyPair.getPrivate(), 0);
+		server.start();
+		client = new SigningClient(socket, 64, 10_000);
+		client.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+		Files.deleteIfExists(directory);
+	}
+
+	@Benchmark
+	public byte[] inProcess() throws Exception {
+		Signature signature = CryptoPrimitives.signature(keyAlgorithm.getSignatureAlgorithm());
+		signature.initSign(keyPair.getPrivate());
+		signature.update(toBeSigned);
+		return signature.sign();
+	}
+
+	@Benchmark
+	public byte[] daemon() {
+		return client.sign("benchmark", "ca", keyAlgorithm.getSignatureAlgorithm(), toBeSigned).join();
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(SigningDaemonBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,119 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.keystore.CertificateRegistry.RegistryEntry;
+import com.example.publickeyinfrastructure.model.CertificateType;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.security.auth.x500.X500Principal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CertificateRegistryTest {
+
+	private static final X500Principal ISSUER = new X500Principal("CN=Registry CA,O=Org");
+	private static final int SERIALS = 12_000;
+
+	@Test
+	void foldsLeaveTheLargeLevelShared() {
+		CertificateRegistry.Builder loading = CertificateRegistry.EMPTY.rebuild();
+		for (int i = 0; i < 20 * CertificateRegistry.MAX_DELTA_SIZE; i++) {
+			loading.put(entry(CertificateType.END_ENTITY, i));
+		}
+		CertificateRegistry registry = loading.build();
+		Object bottom = index(registry, 0);
+
+		for (int i = 0; i < 3 * CertificateRegistry.MAX_DELTA_SIZE; i++) {
+			CertificateRegistry.Builder builder = registry.edit();
+			builder.put(entry(CertificateType.END_ENTITY, 1_000_000 + i));
+			registry = builder.build();
+		}
+
+		// three deltas were sealed and merged with each other, never into the loaded level
+		assertSame(bottom, index(registry, 0));
+		assertEquals(2, levels(registry).size());
+		assertEquals(23 * CertificateRegistry.MAX_DELTA_SIZE, registry.size());
+		assertEquals(registry.size(), registry.entriesOfType(CertificateType.END_ENTITY).size());
+	}
+
+	@Test
+	void readsMatchTheWritesAcrossLevels() {
+		Random random = new Random(42);
+		Map<String, RegistryEntry> expected = new HashMap<>();
+		CertificateRegistry registry = CertificateRegistry.EMPTY;
+		int mostLevels = 0;
+		for (int round = 1; round <= 20_000; round++) {
+			CertificateRegistry.Builder builder = registry.edit();
+			RegistryEntry entry = entry(random.nextInt(SERIALS));
+			switch (random.nextInt(5)) {
+				case 0 -> {
+					builder.remove(entry.alias());
+					expected.remove(entry.alias());
+				}
+				case 1 -> {
+					builder.setWithdrawn(entry.serialNumber(), true);
+					expected.computeIfPresent(entry.alias(), (alias, previous) -> previous.withWithdrawn(true));
+				}
+				default -> {
+					builder.put(entry);
+					expected.merge(entry.alias(), entry, (previous, added) -> added.withWithdrawn(previous.withdrawn()));
+				}
+			}
+			registry = builder.build();
+			mostLevels = Math.max(mostLevels, levels(registry).size());
+			if (round % 2_000 == 0) {
+				assertSameContent(expected, registry);
+			}
+		}
+		assertTrue(mostLevels > 1);
+	}
+
+	private static void assertSameContent(Map<String, RegistryEntry> expected, CertificateRegistry registry) {
+		assertEquals(expected.size(), registry.size());
+		assertEquals(expected.size(), registry.entries().size());
+		assertEquals(expected.size(), registry.page(0, Integer.MAX_VALUE).size());
+		for (int serial = 0; serial < SERIALS; serial++) {
+			String alias = entry(serial).alias();
+			RegistryEntry stored = expected.get(alias);
+			if (stored == null) {
+				assertNull(registry.entry(alias), alias);
+				assertTrue(registry.findBySerialNumber(BigInteger.valueOf(serial)).isEmpty(), alias);
+			} else {
+				assertEquals(stored.withdrawn(), registry.entry(alias).withdrawn(), alias);
+				assertEquals(alias, registry.findBySerialNumber(BigInteger.valueOf(serial)).orElseThrow().alias());
+			}
+		}
+		long intermediates = expected.values().stream().filter(entry -> entry.type() == CertificateType.INTERMEDIATE).count();
+		assertEquals(intermediates, registry.entriesOfType(CertificateType.INTERMEDIATE).size());
+		long active = expected.values().stream().filter(entry -> !entry.withdrawn()).count();
+		assertEquals(active, registry.findByIssuer(ISSUER).size());
+	}
+
+	private static RegistryEntry entry(long serial) {
+		return entry(serial % 7 == 0 ? CertificateType.INTERMEDIATE : CertificateType.END_ENTITY, serial);
+	}
+
+	private static RegistryEntry entry(CertificateType type, long serial) {
+		BigInteger serialNumber = BigInteger.valueOf(serial);
+		DistinguishedNameKey issuer = DistinguishedNameKey.of(ISSUER);
+		return new RegistryEntry(CertificateRegistry.aliasFor(type, serialNumber), type, serialNumber, null,
+				DistinguishedNameKey.of(new X500Principal("CN=Subject " + serial + ",O=Org")), issuer,
+				CertificateRegistry.shardOf(type, issuer), false);
+	}
+
+	private static List<?> levels(CertificateRegistry registry) {
+		return (List<?>) ReflectionTestUtils.getField(registry, "levels");
+	}
+
+	private static Object index(CertificateRegistry registry, int level) {
+		return ReflectionTestUtils.getField(levels(registry).get(level), "index");
+	}
+}
@@ -0,0 +1,130 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CertificateSegmentTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void recordsSurviveReopening() throws Exception {
+		Path file = directory.resolve("certificates.segment");
+		try (CertificateSegment segment = new CertificateSegment(file)) {
+			assertTrue(segment.scan().isEmpty());
+			CertificateSegment.Slice first = segment.append("root-1", bytes(100, 1));
+			segment.append("end_entity-2", bytes(300, 2));
+			segment.sync(first.end());
+			// visible before it is durable
+			assertArrayEquals(bytes(100, 1), read(first));
+		}
+
+		try (CertificateSegment segment = new CertificateSegment(file)) {
+			List<CertificateSegment.SegmentRecord> records = segment.scan();
+			assertEquals(List.of("root-1", "end_entity-2"), records.stream().map(CertificateSegment.SegmentRecord::alias).toList());
+			assertArrayEquals(bytes(100, 1), read(records.get(0).slice()));
+			assertArrayEquals(bytes(300, 2), read(records.get(1).slice()));
+			assertEquals(records.get(1).slice().end(), segment.size());
+		}
+	}
+
+	@Test
+	void corruptTailIsDiscardedAndOverwritten() throws Exception {
+		Path file = directory.resolve("certificates.segment");
+		long tornAt;
+		try (CertificateSegment segment = new CertificateSegment(file)) {
+			segment.scan();
+			tornAt = segment.append("root-1", bytes(100, 1)).end();
+			CertificateSegment.Slice second = segment.append("root-2", bytes(100, 2));
+			segment.sync(second.end());
+		}
+		// a flipped byte in the second payload fails its checksum
+		try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+			raw.seek(tornAt + 50);
+			raw.write(0x7f);
+		}
+
+		try (CertificateSegment segment = new CertificateSegment(file)) {
+			assertEquals(List.of("root-1"), aliases(segment.scan()));
+			assertEquals(tornAt, segment.size());
+			CertificateSegment.Slice third = segment.append("root-3", bytes(10, 3));
+			segment.sync(third.end());
+		}
+
+		try (CertificateSegment segment = new CertificateSegment(file)) {
+			assertEquals(List.of("root-1", "root-3"), aliases(segment.scan()));
+		}
+	}
+
+	@Test
+	void impossibleLengthEndsTheScan() throws Exception {
+		Path file = directory.resolve("certificates.segment");
+		long end;
+		try (CertificateSegment segment = new CertificateSegment(file)) {
+			segment.scan();
+			end = segment.append("root-1", bytes(100, 1)).end();
+			segment.sync(end);
+		}
+		// a header torn before its payload: a length too short to hold an alias, then one past the window
+		for (int length : new int[]{1, CertificateSegment.WINDOW_SIZE}) {
+			try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+				raw.seek(end);
+				raw.writeInt(length);
+			}
+			try (CertificateSegment segment = new CertificateSegment(file)) {
+				assertEquals(List.of("root-1"), aliases(segment.scan()));
+				assertEquals(end, segment.size());
+			}
+		}
+	}
+
+	@Test
+	void recordThatDoesNotFitMovesToTheNextWindow() throws Exception {
+		Path file = directory.resolve("certificates.segment");
+		int large = CertificateSegment.WINDOW_SIZE / 2;
+		try (CertificateSegment segment = new CertificateSegment(file)) {
+			segment.scan();
+			CertificateSegment.Slice first = segment.append("end_entity-1", bytes(large, 1));
+			CertificateSegment.Slice second = segment.append("end_entity-2", bytes(large, 2));
+			assertTrue(first.end() < CertificateSegment.WINDOW_SIZE);
+			assertTrue(second.offset() > CertificateSegment.WINDOW_SIZE);
+			segment.sync(second.end());
+		}
+
+		try (CertificateSegment segment = new CertificateSegment(file)) {
+			List<CertificateSegment.SegmentRecord> records = segment.scan();
+			assertEquals(List.of("end_entity-1", "end_entity-2"), aliases(records));
+			assertArrayEquals(bytes(large, 2), read(records.get(1).slice()));
+			CertificateSegment.Slice third = segment.append("end_entity-3", bytes(10, 3));
+			assertEquals(records.get(1).slice().end() + 8 + 2 + "end_entity-3".length(), third.offset());
+		}
+	}
+
+	private static List<String> aliases(List<CertificateSegment.SegmentRecord> records) {
+		return records.stream().map(CertificateSegment.SegmentRecord::alias).toList();
+	}
+
+	private static byte[] bytes(int length, int value) {
+		byte[] bytes = new byte[length];
+		Arrays.fill(bytes, (byte) value);
+		return bytes;
+	}
+
+	private static byte[] read(CertificateSegment.Slice slice) {
+		ByteBuffer encoded = slice.encoded();
+		byte[] bytes = new byte[encoded.remaining()];
+		encoded.get(bytes);
+		return bytes;
+	}
+}
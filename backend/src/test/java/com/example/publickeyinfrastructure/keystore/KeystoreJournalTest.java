@@ -0,0 +1,203 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeystoreJournalTest {
+
+	@TempDir
+	Path directory;
+
+	private KeyPair keyPair;
+	private Path journalPath;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		keyPair = ProjectKeyStoreFixture.keyPair();
+		journalPath = directory.resolve("keystore.journal");
+	}
+
+	@Test
+	void replayCutsTornTail() throws Exception {
+		long intact;
+		try (KeystoreJournal journal = new KeystoreJournal(journalPath)) {
+			journal.append("a", certificate(1)).join();
+			journal.append("b", certificate(2)).join();
+			intact = Files.size(journalPath);
+			journal.append("c", certificate(3)).join();
+		}
+		// a crash halfway through writing the third record
+		truncate(journalPath, intact + (Files.size(journalPath) - intact) / 2);
+
+		try (KeystoreJournal journal = new KeystoreJournal(journalPath)) {
+			assertEquals(List.of("a", "b"), aliases(journal.replay()));
+			assertEquals(intact, Files.size(journalPath));
+			assertEquals(2, journal.recordCount());
+
+			// later appends follow the last intact record
+			journal.append("d", certificate(4)).join();
+		}
+		try (KeystoreJournal journal = new KeystoreJournal(journalPath)) {
+			assertEquals(List.of("a", "b", "d"), aliases(journal.replay()));
+		}
+	}
+
+	@Test
+	void replayStopsAtChecksumMismatch() throws Exception {
+		long first;
+		try (KeystoreJournal journal = new KeystoreJournal(journalPath)) {
+			journal.append("a", certificate(1)).join();
+			first = Files.size(journalPath);
+			journal.append("b", certificate(2)).join();
+			journal.append("c", certificate(3)).join();
+		}
+		// flip a payload byte of the second record; the third is intact but comes after it
+		try (RandomAccessFile file = new RandomAccessFile(journalPath.toFile(), "rw")) {
+			file.seek(first + 8 + 4);
+			int value = file.read();
+			file.seek(first + 8 + 4);
+			file.write(value ^ 0xFF);
+		}
+
+		try (KeystoreJournal journal = new KeystoreJournal(journalPath)) {
+			List<KeystoreJournal.JournalRecord> records = journal.replay();
+			assertEquals(List.of("a"), aliases(records));
+			assertEquals(BigInteger.ONE, records.get(0).certificate().getSerialNumber());
+			assertEquals(first, Files.size(journalPath));
+		}
+	}
+
+	@Test
+	void replayReadsRolledSegmentFirst() throws Exception {
+		Path rolled = directory.resolve("keystore.journal.old");
+		try (KeystoreJournal journal = new KeystoreJournal(journalPath)) {
+			journal.append("a", certificate(1)).join();
+			journal.append("b", certificate(2)).join();
+			journal.rollover();
+			assertTrue(journal.hasRolledSegment());
+			assertEquals(0, journal.recordCount());
+			journal.append("c", certificate(3)).join();
+			// a compaction that did not finish: the next rollover appends to the rolled segment
+			journal.rollover();
+			journal.append("d", certificate(4)).join();
+		}
+
+		try (KeystoreJournal journal = new KeystoreJournal(journalPath)) {
+			assertEquals(List.of("a", "b", "c", "d"), aliases(journal.replay()));
+			journal.discardRolledSegment();
+			assertFalse(Files.exists(rolled));
+			assertEquals(List.of("d"), aliases(journal.replay()));
+		}
+	}
+
+	@Test
+	void compactionRollsOverAndDropsCoveredRecords() throws Exception {
+		X500Name rootName = new X500Name("CN=Journal Root,O=Org");
+		X509Certificate root = certificate(rootName, rootName, BigInteger.ONE);
+		X509Certificate intermediate = certificate(rootName, new X500Name("CN=Journal Intermediate,O=Org"), BigInteger.TWO);
+		Path storeJournal = directory.resolve("keystore.journal");
+
+		ProjectKeyStore keyStore = ProjectKeyStoreFixture.open(directory);
+		keyStore.writeKeyEntry("ROOT", "1", keyPair.getPrivate(), root, "Org");
+		keyStore.writeKeyEntry("INTERMEDIATE", "2", keyPair.getPrivate(), intermediate, "Org");
+		assertTrue(Files.size(storeJournal) > 0);
+
+		keyStore.compact();
+		assertEquals(0, Files.size(storeJournal));
+		assertFalse(Files.exists(directory.resolve("keystore.journal.old")));
+
+		// appended after the compaction, so only in the journal
+		X509Certificate second = certificate(rootName, new X500Name("CN=Journal Intermediate 2,O=Org"), BigInteger.valueOf(3));
+		keyStore.writeKeyEntry("INTERMEDIATE", "3", keyPair.getPrivate(), second, "Org");
+		keyStore.shutdown();
+
+		ProjectKeyStore reopened = ProjectKeyStoreFixture.open(directory);
+		assertTrue(reopened.readCertificateBySerialNumber(SerialNumberUtil.toCanonical(root.getSerialNumber())).isPresent());
+		assertTrue(reopened.readCertificateBySerialNumber(SerialNumberUtil.toCanonical(intermediate.getSerialNumber())).isPresent());
+		assertTrue(reopened.readCertificateBySerialNumber(SerialNumberUtil.toCanonical(second.getSerialNumber())).isPresent());
+		reopened.shutdown();
+	}
+
+	@Test
+	void compactionRewritesOnlyTheOpenGeneration() throws Exception {
+		X500Name caName = new X500Name("CN=Journal Busy CA,O=Org");
+		ProjectKeyStore keyStore = ProjectKeyStoreFixture.open(directory);
+		ReflectionTestUtils.setField(keyStore, "maxShardEntries", 4);
+		for (int i = 0; i < 10; i++) {
+			writeLeaf(keyStore, caName, 100 + i);
+		}
+		keyStore.compact();
+		List<Path> generations = endEntityShards();
+		assertEquals(3, generations.size());
+		byte[] sealed = Files.readAllBytes(generations.get(0));
+
+		writeLeaf(keyStore, caName, 200);
+		keyStore.compact();
+		// the full generations are left alone, however many certificates the issuer has
+		assertArrayEquals(sealed, Files.readAllBytes(generations.get(0)));
+		keyStore.shutdown();
+
+		ProjectKeyStore reopened = ProjectKeyStoreFixture.open(directory);
+		ReflectionTestUtils.setField(reopened, "maxShardEntries", 4);
+		assertEquals(11, reopened.readCertificatesByIssuerDN(new X500Principal(caName.getEncoded())).size());
+		writeLeaf(reopened, caName, 300);
+		reopened.compact();
+		assertEquals(3, endEntityShards().size());
+		writeLeaf(reopened, caName, 301);
+		reopened.compact();
+		assertEquals(4, endEntityShards().size());
+		reopened.shutdown();
+	}
+
+	private void writeLeaf(ProjectKeyStore keyStore, X500Name issuer, long serial) throws Exception {
+		X509Certificate leaf = certificate(issuer, new X500Name("CN=Leaf " + serial + ",O=Org"), BigInteger.valueOf(serial));
+		keyStore.writeKeyEntry("END_ENTITY", String.valueOf(serial), keyPair.getPrivate(), leaf, "Org");
+	}
+
+	private List<Path> endEntityShards() throws Exception {
+		try (Stream<Path> files = Files.list(directory.resolve("keystore"))) {
+			return files.filter(file -> file.getFileName().toString().startsWith("end_entity-"))
+					.sorted(Comparator.comparingInt(file -> file.getFileName().toString().length()))
+					.toList();
+		}
+	}
+
+	private static List<String> aliases(List<KeystoreJournal.JournalRecord> records) {
+		return records.stream().map(KeystoreJournal.JournalRecord::alias).toList();
+	}
+
+	private static void truncate(Path path, long length) throws Exception {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.setLength(length);
+		}
+	}
+
+	private X509Certificate certificate(long serial) throws Exception {
+		X500Name name = new X500Name("CN=Journal " + serial + ",O=Org");
+		return certificate(name, name, BigInteger.valueOf(serial));
+	}
+
+	private X509Certificate certificate(X500Name issuer, X500Name subject, BigInteger serial) throws Exception {
+		return ProjectKeyStoreFixture.certificate(issuer, subject, serial, keyPair, ProjectKeyStoreFixture.signer(keyPair));
+	}
+}
@@ -0,0 +1,111 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MasterKeyRotationTest {
+
+	private MasterKeyStore masterKeyStore;
+	private OrganizationKeyStore organizationKeyStore;
+	private MasterKeyRotation rotation;
+
+	@BeforeEach
+	void setUp() {
+		masterKeyStore = Mockito.mock(MasterKeyStore.class);
+		organizationKeyStore = Mockito.mock(OrganizationKeyStore.class);
+		rotation = new MasterKeyRotation(masterKeyStore, organizationKeyStore);
+		ReflectionTestUtils.setField(rotation, "batchSize", 2);
+		ReflectionTestUtils.setField(rotation, "parallelism", 2);
+	}
+
+	@AfterEach
+	void tearDown() {
+		rotation.shutdown();
+	}
+
+	@Test
+	void interruptedRotationIsResumedInBatches() throws Exception {
+		when(masterKeyStore.getCurrentVersion()).thenReturn(3);
+		// once for the check on startup, once for the first pass; the second pass finds nothing left
+		when(organizationKeyStore.aliasesWrappedBefore(3)).thenReturn(List.of("org-a", "org-b", "org-c"), List.of("org-a", "org-b", "org-c"), List.of());
+		when(organizationKeyStore.rewrap(anyList())).thenAnswer(invocation ->
+				new OrganizationKeyStore.RewrapResult(invocation.<List<String>>getArgument(0).size(), 0));
+
+		rotation.resumeInterrupted();
+		MasterKeyRotation.Progress progress = awaitFinished();
+
+		assertEquals(MasterKeyRotation.State.COMPLETED, progress.state());
+		assertEquals(3, progress.targetVersion());
+		assertEquals(3, progress.total());
+		assertEquals(3, progress.rewrapped());
+		assertNotNull(progress.finishedAt());
+		verify(organizationKeyStore).rewrap(List.of("org-a", "org-b"));
+		verify(organizationKeyStore).rewrap(List.of("org-c"));
+		verify(masterKeyStore, never()).rotate();
+	}
+
+	@Test
+	void nothingIsResumedWithoutStaleKeys() {
+		when(masterKeyStore.getCurrentVersion()).thenReturn(1, 2);
+		when(organizationKeyStore.aliasesWrappedBefore(anyInt())).thenReturn(List.of());
+
+		// the first master key has nothing older to re-wrap from, the second finds every key current
+		rotation.resumeInterrupted();
+		rotation.resumeInterrupted();
+
+		assertEquals(MasterKeyRotation.State.IDLE, rotation.progress().state());
+	}
+
+	@Test
+	void keysThatKeepGoingStaleStopAfterTheLastPass() throws Exception {
+		when(masterKeyStore.rotate()).thenReturn(2);
+		// a key wrapped with the old version on every pass, as if issuance kept racing the rotation
+		when(organizationKeyStore.aliasesWrappedBefore(2)).thenReturn(List.of("org-a"));
+		when(organizationKeyStore.rewrap(anyList())).thenReturn(new OrganizationKeyStore.RewrapResult(1, 0));
+
+		rotation.rotate();
+		MasterKeyRotation.Progress progress = awaitFinished();
+
+		verify(organizationKeyStore, times(3)).rewrap(List.of("org-a"));
+		assertEquals(3, progress.total());
+		assertNotNull(progress.finishedAt());
+	}
+
+	@Test
+	void failedKeysFailTheRotation() throws Exception {
+		when(masterKeyStore.rotate()).thenReturn(2);
+		when(organizationKeyStore.aliasesWrappedBefore(2)).thenReturn(List.of("org-a", "org-b"), List.of());
+		when(organizationKeyStore.rewrap(anyList())).thenReturn(new OrganizationKeyStore.RewrapResult(1, 1));
+
+		rotation.rotate();
+		MasterKeyRotation.Progress progress = awaitFinished();
+
+		assertEquals(MasterKeyRotation.State.FAILED, progress.state());
+		assertEquals(1, progress.rewrapped());
+		assertEquals(1, progress.failed());
+	}
+
+	private MasterKeyRotation.Progress awaitFinished() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		MasterKeyRotation.Progress progress = rotation.progress();
+		while (progress.state() == MasterKeyRotation.State.RUNNING && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			progress = rotation.progress();
+		}
+		return progress;
+	}
+}
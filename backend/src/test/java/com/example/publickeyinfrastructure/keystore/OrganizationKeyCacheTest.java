@@ -0,0 +1,118 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.PrivateKey;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class OrganizationKeyCacheTest {
+
+	private OrganizationKeyCache cache;
+	private SimpleMeterRegistry meters;
+
+	// the purger is not started, the tests purge by hand
+	@BeforeEach
+	void setUp() {
+		cache = new OrganizationKeyCache();
+		ReflectionTestUtils.setField(cache, "maxSize", 2);
+		ReflectionTestUtils.setField(cache, "ttlSeconds", 300L);
+		meters = new SimpleMeterRegistry();
+		cache.bindTo(meters);
+	}
+
+	@Test
+	void leastRecentlyUsedKeyIsDroppedWhenFull() throws Exception {
+		PrivateKey first = key();
+		PrivateKey second = key();
+		PrivateKey third = key();
+		cache.put("org-1", first, cache.generation());
+		cache.put("org-2", second, cache.generation());
+		assertSame(first, cache.get("org-1"));
+
+		cache.put("org-3", third, cache.generation());
+
+		assertEquals(2, cache.size());
+		assertNull(cache.get("org-2"));
+		assertSame(first, cache.get("org-1"));
+		assertSame(third, cache.get("org-3"));
+		verify(second).destroy();
+		verify(first, never()).destroy();
+		assertEquals(1, evictions("size"));
+		assertEquals(3, meters.get("organization.key.cache.gets").tag("result", "hit").functionCounter().count());
+		assertEquals(1, meters.get("organization.key.cache.gets").tag("result", "miss").functionCounter().count());
+	}
+
+	@Test
+	void expiredKeysAreDroppedOnReadAndByThePurge() throws Exception {
+		ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+		PrivateKey read = key();
+		PrivateKey purged = key();
+		cache.put("org-1", read, cache.generation());
+		cache.put("org-2", purged, cache.generation());
+
+		assertNull(cache.get("org-1"));
+		verify(read).destroy();
+		assertEquals(1, cache.size());
+
+		cache.purgeExpired();
+		assertEquals(0, cache.size());
+		verify(purged).destroy();
+		assertEquals(2, evictions("expired"));
+	}
+
+	@Test
+	void loadThatRacedWithAnInvalidationIsNotCached() throws Exception {
+		long loadedAt = cache.generation();
+		// the key was rotated while it was being decrypted
+		cache.invalidate("org-1");
+		PrivateKey stale = key();
+
+		assertSame(stale, cache.put("org-1", stale, loadedAt));
+		assertEquals(0, cache.size());
+
+		PrivateKey fresh = key();
+		cache.put("org-1", fresh, cache.generation());
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		verify(fresh).destroy();
+		assertEquals(1, evictions("invalidated"));
+	}
+
+	@Test
+	void concurrentLoadsShareTheFirstCachedKey() throws Exception {
+		long loadedAt = cache.generation();
+		PrivateKey winner = key();
+		PrivateKey loser = key();
+
+		assertSame(winner, cache.put("org-1", winner, loadedAt));
+		assertSame(winner, cache.put("org-1", loser, loadedAt));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void zeroSizeDisablesCaching() throws Exception {
+		ReflectionTestUtils.setField(cache, "maxSize", 0);
+		PrivateKey key = key();
+
+		assertSame(key, cache.put("org-1", key, cache.generation()));
+		assertNull(cache.get("org-1"));
+		verify(key, never()).destroy();
+	}
+
+	private double evictions(String cause) {
+		return meters.get("organization.key.cache.evictions").tag("cause", cause).functionCounter().count();
+	}
+
+	private static PrivateKey key() {
+		return Mockito.mock(PrivateKey.class);
+	}
+}
@@ -0,0 +1,157 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.config.SecurityProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrganizationKeyStoreTest {
+
+	private static final String KEYSTORE_PASSWORD = "organization-test-password";
+
+	@TempDir
+	Path directory;
+
+	private SecurityProperties properties;
+	private MasterKeyStore masterKeyStore;
+	private OrganizationKeyCache keyCache;
+	private OrganizationKeyStore keyStore;
+
+	@BeforeEach
+	void setUp() {
+		properties = new SecurityProperties();
+		properties.getKeystore().setPassword(KEYSTORE_PASSWORD);
+		properties.getEncryption().setPassphrase("master-test-passphrase");
+		masterKeyStore = new MasterKeyStore(properties);
+		ReflectionTestUtils.setField(masterKeyStore, "masterKeystorePath", directory.resolve("master.p12").toString());
+		masterKeyStore.init();
+		keyCache = new OrganizationKeyCache();
+		ReflectionTestUtils.setField(keyCache, "maxSize", 16);
+		ReflectionTestUtils.setField(keyCache, "ttlSeconds", 300L);
+		keyCache.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (keyStore != null) {
+			keyStore.shutdown();
+		}
+		keyCache.shutdown();
+	}
+
+	@Test
+	void legacyKeyIsUpgradedOnFirstLoad() throws Exception {
+		KeyPair keyPair = generate("RSA", 2048);
+		writeLegacyKeystore("org-legacy", keyPair.getPrivate());
+
+		keyStore = open();
+		PrivateKey loaded = keyStore.loadOrganizationKey("org", "legacy");
+		assertArrayEquals(keyPair.getPrivate().getEncoded(), loaded.getEncoded());
+		// now a version 2 record under the master key it was sealed with
+		assertEquals(List.of("org-legacy"), keyStore.aliasesWrappedBefore(2));
+
+		// served from the new store once the legacy keystore is gone
+		keyStore.shutdown();
+		Files.delete(directory.resolve("organization-keystore.p12"));
+		keyCache.invalidateAll();
+		keyStore = open();
+		assertArrayEquals(keyPair.getPrivate().getEncoded(), keyStore.loadOrganizationKey("org", "legacy").getEncoded());
+	}
+
+	@Test
+	void legacyKeyIsUpgradedWhenRenamed() throws Exception {
+		KeyPair keyPair = generate("RSA", 2048);
+		writeLegacyKeystore("org-old", keyPair.getPrivate());
+
+		keyStore = open();
+		keyStore.renameOrganizationKey("org", "old", "new");
+
+		assertArrayEquals(keyPair.getPrivate().getEncoded(), keyStore.loadOrganizationKey("org", "new").getEncoded());
+		// the legacy entry is not upgraded a second time under its old alias
+		assertNull(keyStore.loadOrganizationKey("org", "old"));
+	}
+
+	@Test
+	void version1RecordIsReadAndRewrapped() throws Exception {
+		KeyPair keyPair = generate("EC", 256);
+		byte[] iv = new byte[WrappedKey.IV_LENGTH];
+		new SecureRandom().nextBytes(iv);
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.ENCRYPT_MODE, masterKeyStore.getMasterKey(1), new GCMParameterSpec(128, iv));
+		byte[] record = new WrappedKey(WrappedKey.VERSION_1, WrappedKey.ALGORITHM_EC, 1, iv,
+				cipher.doFinal(keyPair.getPrivate().getEncoded())).encode();
+		try (WrappedKeyStore store = new WrappedKeyStore(directory.resolve("organization-keys.dat"))) {
+			store.put("org-ec", record);
+		}
+
+		keyStore = open();
+		assertArrayEquals(keyPair.getPrivate().getEncoded(), keyStore.loadOrganizationKey("org", "ec").getEncoded());
+
+		masterKeyStore.rotate();
+		assertEquals(List.of("org-ec"), keyStore.aliasesWrappedBefore(2));
+		assertEquals(new OrganizationKeyStore.RewrapResult(1, 0), keyStore.rewrap(List.of("org-ec")));
+		assertTrue(keyStore.aliasesWrappedBefore(2).isEmpty());
+
+		keyCache.invalidateAll();
+		assertArrayEquals(keyPair.getPrivate().getEncoded(), keyStore.loadOrganizationKey("org", "ec").getEncoded());
+	}
+
+	private OrganizationKeyStore open() {
+		OrganizationKeyStore opened = new OrganizationKeyStore(masterKeyStore, properties, keyCache);
+		ReflectionTestUtils.setField(opened, "organizationKeystorePath", directory.resolve("organization-keystore.p12").toString());
+		ReflectionTestUtils.setField(opened, "organizationKeysPath", directory.resolve("organization-keys.dat").toString());
+		opened.init();
+		return opened;
+	}
+
+	// the format written before wrapped key records: serialized EncryptedKeyData in a PKCS12 secret entry
+	private void writeLegacyKeystore(String alias, PrivateKey privateKey) throws Exception {
+		byte[] iv = new byte[12];
+		new SecureRandom().nextBytes(iv);
+		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		cipher.init(Cipher.ENCRYPT_MODE, masterKeyStore.getMasterKey(), new GCMParameterSpec(128, iv));
+		EncryptedKeyData keyData = new EncryptedKeyData(Base64.getEncoder().encodeToString(cipher.doFinal(privateKey.getEncoded())),
+				Base64.getEncoder().encodeToString(iv));
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+			out.writeObject(keyData);
+		}
+
+		KeyStore legacy = KeyStore.getInstance("PKCS12");
+		legacy.load(null, KEYSTORE_PASSWORD.toCharArray());
+		legacy.setEntry(alias, new KeyStore.SecretKeyEntry(new SecretKeySpec(serialized.toByteArray(), "AES")),
+				new KeyStore.PasswordProtection(KEYSTORE_PASSWORD.toCharArray()));
+		try (FileOutputStream out = new FileOutputStream(directory.resolve("organization-keystore.p12").toFile())) {
+			legacy.store(out, KEYSTORE_PASSWORD.toCharArray());
+		}
+	}
+
+	private static KeyPair generate(String algorithm, int keySize) throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+		generator.initialize(keySize);
+		return generator.generateKeyPair();
+	}
+}
@@ -0,0 +1,169 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs against SoftHSM. Initialize a token and point the test at the module, e.g.
+ * {@code softhsm2-util --init-token --free --label pki-test --so-pin 1234 --pin 1234} and
+ * {@code PKCS11_LIBRARY=/usr/lib/softhsm/libsofthsm2.so}; {@code PKCS11_PIN} defaults to 1234.
+ */
+@EnabledIfEnvironmentVariable(named = "PKCS11_LIBRARY", matches = ".+")
+class Pkcs11KeyBackendTest {
+
+	private static final int SESSIONS = 2;
+	private static final int THREADS = 8;
+	private static final int SIGNATURES_PER_THREAD = 25;
+
+	@TempDir
+	Path directory;
+
+	private Pkcs11KeyBackend backend;
+	private SimpleMeterRegistry registry;
+	// keys stay on the token, so every run uses fresh aliases
+	private final String orgId = "org" + UUID.randomUUID().toString().substring(0, 8);
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Path config = directory.resolve("pkcs11.cfg");
+		Files.writeString(config, "name = SoftHSM\nlibrary = " + System.getenv("PKCS11_LIBRARY") + "\nslotListIndex = 0\n");
+		String pin = System.getenv().getOrDefault("PKCS11_PIN", "1234");
+		backend = new Pkcs11KeyBackend(config.toString(), pin, SESSIONS, 10_000);
+		backend.init();
+		registry = new SimpleMeterRegistry();
+		backend.bindTo(registry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		backend.shutdown();
+	}
+
+	@Test
+	void signsWithImportedRsaAndEcKeys() throws Exception {
+		verifySigning("RSA", 2048, "SHA256withRSA");
+		verifySigning("EC", 256, "SHA256withECDSA");
+	}
+
+	@Test
+	void missingKeyHasNoSigner() throws Exception {
+		assertNull(backend.loadOrganizationKey(orgId, "missing"));
+		assertNull(backend.contentSigner(orgId, "missing", "SHA256withRSA"));
+	}
+
+	@Test
+	void renamedKeySignsUnderTheNewAliasOnly() throws Exception {
+		KeyPair keyPair = store("legacy", "EC", 256);
+		assertNotNull(backend.loadOrganizationKey(orgId, "legacy"));
+
+		backend.renameOrganizationKey(orgId, "legacy", "canonical");
+
+		assertNull(backend.loadOrganizationKey(orgId, "legacy"));
+		byte[] message = "after rename".getBytes();
+		assertTrue(verify(keyPair, "SHA256withECDSA", message, sign("canonical", "SHA256withECDSA", message)));
+		// renaming what is already gone is a no-op
+		backend.renameOrganizationKey(orgId, "legacy", "canonical");
+	}
+
+	@Test
+	void concurrentSignaturesShareSessionsAndKeyHandle() throws Exception {
+		KeyPair keyPair = store("ca", "EC", 256);
+		assertSame(backend.loadOrganizationKey(orgId, "ca"), backend.loadOrganizationKey(orgId, "ca"));
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < SIGNATURES_PER_THREAD; i++) {
+						byte[] message = ("message " + thread + "-" + i).getBytes();
+						assertTrue(verify(keyPair, "SHA256withECDSA", message, sign("ca", "SHA256withECDSA", message)));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		long signatures = registry.find("organization.key.pkcs11.sign").timers().stream().mapToLong(Timer::count).sum();
+		assertEquals(THREADS * SIGNATURES_PER_THREAD, signatures);
+		assertEquals(SESSIONS, registry.find("organization.key.pkcs11.sign").timers().size());
+		assertEquals(0, registry.get("organization.key.pkcs11.sessions.busy").gauge().value());
+	}
+
+	private void verifySigning(String algorithm, int keySize, String signatureAlgorithm) throws Exception {
+		KeyPair keyPair = store(algorithm.toLowerCase(), algorithm, keySize);
+		byte[] message = "to be signed".getBytes();
+		assertTrue(verify(keyPair, signatureAlgorithm, message, sign(algorithm.toLowerCase(), signatureAlgorithm, message)));
+	}
+
+	private KeyPair store(String keyId, String algorithm, int keySize) throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+		generator.initialize(keySize);
+		KeyPair keyPair = generator.generateKeyPair();
+		String signatureAlgorithm = algorithm.equals("EC") ? "SHA256withECDSA" : "SHA256withRSA";
+		backend.storeOrganizationKey(orgId, keyId, keyPair.getPrivate(), selfSigned(keyPair, signatureAlgorithm));
+		return keyPair;
+	}
+
+	private byte[] sign(String keyId, String signatureAlgorithm, byte[] message) throws Exception {
+		ContentSigner signer = backend.contentSigner(orgId, keyId, signatureAlgorithm);
+		try (OutputStream out = signer.getOutputStream()) {
+			out.write(message);
+		}
+		return signer.getSignature();
+	}
+
+	private static boolean verify(KeyPair keyPair, String signatureAlgorithm, byte[] message, byte[] signature) throws Exception {
+		Signature verifier = Signature.getInstance(signatureAlgorithm);
+		verifier.initVerify(keyPair.getPublic());
+		verifier.update(message);
+		return verifier.verify(signature);
+	}
+
+	private static X509Certificate selfSigned(KeyPair keyPair, String signatureAlgorithm) throws Exception {
+		X500Name name = new X500Name("CN=PKCS11 Test,O=Org");
+		Date now = new Date();
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(now.getTime()), now,
+				new Date(now.getTime() + 86_400_000L), name, keyPair.getPublic());
+		ContentSigner signer = new JcaContentSignerBuilder(signatureAlgorithm).build(keyPair.getPrivate());
+		return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+	}
+}
@@ -0,0 +1,119 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProjectKeyStoreConcurrencyTest {
+
+	private static final int THREADS = 64;
+	private static final int WRITES_PER_THREAD = 20;
+	private static final X500Name ROOT_NAME = new X500Name("CN=Stress Root,O=Org");
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void concurrentWritersAndReadersLoseNoEntries() throws Exception {
+		KeyPair keyPair = ProjectKeyStoreFixture.keyPair();
+		ContentSigner signer = ProjectKeyStoreFixture.signer(keyPair);
+		X509Certificate root = ProjectKeyStoreFixture.certificate(ROOT_NAME, ROOT_NAME, BigInteger.ONE, keyPair, signer);
+
+		List<List<X509Certificate>> perThread = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			List<X509Certificate> certificates = new ArrayList<>();
+			for (int i = 0; i < WRITES_PER_THREAD; i++) {
+				BigInteger serial = BigInteger.valueOf(1000L + (long) t * WRITES_PER_THREAD + i);
+				certificates.add(ProjectKeyStoreFixture.certificate(ROOT_NAME, new X500Name("CN=Leaf " + serial + ",O=Org"), serial, keyPair, signer));
+			}
+			perThread.add(certificates);
+		}
+
+		ProjectKeyStore keyStore = open(50);
+		keyStore.writeKeyEntry("ROOT", "1", keyPair.getPrivate(), root, "Org");
+
+		Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> futures = new ArrayList<>();
+		for (List<X509Certificate> certificates : perThread) {
+			futures.add(pool.submit(() -> {
+				try {
+					start.await();
+					long lastVersion = -1;
+					for (int i = 0; i < certificates.size(); i++) {
+						X509Certificate certificate = certificates.get(i);
+						String type = i % 5 == 0 ? "INTERMEDIATE" : "END_ENTITY";
+						keyStore.writeKeyEntry(type, "x", keyPair.getPrivate(), certificate, "Org");
+
+						String serial = SerialNumberUtil.toCanonical(certificate.getSerialNumber());
+						if (keyStore.readCertificateBySerialNumber(serial).isEmpty()) {
+							failures.add(new AssertionError("Own write not visible: " + serial));
+						}
+						long version = keyStore.getGeneration();
+						if (version < lastVersion) {
+							failures.add(new AssertionError("Snapshot version went backwards: " + lastVersion + " -> " + version));
+						}
+						lastVersion = version;
+
+						keyStore.getCACertificates().values().forEach(List::size);
+						keyStore.findPage(PageRequest.of(i, 50)).forEach(ByteBuffer::remaining);
+						keyStore.readCertificatesByIssuerDN(root.getSubjectX500Principal()).size();
+						keyStore.findUnassignedCACertificates(Set.of(serial));
+					}
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get(2, TimeUnit.MINUTES);
+		}
+		pool.shutdown();
+
+		assertTrue(failures.isEmpty(), () -> "Concurrent access failed: " + failures);
+		int expected = 1 + THREADS * WRITES_PER_THREAD;
+		assertEquals(expected, keyStore.findPage(PageRequest.of(0, expected)).getNumberOfElements());
+		assertEquals(THREADS * WRITES_PER_THREAD / 5, keyStore.getCACertificates().get(CertificateType.INTERMEDIATE).size());
+
+		// everything must also survive compaction and a restart
+		keyStore.shutdown();
+		ProjectKeyStore reopened = open(50);
+		assertEquals(expected, reopened.findPage(PageRequest.of(0, 10)).getTotalElements());
+		for (List<X509Certificate> certificates : perThread) {
+			for (X509Certificate certificate : certificates) {
+				assertTrue(reopened.readCertificateBySerialNumber(SerialNumberUtil.toCanonical(certificate.getSerialNumber())).isPresent());
+			}
+		}
+		reopened.shutdown();
+	}
+
+	private ProjectKeyStore open(int compactionThreshold) {
+		return ProjectKeyStoreFixture.open(directory, Mockito.mock(OrganizationKeyStore.class), compactionThreshold, 1L);
+	}
+}
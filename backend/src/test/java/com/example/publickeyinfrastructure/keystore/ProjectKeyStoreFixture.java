@@ -0,0 +1,72 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.config.SecurityProperties;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+/**
+ * Opens a {@link ProjectKeyStore} on a test directory the way Spring would, and builds the certificates the
+ * key store tests write. Public because the service tests issue into a real key store too.
+ */
+public final class ProjectKeyStoreFixture {
+
+	private ProjectKeyStoreFixture() {
+	}
+
+	public static ProjectKeyStore open(Path directory) {
+		return open(directory, Mockito.mock(OrganizationKeyStore.class));
+	}
+
+	public static ProjectKeyStore open(Path directory, OrganizationKeyBackend organizationKeys) {
+		return open(directory, organizationKeys, 1000, 60L);
+	}
+
+	public static ProjectKeyStore open(Path directory, OrganizationKeyBackend organizationKeys, int compactionThreshold,
+									   long compactionIntervalSeconds) {
+		SecurityProperties properties = new SecurityProperties();
+		properties.getKeystore().setPassword("keystore-test-password");
+		ProjectKeyStore keyStore = new ProjectKeyStore(properties, organizationKeys);
+		ReflectionTestUtils.setField(keyStore, "keystorePath", directory.resolve("keystore.p12").toString());
+		ReflectionTestUtils.setField(keyStore, "keystoreDirectory", directory.resolve("keystore").toString());
+		ReflectionTestUtils.setField(keyStore, "compactionThreshold", compactionThreshold);
+		ReflectionTestUtils.setField(keyStore, "compactionIntervalSeconds", compactionIntervalSeconds);
+		keyStore.init();
+		return keyStore;
+	}
+
+	/**
+	 * A small RSA key pair; the tests only need something to sign with.
+	 */
+	public static KeyPair keyPair() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(1024);
+		return generator.generateKeyPair();
+	}
+
+	public static ContentSigner signer(KeyPair keyPair) throws Exception {
+		return new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate());
+	}
+
+	/**
+	 * A certificate for {@code keyPair}'s public key, valid from a minute ago for a day.
+	 */
+	public static X509Certificate certificate(X500Name issuer, X500Name subject, BigInteger serial, KeyPair keyPair,
+											  ContentSigner signer) throws Exception {
+		Date notBefore = new Date(System.currentTimeMillis() - 60_000);
+		Date notAfter = new Date(System.currentTimeMillis() + 86_400_000L);
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(issuer, serial, notBefore, notAfter, subject, keyPair.getPublic());
+		return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+	}
+}
@@ -0,0 +1,67 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ProjectKeyStoreMigrationTest {
+
+	private static final X500Name ROOT_NAME = new X500Name("CN=Migration Root,O=Org");
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void singleFileKeystoreWithDecimalAliasesMovesToCanonicalShards() throws Exception {
+		KeyPair keyPair = ProjectKeyStoreFixture.keyPair();
+		ContentSigner signer = ProjectKeyStoreFixture.signer(keyPair);
+		X509Certificate root = ProjectKeyStoreFixture.certificate(ROOT_NAME, ROOT_NAME, BigInteger.valueOf(500), keyPair, signer);
+		X509Certificate leaf = ProjectKeyStoreFixture.certificate(ROOT_NAME, new X500Name("CN=Leaf,O=Org"), BigInteger.valueOf(0xA1), keyPair, signer);
+		// aliases from before serial numbers were hex: the decimal serial after the type
+		KeyStore legacy = KeyStore.getInstance("PKCS12");
+		legacy.load(null, null);
+		legacy.setCertificateEntry("root-500", root);
+		legacy.setCertificateEntry("end_entity-a1", leaf);
+		try (FileOutputStream out = new FileOutputStream(directory.resolve("keystore.p12").toFile())) {
+			legacy.store(out, "keystore-test-password".toCharArray());
+		}
+
+		OrganizationKeyBackend organizationKeys = Mockito.mock(OrganizationKeyBackend.class);
+		ProjectKeyStore keyStore = ProjectKeyStoreFixture.open(directory, organizationKeys);
+		verify(organizationKeys).renameOrganizationKey("Org", "root-500", "root-1f4");
+		// already canonical, so its organization key stays where it is
+		verify(organizationKeys, never()).renameOrganizationKey(anyString(), Mockito.eq("end_entity-a1"), anyString());
+		assertFalse(Files.exists(directory.resolve("keystore.p12")));
+		assertTrue(Files.exists(directory.resolve("keystore.p12.migrated")));
+		assertEquals("root-1f4", keyStore.findPrivateKeyAlias("ROOT", "1F4").orElseThrow());
+		assertEquals("end_entity-a1", keyStore.findPrivateKeyAlias("END_ENTITY", "A1").orElseThrow());
+		// the self-signed root and the leaf
+		assertEquals(2, keyStore.readCertificatesByIssuerDN(root.getSubjectX500Principal()).size());
+		keyStore.shutdown();
+
+		// the shards already hold the canonical aliases, nothing is migrated twice
+		OrganizationKeyBackend reopenedKeys = Mockito.mock(OrganizationKeyBackend.class);
+		ProjectKeyStore reopened = ProjectKeyStoreFixture.open(directory, reopenedKeys);
+		verify(reopenedKeys, never()).renameOrganizationKey(anyString(), anyString(), anyString());
+		assertEquals(root, reopened.readCertificateBySerialNumber("1F4").orElseThrow());
+		assertEquals(leaf, reopened.readCertificateBySerialNumber("0xa1").orElseThrow());
+		reopened.shutdown();
+	}
+}
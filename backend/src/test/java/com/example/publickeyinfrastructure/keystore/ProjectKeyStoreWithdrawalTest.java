@@ -0,0 +1,112 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProjectKeyStoreWithdrawalTest {
+
+	private static final X500Name ROOT_NAME = new X500Name("CN=Withdrawal Root,O=Org");
+	private static final X500Name INTERMEDIATE_NAME = new X500Name("CN=Withdrawal Intermediate,O=Org");
+
+	@TempDir
+	Path directory;
+
+	private KeyPair keyPair;
+	private X509Certificate root;
+	private X509Certificate intermediate;
+	private X509Certificate leaf;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		keyPair = ProjectKeyStoreFixture.keyPair();
+		ContentSigner signer = ProjectKeyStoreFixture.signer(keyPair);
+		root = certificate(ROOT_NAME, ROOT_NAME, BigInteger.ONE, signer);
+		intermediate = certificate(ROOT_NAME, INTERMEDIATE_NAME, BigInteger.TWO, signer);
+		leaf = certificate(INTERMEDIATE_NAME, new X500Name("CN=leaf.example.com,O=Org"), BigInteger.TEN, signer);
+	}
+
+	@Test
+	void withdrawalSurvivesReload() {
+		ProjectKeyStore keyStore = ProjectKeyStoreFixture.open(directory);
+		keyStore.writeKeyEntry("ROOT", "1", keyPair.getPrivate(), root, "Org");
+		keyStore.writeKeyEntry("INTERMEDIATE", "2", keyPair.getPrivate(), intermediate, "Org");
+		keyStore.setWithdrawn(serial(intermediate), true);
+		keyStore.compact();
+
+		long before = keyStore.withdrawalVersion();
+		// as if another process had rewritten a shard
+		ReflectionTestUtils.setField(keyStore, "directoryStamp", -2L);
+		keyStore.refreshIfChanged();
+
+		assertNotEquals(before, keyStore.withdrawalVersion());
+		assertTrue(keyStore.isWithdrawn(intermediate.getSerialNumber()));
+		assertTrue(keyStore.readCertificateBySubjectDN(intermediate.getSubjectX500Principal()).isEmpty());
+
+		keyStore.setWithdrawn(serial(intermediate), false);
+		assertFalse(keyStore.isWithdrawn(intermediate.getSerialNumber()));
+		assertTrue(keyStore.readCertificateBySubjectDN(intermediate.getSubjectX500Principal()).isPresent());
+		keyStore.shutdown();
+	}
+
+	@Test
+	void withdrawnCaIsNotOfferedAsIssuer() {
+		ProjectKeyStore keyStore = ProjectKeyStoreFixture.open(directory);
+		keyStore.writeKeyEntry("ROOT", "1", keyPair.getPrivate(), root, "Org");
+		keyStore.writeKeyEntry("INTERMEDIATE", "2", keyPair.getPrivate(), intermediate, "Org");
+		keyStore.setWithdrawn(serial(root), true);
+
+		Map<CertificateType, List<ByteBuffer>> issuers = keyStore.getCACertificates();
+		assertFalse(issuers.containsKey(CertificateType.ROOT));
+		assertEquals(1, issuers.get(CertificateType.INTERMEDIATE).size());
+
+		keyStore.setWithdrawn(serial(root), false);
+		assertEquals(1, keyStore.getCACertificates().get(CertificateType.ROOT).size());
+		keyStore.shutdown();
+	}
+
+	@Test
+	void withdrawingEndEntityKeepsItsShardDeferred() {
+		ProjectKeyStore keyStore = ProjectKeyStoreFixture.open(directory);
+		keyStore.writeKeyEntry("ROOT", "1", keyPair.getPrivate(), root, "Org");
+		keyStore.writeKeyEntry("INTERMEDIATE", "2", keyPair.getPrivate(), intermediate, "Org");
+		keyStore.writeKeyEntry("END_ENTITY", "a", keyPair.getPrivate(), leaf, "Org");
+		keyStore.shutdown();
+
+		ProjectKeyStore reopened = ProjectKeyStoreFixture.open(directory);
+		reopened.markWithdrawn(List.of(serial(leaf)));
+		CertificateRegistry registry = (CertificateRegistry) ReflectionTestUtils.getField(reopened, "registry");
+		assertTrue(registry.hasPendingShards());
+		assertTrue(reopened.isWithdrawn(leaf.getSerialNumber()));
+
+		// the flag is applied once the shard is loaded
+		assertEquals(List.of(), reopened.readCertificatesByIssuerDN(intermediate.getSubjectX500Principal()));
+		reopened.shutdown();
+	}
+
+	private static String serial(X509Certificate certificate) {
+		return SerialNumberUtil.toCanonical(certificate.getSerialNumber());
+	}
+
+	private X509Certificate certificate(X500Name issuer, X500Name subject, BigInteger serial, ContentSigner signer) throws Exception {
+		return ProjectKeyStoreFixture.certificate(issuer, subject, serial, keyPair, signer);
+	}
+}
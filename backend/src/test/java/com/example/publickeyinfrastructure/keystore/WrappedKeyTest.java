@@ -0,0 +1,83 @@
+package com.example.publickeyinfrastructure.keystore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WrappedKeyTest {
+
+	private static final byte[] IV = filled(WrappedKey.IV_LENGTH, 7);
+	private static final byte[] CIPHERTEXT = filled(WrappedKey.TAG_LENGTH + 40, 9);
+
+	@Test
+	void version2RoundTripKeepsMasterKeyVersion() {
+		byte[] encoded = WrappedKey.of(WrappedKey.ALGORITHM_EC, 300, IV, CIPHERTEXT).encode();
+
+		assertEquals(4 + WrappedKey.IV_LENGTH + CIPHERTEXT.length, encoded.length);
+		assertEquals(300, WrappedKey.masterKeyVersionOf(encoded));
+		WrappedKey decoded = WrappedKey.decode(encoded);
+		assertEquals(WrappedKey.VERSION_2, decoded.version());
+		assertEquals(WrappedKey.ALGORITHM_EC, decoded.algorithm());
+		assertEquals(300, decoded.masterKeyVersion());
+		assertArrayEquals(IV, decoded.iv());
+		assertArrayEquals(CIPHERTEXT, decoded.ciphertext());
+	}
+
+	@Test
+	void version1RecordsAreMasterKeyVersion1() {
+		byte[] encoded = new WrappedKey(WrappedKey.VERSION_1, WrappedKey.ALGORITHM_RSA, 1, IV, CIPHERTEXT).encode();
+
+		assertEquals(2 + WrappedKey.IV_LENGTH + CIPHERTEXT.length, encoded.length);
+		// the bytes after the algorithm id are the IV, not a version field
+		assertEquals(1, WrappedKey.masterKeyVersionOf(encoded));
+		WrappedKey decoded = WrappedKey.decode(encoded);
+		assertEquals(WrappedKey.VERSION_1, decoded.version());
+		assertEquals(WrappedKey.ALGORITHM_RSA, decoded.algorithm());
+		assertEquals(1, decoded.masterKeyVersion());
+		assertArrayEquals(IV, decoded.iv());
+		assertArrayEquals(CIPHERTEXT, decoded.ciphertext());
+	}
+
+	@Test
+	void rejectsRecordsTooShortForIvAndTag() {
+		byte[] v2 = WrappedKey.of(WrappedKey.ALGORITHM_RSA, 1, IV, CIPHERTEXT).encode();
+		byte[] v1 = new WrappedKey(WrappedKey.VERSION_1, WrappedKey.ALGORITHM_RSA, 1, IV, CIPHERTEXT).encode();
+
+		assertThrows(IllegalArgumentException.class, () -> WrappedKey.decode(Arrays.copyOf(v2, 4 + WrappedKey.IV_LENGTH + WrappedKey.TAG_LENGTH - 1)));
+		assertThrows(IllegalArgumentException.class, () -> WrappedKey.decode(Arrays.copyOf(v1, 2 + WrappedKey.IV_LENGTH + WrappedKey.TAG_LENGTH - 1)));
+		assertThrows(IllegalArgumentException.class, () -> WrappedKey.decode(Arrays.copyOf(v2, 3)));
+		assertThrows(IllegalArgumentException.class, () -> WrappedKey.decode(new byte[0]));
+		// only the tag and nothing encrypted is still long enough
+		assertEquals(WrappedKey.TAG_LENGTH, WrappedKey.decode(Arrays.copyOf(v2, 4 + WrappedKey.IV_LENGTH + WrappedKey.TAG_LENGTH)).ciphertext().length);
+	}
+
+	@Test
+	void rejectsUnknownVersion() {
+		byte[] encoded = WrappedKey.of(WrappedKey.ALGORITHM_RSA, 1, IV, CIPHERTEXT).encode();
+		encoded[0] = 3;
+
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> WrappedKey.decode(encoded));
+		assertEquals("Unsupported wrapped key version 3", e.getMessage());
+	}
+
+	@Test
+	void algorithmIdsRoundTrip() {
+		for (String algorithm : new String[]{"RSA", "EC", "Ed25519"}) {
+			assertEquals(algorithm, WrappedKey.algorithmName(WrappedKey.algorithmId(algorithm)));
+		}
+		assertEquals(WrappedKey.ALGORITHM_EC, WrappedKey.algorithmId("ECDSA"));
+		assertEquals(WrappedKey.ALGORITHM_ED25519, WrappedKey.algorithmId("EdDSA"));
+		assertThrows(IllegalArgumentException.class, () -> WrappedKey.algorithmId("DSA"));
+		assertThrows(IllegalArgumentException.class, () -> WrappedKey.algorithmName(0));
+	}
+
+	private static byte[] filled(int length, int value) {
+		byte[] bytes = new byte[length];
+		Arrays.fill(bytes, (byte) value);
+		return bytes;
+	}
+}
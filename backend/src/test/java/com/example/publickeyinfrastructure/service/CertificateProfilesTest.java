@@ -0,0 +1,96 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CertificateProfilesTest {
+
+	private static final String CUSTOM = """
+			{"custom": {"type": "END_ENTITY", "extensions": [
+			  {"type": "KEY_USAGE", "critical": true, "value": "digitalSignature"}
+			]}}
+			""";
+	// subject alternative names are per certificate, so this fails to compile
+	private static final String NOT_COMPILABLE = """
+			{"broken": {"type": "END_ENTITY", "extensions": [
+			  {"type": "SUBJECT_ALTERNATIVE_NAME", "critical": false, "value": "DNS=example.com"}
+			]}}
+			""";
+
+	@TempDir
+	Path directory;
+
+	private Path file;
+	private CertificateProfiles profiles;
+	private long modified = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+
+	@BeforeEach
+	void setUp() {
+		file = directory.resolve("certificate-profiles.json");
+		profiles = new CertificateProfiles(new ObjectMapper());
+		ReflectionTestUtils.setField(profiles, "path", file.toString());
+		ReflectionTestUtils.setField(profiles, "reloadIntervalSeconds", 0L);
+		profiles.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		profiles.shutdown();
+	}
+
+	@Test
+	void startsWithClasspathDefaultsAndLoadsTheFileOnceItAppears() throws Exception {
+		// in file order, as /profiles lists them
+		assertEquals(List.of("tls-server", "tls-client", "sub-ca"), List.copyOf(profiles.names()));
+		assertFalse(profiles.reloadIfChanged());
+
+		write(CUSTOM);
+		assertTrue(profiles.reloadIfChanged());
+		assertEquals(Set.of("custom"), profiles.names());
+		assertTrue(profiles.find("custom").isPresent());
+		assertFalse(profiles.reloadIfChanged());
+	}
+
+	@Test
+	void brokenFileKeepsThePreviousProfiles() throws Exception {
+		write(CUSTOM);
+		profiles.reloadIfChanged();
+
+		write(NOT_COMPILABLE);
+		assertThrows(IllegalArgumentException.class, profiles::reloadIfChanged);
+		assertEquals(Set.of("custom"), profiles.names());
+		// reported once, not on every check until it is fixed
+		assertFalse(profiles.reloadIfChanged());
+
+		write("{\"custom\": ");
+		assertThrows(Exception.class, profiles::reloadIfChanged);
+		assertEquals(Set.of("custom"), profiles.names());
+
+		write(CUSTOM.replace("custom", "fixed"));
+		assertTrue(profiles.reloadIfChanged());
+		assertEquals(Set.of("fixed"), profiles.names());
+	}
+
+	// every write gets a distinct modification time, whatever the file system's resolution
+	private void write(String content) throws Exception {
+		Files.writeString(file, content);
+		modified += 2_000;
+		Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+	}
+}
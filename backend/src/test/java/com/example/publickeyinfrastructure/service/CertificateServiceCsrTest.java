@@ -0,0 +1,275 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.example.publickeyinfrastructure.keystore.OrganizationKeyBackend;
+import com.example.publickeyinfrastructure.keystore.ProjectKeyStore;
+import com.example.publickeyinfrastructure.keystore.ProjectKeyStoreFixture;
+import com.example.publickeyinfrastructure.model.Certificate;
+import com.example.publickeyinfrastructure.model.CertificateEntity;
+import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.model.Role;
+import com.example.publickeyinfrastructure.repository.CertificateRepository;
+import com.example.publickeyinfrastructure.repository.UserRepository;
+import com.example.publickeyinfrastructure.signing.SigningClient;
+import com.example.publickeyinfrastructure.util.CsrReader;
+import com.example.publickeyinfrastructure.util.SerialNumberUtil;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequestBuilder;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class CertificateServiceCsrTest {
+
+	private static final X500Name ROOT_NAME = new X500Name("CN=CSR Root,O=Org,C=RS");
+	private static final X500Name SUBJECT = new X500Name("CN=leaf.example.com,O=Org,C=RS");
+
+	@TempDir
+	Path directory;
+
+	private OrganizationKeyBackend organizationKeys;
+	private ProjectKeyStore projectKeyStore;
+	private ExecutorService executor;
+	private CertificateRepository certificateRepository;
+	private CertificateService certificateService;
+	private String rootSerialNumber;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Security.addProvider(new BouncyCastleProvider());
+		CertificateEntity.setEncryptionPassphrase("csr-test-passphrase");
+		KeyPair rootKeyPair = generate("RSA", 2048);
+		X509Certificate root = root(rootKeyPair);
+		rootSerialNumber = SerialNumberUtil.toCanonical(root.getSerialNumber());
+
+		organizationKeys = Mockito.mock(OrganizationKeyBackend.class);
+		Mockito.when(organizationKeys.signerFactory(anyString(), anyString(), anyString()))
+				.thenAnswer(invocation -> signers(rootKeyPair.getPrivate(), invocation.getArgument(2)));
+
+		projectKeyStore = ProjectKeyStoreFixture.open(directory, organizationKeys);
+		projectKeyStore.writeKeyEntry("ROOT", rootSerialNumber, rootKeyPair.getPrivate(), root, "Org");
+		Mockito.clearInvocations(organizationKeys);
+
+		certificateRepository = Mockito.mock(CertificateRepository.class);
+		Mockito.when(certificateRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+		executor = Executors.newFixedThreadPool(2);
+		certificateService = service(projectKeyStore);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+		projectKeyStore.shutdown();
+	}
+
+	@Test
+	void issuesForSubscriberKeyWithoutStoringAnyKey() throws Exception {
+		KeyPair subscriber = generate("EC", 256);
+		ExtensionsGenerator extensions = new ExtensionsGenerator();
+		extensions.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(new GeneralName(GeneralName.dNSName, "leaf.example.com")));
+		extensions.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature));
+
+		CertificateService.IssuanceResult result = issue(csr(subscriber, subscriber.getPrivate(), "SHA256withECDSA", extensions.generate()));
+
+		assertNull(result.error());
+		X509Certificate issued = result.x509Certificate();
+		assertArrayEquals(subscriber.getPublic().getEncoded(), issued.getPublicKey().getEncoded());
+		assertEquals(-1, issued.getBasicConstraints());
+		assertFalse(issued.getKeyUsage()[5]);
+		assertNotNull(issued.getSubjectAlternativeNames());
+		assertNull(result.certificate().getSubject().getPrivateKey());
+		assertTrue(projectKeyStore.readCertificateBySerialNumber(result.certificate().getSerialNumber()).isPresent());
+		verify(organizationKeys, never()).storeOrganizationKey(any(), any(), any(), any());
+		verify(organizationKeys, never()).storeOrganizationKeys(anyList());
+	}
+
+	@Test
+	void rejectsSignatureFromAnotherKey() throws Exception {
+		KeyPair subscriber = generate("EC", 256);
+		PrivateKey other = generate("EC", 256).getPrivate();
+
+		assertRejected("CSR signature does not match its public key", csr(subscriber, other, "SHA256withECDSA", null));
+	}
+
+	@Test
+	void rejectsRsaKeysUnder2048Bits() throws Exception {
+		KeyPair subscriber = generate("RSA", 1024);
+
+		assertRejected("RSA keys must be at least 2048 bits", csr(subscriber, subscriber.getPrivate(), "SHA256withRSA", null));
+	}
+
+	@Test
+	void rejectsCurvesOtherThanP256() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(new ECGenParameterSpec("secp384r1"));
+		KeyPair subscriber = generator.generateKeyPair();
+
+		assertRejected("Only P-256 EC keys are supported", csr(subscriber, subscriber.getPrivate(), "SHA384withECDSA", null));
+	}
+
+	@Test
+	void rejectsCaRequest() throws Exception {
+		KeyPair subscriber = generate("EC", 256);
+		ExtensionsGenerator extensions = new ExtensionsGenerator();
+		extensions.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+
+		assertRejected("A CSR cannot request a CA certificate", csr(subscriber, subscriber.getPrivate(), "SHA256withECDSA", extensions.generate()));
+	}
+
+	@Test
+	void rejectsCertificateSigningKeyUsage() throws Exception {
+		KeyPair subscriber = generate("EC", 256);
+		ExtensionsGenerator extensions = new ExtensionsGenerator();
+		extensions.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature | KeyUsage.keyCertSign));
+
+		assertRejected("A CSR cannot request certificate or CRL signing", csr(subscriber, subscriber.getPrivate(), "SHA256withECDSA", extensions.generate()));
+	}
+
+	@Test
+	void streamedResultsKeepRequestOrderAcrossChunks() throws Exception {
+		ReflectionTestUtils.setField(certificateService, "bulkMaxItems", 2);
+		List<KeyPair> subscribers = new ArrayList<>();
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for (int i = 0; i < 5; i++) {
+			KeyPair subscriber = generate("EC", 256);
+			subscribers.add(subscriber);
+			// every other request is signed with the wrong key and fails on its own
+			PrivateKey signingKey = i % 2 == 0 ? subscriber.getPrivate() : generate("EC", 256).getPrivate();
+			stream.write(csr(subscriber, signingKey, "SHA256withECDSA", null));
+		}
+
+		List<List<CertificateService.IssuanceResult>> chunks = new ArrayList<>();
+		Date now = new Date();
+		try (CsrReader csrs = new CsrReader(new ByteArrayInputStream(stream.toByteArray()))) {
+			certificateService.createCertificatesFromCsrs(csrs, now, new Date(now.getTime() + 86_400_000L), Role.USER,
+					rootSerialNumber, CertificateType.ROOT, chunks::add);
+		}
+
+		assertEquals(List.of(2, 2, 1), chunks.stream().map(List::size).toList());
+		List<CertificateService.IssuanceResult> results = chunks.stream().flatMap(List::stream).toList();
+		for (int i = 0; i < results.size(); i++) {
+			CertificateService.IssuanceResult result = results.get(i);
+			if (i % 2 == 0) {
+				assertNull(result.error());
+				assertArrayEquals(subscribers.get(i).getPublic().getEncoded(), result.x509Certificate().getPublicKey().getEncoded());
+			} else {
+				assertNull(result.certificate());
+				assertEquals("CSR signature does not match its public key", result.error());
+			}
+		}
+		// each chunk stores only what it issued
+		verify(certificateRepository, Mockito.times(3)).saveAll(Mockito.argThat(rows -> ((List<?>) rows).size() == 1));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void failedKeystoreWriteDeletesTheSavedRows() throws Exception {
+		ProjectKeyStore failing = Mockito.spy(projectKeyStore);
+		Mockito.doThrow(new RuntimeException("Failed to write keystore")).when(failing).writeKeyEntries(anyList());
+		certificateService = service(failing);
+		KeyPair subscriber = generate("EC", 256);
+
+		assertThrows(RuntimeException.class, () -> issue(csr(subscriber, subscriber.getPrivate(), "SHA256withECDSA", null)));
+
+		ArgumentCaptor<List<Certificate>> saved = ArgumentCaptor.forClass(List.class);
+		verify(certificateRepository).saveAll(saved.capture());
+		assertEquals(1, saved.getValue().size());
+		verify(certificateRepository).deleteAll(saved.getValue());
+	}
+
+	private void assertRejected(String error, byte[] csr) throws Exception {
+		CertificateService.IssuanceResult result = issue(csr);
+		assertNull(result.certificate());
+		assertEquals(error, result.error());
+		verify(organizationKeys, never()).storeOrganizationKeys(anyList());
+	}
+
+	private CertificateService.IssuanceResult issue(byte[] csr) throws Exception {
+		Date now = new Date();
+		return certificateService.createCertificateFromCsr(csr, now, new Date(now.getTime() + 86_400_000L), Role.USER,
+				rootSerialNumber, CertificateType.ROOT);
+	}
+
+	@SuppressWarnings("unchecked")
+	private CertificateService service(ProjectKeyStore keyStore) {
+		ObjectProvider<SigningClient> signingClient = Mockito.mock(ObjectProvider.class);
+		CertificateService service = new CertificateService(certificateRepository, keyStore, Mockito.mock(UserRepository.class),
+				Mockito.mock(KeyPairPool.class), signingClient, organizationKeys, Mockito.mock(VerifiedChainCache.class),
+				Mockito.mock(CertificateProfiles.class), executor);
+		ReflectionTestUtils.setField(service, "bulkMaxItems", 1000);
+		return service;
+	}
+
+	private static byte[] csr(KeyPair subject, PrivateKey signingKey, String signatureAlgorithm, Extensions extensions) throws Exception {
+		PKCS10CertificationRequestBuilder builder = new JcaPKCS10CertificationRequestBuilder(SUBJECT, subject.getPublic());
+		if (extensions != null) {
+			builder.addAttribute(PKCSObjectIdentifiers.pkcs_9_at_extensionRequest, extensions);
+		}
+		return builder.build(new JcaContentSignerBuilder(signatureAlgorithm).build(signingKey)).getEncoded();
+	}
+
+	private static OrganizationKeyBackend.SignerFactory signers(PrivateKey key, String signatureAlgorithm) {
+		return () -> new JcaContentSignerBuilder(signatureAlgorithm).build(key);
+	}
+
+	private static X509Certificate root(KeyPair keyPair) throws Exception {
+		Date now = new Date();
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(ROOT_NAME, BigInteger.valueOf(now.getTime()),
+				new Date(now.getTime() - 60_000), new Date(now.getTime() + 10 * 86_400_000L), ROOT_NAME, keyPair.getPublic());
+		builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+		builder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+		return new JcaX509CertificateConverter().getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+	}
+
+	private static KeyPair generate(String algorithm, int keySize) throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+		generator.initialize(keySize);
+		return generator.generateKeyPair();
+	}
+}
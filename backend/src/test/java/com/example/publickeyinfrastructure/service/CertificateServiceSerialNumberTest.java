@@ -0,0 +1,106 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.example.publickeyinfrastructure.keystore.OrganizationKeyBackend;
+import com.example.publickeyinfrastructure.keystore.ProjectKeyStore;
+import com.example.publickeyinfrastructure.keystore.ProjectKeyStoreFixture;
+import com.example.publickeyinfrastructure.model.Certificate;
+import com.example.publickeyinfrastructure.repository.CertificateRepository;
+import com.example.publickeyinfrastructure.repository.UserRepository;
+import com.example.publickeyinfrastructure.signing.SigningClient;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class CertificateServiceSerialNumberTest {
+
+	private static final X500Name ROOT_NAME = new X500Name("CN=Serial Root,O=Org");
+
+	@TempDir
+	Path directory;
+
+	private ProjectKeyStore projectKeyStore;
+	private CertificateRepository certificateRepository;
+	private UserRepository userRepository;
+	private CertificateService certificateService;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() throws Exception {
+		KeyPair keyPair = ProjectKeyStoreFixture.keyPair();
+		ContentSigner signer = ProjectKeyStoreFixture.signer(keyPair);
+		projectKeyStore = ProjectKeyStoreFixture.open(directory, Mockito.mock(OrganizationKeyBackend.class));
+		// 500 was stored as "500" before serial numbers were hex, 0x1280 is "1280" in both eras
+		for (long serial : new long[]{500, 0x1280}) {
+			projectKeyStore.writeKeyEntry("ROOT", "x", keyPair.getPrivate(),
+					ProjectKeyStoreFixture.certificate(ROOT_NAME, ROOT_NAME, BigInteger.valueOf(serial), keyPair, signer), "Org");
+		}
+
+		certificateRepository = Mockito.mock(CertificateRepository.class);
+		userRepository = Mockito.mock(UserRepository.class);
+		certificateService = new CertificateService(certificateRepository, projectKeyStore, userRepository,
+				Mockito.mock(KeyPairPool.class), Mockito.mock(ObjectProvider.class), Mockito.mock(OrganizationKeyBackend.class),
+				Mockito.mock(VerifiedChainCache.class), Mockito.mock(CertificateProfiles.class), Mockito.mock(ExecutorService.class));
+	}
+
+	@AfterEach
+	void tearDown() {
+		projectKeyStore.shutdown();
+	}
+
+	@Test
+	void rewritesDecimalSerialNumbersOnly() {
+		// "777" is in neither reading in the keystore, "ABC" cannot be decimal
+		Mockito.when(certificateRepository.findAllSerialNumbers()).thenReturn(List.of("500", "1280", "777", "ABC"));
+		Mockito.when(userRepository.findAllAssignedSerialNumbers()).thenReturn(List.of("500"));
+
+		assertEquals(1, certificateService.migrateLegacySerialNumbers());
+
+		verify(certificateRepository).updateSerialNumber("500", "1F4");
+		verify(userRepository).updateCertificateSerialNumber("500", "1F4");
+		verify(certificateRepository, Mockito.times(1)).updateSerialNumber(anyString(), anyString());
+		verify(userRepository, Mockito.times(1)).updateCertificateSerialNumber(anyString(), anyString());
+	}
+
+	@Test
+	void migratesSerialNumbersOnlyAssignedToUsers() {
+		Mockito.when(certificateRepository.findAllSerialNumbers()).thenReturn(List.of());
+		Mockito.when(userRepository.findAllAssignedSerialNumbers()).thenReturn(List.of("500"));
+
+		assertEquals(1, certificateService.migrateLegacySerialNumbers());
+		verify(userRepository).updateCertificateSerialNumber("500", "1F4");
+	}
+
+	@Test
+	void withdrawalFindsTheRowInAnyAcceptedForm() {
+		Certificate stored = new Certificate();
+		stored.setSerialNumber("1F4");
+		Mockito.when(certificateRepository.findBySerialNumber(anyString())).thenReturn(Optional.empty());
+		Mockito.when(certificateRepository.findBySerialNumber("1F4")).thenReturn(Optional.of(stored));
+		Mockito.when(certificateRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+		certificateService.setWithdrawn("0x1f4", true);
+
+		assertTrue(stored.getIsWithdrawn());
+		assertTrue(projectKeyStore.isWithdrawn(BigInteger.valueOf(500)));
+		verify(certificateRepository, never()).findBySerialNumber("500");
+	}
+}
@@ -0,0 +1,177 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.example.publickeyinfrastructure.dto.CreateCertificateRequest;
+import com.example.publickeyinfrastructure.mapper.CertificateMapper;
+import com.example.publickeyinfrastructure.model.Certificate;
+import com.example.publickeyinfrastructure.model.IssuanceJob;
+import com.example.publickeyinfrastructure.model.IssuanceJobStatus;
+import com.example.publickeyinfrastructure.model.Role;
+import com.example.publickeyinfrastructure.model.User;
+import com.example.publickeyinfrastructure.repository.IssuanceJobRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+
+class IssuanceJobServiceTest {
+
+	private final Map<String, IssuanceJob> jobs = new ConcurrentHashMap<>();
+	// issuer serial numbers in the order the jobs were issued
+	private final List<String> issued = new CopyOnWriteArrayList<>();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final User requester = new User();
+	private IssuanceJobService service;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		IssuanceJobRepository repository = Mockito.mock(IssuanceJobRepository.class);
+		Mockito.when(repository.save(any())).thenAnswer(invocation -> {
+			IssuanceJob job = invocation.getArgument(0);
+			jobs.put(job.getId(), job);
+			return job;
+		});
+		Mockito.when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+			List<IssuanceJob> saved = invocation.getArgument(0);
+			saved.forEach(job -> jobs.put(job.getId(), job));
+			return saved;
+		});
+		Mockito.when(repository.findById(anyString())).thenAnswer(invocation -> Optional.ofNullable(jobs.get(invocation.<String>getArgument(0))));
+		Mockito.when(repository.findAllByStatusOrderBySubmittedAsc(any())).thenAnswer(invocation -> jobs.values().stream()
+				.filter(job -> job.getStatus() == invocation.getArgument(0))
+				.sorted(Comparator.comparing(IssuanceJob::getSubmitted))
+				.toList());
+
+		CertificateService certificateService = Mockito.mock(CertificateService.class);
+		Mockito.when(certificateService.createCertificate(any(), any(), any(), any())).thenAnswer(invocation -> {
+			release.await(10, TimeUnit.SECONDS);
+			issued.add(invocation.getArgument(2));
+			Certificate certificate = new Certificate();
+			certificate.setSerialNumber("1F4");
+			return certificate;
+		});
+		CertificateMapper certificateMapper = Mockito.mock(CertificateMapper.class);
+		Mockito.when(certificateMapper.toEntity(any(CreateCertificateRequest.class))).thenAnswer(invocation -> new Certificate());
+		requester.setEmail("admin@example.com");
+		requester.setRole(Role.ADMIN);
+		UserService userService = Mockito.mock(UserService.class);
+		Mockito.when(userService.findByEmail("admin@example.com")).thenReturn(Optional.of(requester));
+
+		service = new IssuanceJobService(repository, certificateService, certificateMapper, userService, objectMapper);
+		ReflectionTestUtils.setField(service, "workers", 1);
+		ReflectionTestUtils.setField(service, "queueCapacity", 2);
+		service.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		release.countDown();
+		service.shutdown();
+	}
+
+	@Test
+	void fullQueueRejectsWithoutSavingTheJob() throws Exception {
+		IssuanceJob running = service.submit(request("A"), requester);
+		awaitUntil(() -> running.getStatus() == IssuanceJobStatus.RUNNING);
+		service.submit(request("B"), requester);
+		service.submit(request("C"), requester);
+
+		assertThrows(RejectedExecutionException.class, () -> service.submit(request("D"), requester));
+		assertEquals(3, jobs.size());
+
+		release.countDown();
+		awaitUntil(() -> jobs.values().stream().allMatch(job -> job.getStatus() == IssuanceJobStatus.SUCCEEDED));
+		assertEquals(List.of("A", "B", "C"), issued);
+		// the slots are free again
+		service.submit(request("E"), requester);
+	}
+
+	@Test
+	void restartFailsInterruptedJobsAndRequeuesWaitingOnesInOrder() throws Exception {
+		IssuanceJob interrupted = stored("running", IssuanceJobStatus.RUNNING, "A", 1);
+		stored("later", IssuanceJobStatus.QUEUED, "C", 3);
+		stored("earlier", IssuanceJobStatus.QUEUED, "B", 2);
+		IssuanceJob finished = stored("finished", IssuanceJobStatus.SUCCEEDED, "D", 0);
+		release.countDown();
+
+		service.recoverJobs();
+		awaitUntil(() -> issued.size() == 2);
+
+		// its certificate may have been issued already, so it is not run again
+		assertEquals(IssuanceJobStatus.FAILED, interrupted.getStatus());
+		assertTrue(interrupted.getError().startsWith("Interrupted by a restart"));
+		assertEquals(List.of("B", "C"), issued);
+		awaitUntil(() -> jobs.get("later").getStatus() == IssuanceJobStatus.SUCCEEDED);
+		assertEquals("1F4", jobs.get("earlier").getSerialNumber());
+		assertEquals(IssuanceJobStatus.SUCCEEDED, finished.getStatus());
+	}
+
+	@Test
+	void longPollReturnsOnCompletionOrTimeout() throws Exception {
+		IssuanceJob job = service.submit(request("A"), requester);
+
+		CompletableFuture<IssuanceJob> timedOut = service.awaitCompletion(job, 50);
+		assertFalse(timedOut.get(5, TimeUnit.SECONDS).getStatus().isFinished());
+
+		CompletableFuture<IssuanceJob> waiting = service.awaitCompletion(job, 10_000);
+		assertFalse(waiting.isDone());
+		release.countDown();
+		IssuanceJob done = waiting.get(5, TimeUnit.SECONDS);
+		assertEquals(IssuanceJobStatus.SUCCEEDED, done.getStatus());
+		assertEquals("1F4", done.getSerialNumber());
+
+		// a finished job is returned as it is, without waiting
+		CompletableFuture<IssuanceJob> again = service.awaitCompletion(done, 10_000);
+		assertTrue(again.isDone());
+		assertSame(done, again.get());
+	}
+
+	private CreateCertificateRequest request(String issuerSerialNumber) {
+		CreateCertificateRequest request = new CreateCertificateRequest();
+		request.setIssuerSerialNumber(issuerSerialNumber);
+		return request;
+	}
+
+	private IssuanceJob stored(String id, IssuanceJobStatus status, String issuerSerialNumber, long submitted) throws Exception {
+		IssuanceJob job = new IssuanceJob();
+		job.setId(id);
+		job.setStatus(status);
+		job.setRequesterEmail(requester.getEmail());
+		job.setRequest(objectMapper.writeValueAsString(request(issuerSerialNumber)));
+		job.setSubmitted(new Date(submitted));
+		jobs.put(id, job);
+		return job;
+	}
+
+	private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "timed out");
+			Thread.sleep(10);
+		}
+	}
+}
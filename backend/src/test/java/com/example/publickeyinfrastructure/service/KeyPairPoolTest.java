@@ -0,0 +1,103 @@
+package com.example.publickeyinfrastructure.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyPairPoolTest {
+
+	private KeyPairPool pool;
+	private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+	@AfterEach
+	void tearDown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void poolIsFilledToTheHighWatermarkAndRefilledBelowTheLowOne() throws Exception {
+		pool = open("EC:256:2:4");
+		awaitUntil(() -> pool.size("EC", 256) == 4);
+		// nothing past the high watermark, however many workers there are
+		Thread.sleep(200);
+		assertEquals(4, pool.size("EC", 256));
+		assertEquals(4, generated());
+
+		Set<KeyPair> taken = new HashSet<>();
+		taken.add(pool.take("EC", 256));
+		assertEquals(3, pool.size("EC", 256));
+		Thread.sleep(200);
+		// still at or above the low watermark, so no refill yet
+		assertEquals(3, pool.size("EC", 256));
+
+		taken.add(pool.take("ec", 256));
+		taken.add(pool.take("EC", 256));
+		awaitUntil(() -> pool.size("EC", 256) == 4 && generated() == 7);
+		assertEquals(3, taken.size());
+		assertEquals(3, waits("pool"));
+	}
+
+	@Test
+	void emptyOrUnknownPoolGeneratesInline() {
+		// a low watermark of zero never refills
+		pool = open("EC:256:0:1");
+
+		KeyPair pooled = pool.take("EC", 256);
+		KeyPair unknown = pool.take("EC", 384);
+
+		assertEquals("EC", pooled.getPublic().getAlgorithm());
+		assertEquals("EC", unknown.getPublic().getAlgorithm());
+		assertEquals(0, pool.size("EC", 256));
+		assertEquals(0, pool.size("EC", 384));
+		assertEquals(2, waits("inline"));
+		assertEquals(0, generated());
+	}
+
+	@Test
+	void malformedPoolsAreRejected() {
+		for (String spec : List.of("EC:256:2", "EC:256:5:4", "EC:256:-1:4", "EC:256:0:0")) {
+			KeyPairPool invalid = new KeyPairPool();
+			ReflectionTestUtils.setField(invalid, "poolSpecs", List.of(spec));
+			ReflectionTestUtils.setField(invalid, "workers", 1);
+			assertThrows(IllegalArgumentException.class, invalid::init, spec);
+		}
+	}
+
+	private KeyPairPool open(String spec) {
+		KeyPairPool opened = new KeyPairPool();
+		ReflectionTestUtils.setField(opened, "poolSpecs", List.of(spec));
+		ReflectionTestUtils.setField(opened, "workers", 2);
+		opened.init();
+		opened.bindTo(meters);
+		return opened;
+	}
+
+	private double generated() {
+		return meters.get("key.pair.pool.generated").tag("algorithm", "EC").functionCounter().count();
+	}
+
+	private long waits(String source) {
+		return meters.get("key.pair.pool.wait").tag("source", source).timers().stream().mapToLong(timer -> timer.count()).sum();
+	}
+
+	private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "timed out");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.example.publickeyinfrastructure.service;
+
+import com.example.publickeyinfrastructure.keystore.ProjectKeyStore;
+import com.example.publickeyinfrastructure.keystore.ProjectKeyStoreFixture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class VerifiedChainCacheTest {
+
+	private static final X500Name ROOT_NAME = new X500Name("CN=Chain Root,O=Org");
+	private static final X500Name INTERMEDIATE_NAME = new X500Name("CN=Chain Intermediate,O=Org");
+
+	private KeyPair rootKeyPair;
+	private X509Certificate root;
+	private ProjectKeyStore projectKeyStore;
+	private VerifiedChainCache cache;
+	private SimpleMeterRegistry meters;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		rootKeyPair = ProjectKeyStoreFixture.keyPair();
+		root = ProjectKeyStoreFixture.certificate(ROOT_NAME, ROOT_NAME, BigInteger.ONE, rootKeyPair, ProjectKeyStoreFixture.signer(rootKeyPair));
+		projectKeyStore = Mockito.mock(ProjectKeyStore.class);
+		Mockito.when(projectKeyStore.readCertificateBySubjectDN(root.getSubjectX500Principal())).thenReturn(Optional.of(root));
+		cache = new VerifiedChainCache(projectKeyStore);
+		meters = new SimpleMeterRegistry();
+		cache.bindTo(meters);
+	}
+
+	@Test
+	void verifiedChainIsReusedUntilAWithdrawal() throws Exception {
+		X509Certificate intermediate = intermediate(new Date(System.currentTimeMillis() + 86_400_000L));
+
+		cache.checkChain(intermediate);
+		cache.checkChain(intermediate);
+		verify(projectKeyStore, times(1)).readCertificateBySubjectDN(any());
+		assertEquals(1, count("hit"));
+
+		// any withdrawal makes every cached chain stale
+		Mockito.when(projectKeyStore.withdrawalVersion()).thenReturn(1L);
+		Mockito.when(projectKeyStore.isWithdrawn(BigInteger.ONE)).thenReturn(true);
+		IllegalArgumentException withdrawn = assertThrows(IllegalArgumentException.class, () -> cache.checkChain(intermediate));
+		assertEquals("Certificate 1 in the chain is withdrawn", withdrawn.getMessage());
+
+		// and reinstating it is a withdrawal change too
+		Mockito.when(projectKeyStore.withdrawalVersion()).thenReturn(2L);
+		Mockito.when(projectKeyStore.isWithdrawn(BigInteger.ONE)).thenReturn(false);
+		cache.checkChain(intermediate);
+		assertEquals(3, count("miss"));
+	}
+
+	@Test
+	void chainIsWalkedAgainOnceALinkExpires() throws Exception {
+		// validity is kept in whole seconds
+		long notAfter = (System.currentTimeMillis() / 1000 + 2) * 1000;
+		X509Certificate intermediate = intermediate(new Date(notAfter));
+
+		cache.checkChain(intermediate);
+		cache.checkChain(intermediate);
+		assertEquals(1, count("miss"));
+
+		Thread.sleep(notAfter - System.currentTimeMillis() + 1_100);
+		assertThrows(CertificateExpiredException.class, () -> cache.checkChain(intermediate));
+		assertEquals(2, count("miss"));
+	}
+
+	@Test
+	void replacedIssuerWithTheSameSerialNumberIsWalkedAgain() throws Exception {
+		X509Certificate intermediate = intermediate(new Date(System.currentTimeMillis() + 86_400_000L));
+		cache.checkChain(intermediate);
+
+		KeyPair other = ProjectKeyStoreFixture.keyPair();
+		X509Certificate forged = ProjectKeyStoreFixture.certificate(ROOT_NAME, INTERMEDIATE_NAME, intermediate.getSerialNumber(),
+				other, ProjectKeyStoreFixture.signer(other));
+		assertThrows(Exception.class, () -> cache.checkChain(forged));
+		assertEquals(2, count("miss"));
+	}
+
+	private X509Certificate intermediate(Date notAfter) throws Exception {
+		KeyPair keyPair = ProjectKeyStoreFixture.keyPair();
+		ContentSigner signer = ProjectKeyStoreFixture.signer(rootKeyPair);
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(ROOT_NAME, BigInteger.TWO,
+				new Date(System.currentTimeMillis() - 60_000), notAfter, INTERMEDIATE_NAME, keyPair.getPublic());
+		return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+	}
+
+	private double count(String result) {
+		return meters.get("certificate.chain.cache").tag("result", result).functionCounter().count();
+	}
+}
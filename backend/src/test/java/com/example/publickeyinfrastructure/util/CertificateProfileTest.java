@@ -0,0 +1,109 @@
+package com.example.publickeyinfrastructure.util;
+
+import com.example.publickeyinfrastructure.model.CertificateExtension;
+import com.example.publickeyinfrastructure.model.CertificateType;
+import com.example.publickeyinfrastructure.model.ExtensionType;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class CertificateProfileTest {
+
+	private static final X500Name ISSUER = new X500Name("CN=Profile CA,O=Org,C=RS");
+	private static final X500Name SUBJECT = new X500Name("CN=leaf.example.com,O=Org,C=RS");
+
+	@BeforeAll
+	static void registerProvider() {
+		Security.addProvider(new BouncyCastleProvider());
+	}
+
+	@Test
+	void endEntityProfileWritesWhatTheStringFormWrites() throws Exception {
+		CertificateProfile profile = CertificateProfile.compile("tls-server", CertificateType.END_ENTITY, List.of(
+				new CertificateExtension(null, true, "digitalSignature,keyEncipherment", ExtensionType.KEY_USAGE),
+				new CertificateExtension(null, false, "serverAuth,clientAuth", ExtensionType.EXTENDED_KEY_USAGE),
+				new CertificateExtension(null, false, "http://crl.example.com/ca.crl", ExtensionType.CRL_DISTRIBUTION_POINTS)
+		), true);
+		List<CertificateExtension> requested = List.of(
+				new CertificateExtension(null, false, "DNS=leaf.example.com,DNS=www.example.com", ExtensionType.SUBJECT_ALTERNATIVE_NAME));
+
+		assertSameExtensions(profile, requested, generate("RSA", 2048), generate("RSA", 2048));
+	}
+
+	@Test
+	void caProfileWritesWhatTheStringFormWrites() throws Exception {
+		CertificateProfile profile = CertificateProfile.compile("sub-ca", CertificateType.INTERMEDIATE, List.of(
+				new CertificateExtension(null, true, "CA=true,pathLen=0", ExtensionType.BASIC_CONSTRAINTS),
+				new CertificateExtension(null, true, "keyCertSign,cRLSign", ExtensionType.KEY_USAGE)
+		), false);
+
+		assertSameExtensions(profile, List.of(), generate("EC", 256), generate("EC", 256));
+	}
+
+	/**
+	 * Builds the extensions once through {@link ExtensionUtil} from the recorded string form and once from the
+	 * compiled profile, and compares the DER of every extension, key identifiers included.
+	 */
+	private static void assertSameExtensions(CertificateProfile profile, List<CertificateExtension> requested,
+											 KeyPair issuer, KeyPair subject) throws Exception {
+		List<CertificateExtension> extensions = profile.extensionsFor(requested);
+
+		X509v3CertificateBuilder strings = builder(subject);
+		ExtensionUtil extensionUtil = new ExtensionUtil(issuer.getPublic(), subject.getPublic());
+		for (CertificateExtension extension : extensions) {
+			extensionUtil.addExtension(strings, extension.getExtensionType().getOid(), extension.getIsCritical(), extension.getValue());
+		}
+		X509v3CertificateBuilder compiled = builder(subject);
+		profile.addExtensions(compiled, issuer.getPublic(), subject.getPublic(), extensions);
+
+		ContentSigner signer = new JcaContentSignerBuilder(issuer.getPublic().getAlgorithm().equals("EC") ? "SHA256withECDSA" : "SHA256withRSA")
+				.build(issuer.getPrivate());
+		Extensions expected = strings.build(signer).getExtensions();
+		Extensions actual = compiled.build(signer).getExtensions();
+
+		assertEquals(sorted(expected), sorted(actual));
+		for (ASN1ObjectIdentifier oid : expected.getExtensionOIDs()) {
+			Extension written = actual.getExtension(oid);
+			assertNotNull(written, oid.getId());
+			assertEquals(expected.getExtension(oid).isCritical(), written.isCritical(), oid.getId());
+			assertArrayEquals(expected.getExtension(oid).getExtnValue().getOctets(), written.getExtnValue().getOctets(), oid.getId());
+		}
+		assertNotNull(actual.getExtension(Extension.subjectKeyIdentifier));
+		assertNotNull(actual.getExtension(Extension.authorityKeyIdentifier));
+	}
+
+	private static List<String> sorted(Extensions extensions) {
+		return Arrays.stream(extensions.getExtensionOIDs()).map(ASN1ObjectIdentifier::getId).sorted().toList();
+	}
+
+	private static X509v3CertificateBuilder builder(KeyPair subject) {
+		Date now = new Date();
+		return new JcaX509v3CertificateBuilder(ISSUER, BigInteger.ONE, now, new Date(now.getTime() + 86_400_000L), SUBJECT, subject.getPublic());
+	}
+
+	private static KeyPair generate(String algorithm, int keySize) throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+		generator.initialize(keySize);
+		return generator.generateKeyPair();
+	}
+}
@@ -0,0 +1,44 @@
+package com.example.publickeyinfrastructure.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SerialNumberUtilTest {
+
+	@Test
+	void canonicalFormIsUpperCaseHexWithoutLeadingZeros() {
+		assertEquals("1F4", SerialNumberUtil.toCanonical(BigInteger.valueOf(500)));
+		assertEquals("0", SerialNumberUtil.toCanonical(BigInteger.ZERO));
+		assertEquals("1f4", SerialNumberUtil.toAliasSuffix(BigInteger.valueOf(500)));
+		assertEquals(BigInteger.valueOf(500), SerialNumberUtil.parseCandidates(SerialNumberUtil.toCanonical(BigInteger.valueOf(500))).get(0));
+	}
+
+	@Test
+	void digitsAreReadAsHexFirstThenDecimal() {
+		assertEquals(List.of(BigInteger.valueOf(0x500), BigInteger.valueOf(500)), SerialNumberUtil.parseCandidates("500"));
+		// the same value either way is offered once
+		assertEquals(List.of(BigInteger.valueOf(7)), SerialNumberUtil.parseCandidates("7"));
+	}
+
+	@Test
+	void hexOnlyInputHasOneCandidate() {
+		assertEquals(List.of(BigInteger.valueOf(0xABC)), SerialNumberUtil.parseCandidates("abc"));
+		assertEquals(List.of(BigInteger.valueOf(0x123)), SerialNumberUtil.parseCandidates("0x123"));
+		assertEquals(List.of(BigInteger.valueOf(0x123)), SerialNumberUtil.parseCandidates("0X123"));
+		assertEquals(List.of(BigInteger.valueOf(0x1F4)), SerialNumberUtil.parseCandidates(" 01:f4 "));
+	}
+
+	@Test
+	void unparsableInputHasNoCandidates() {
+		assertTrue(SerialNumberUtil.parseCandidates(null).isEmpty());
+		assertTrue(SerialNumberUtil.parseCandidates("").isEmpty());
+		assertTrue(SerialNumberUtil.parseCandidates("0x").isEmpty());
+		assertTrue(SerialNumberUtil.parseCandidates("xyz").isEmpty());
+		assertTrue(SerialNumberUtil.parseCandidates("-5").isEmpty());
+	}
+}